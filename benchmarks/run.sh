@@ -0,0 +1,9 @@
+#!/bin/sh
+# Builds the engine and the benchmarks, then runs every benchmark and
+# writes the results to results.json. Extra arguments are passed to JMH,
+# e.g. "./run.sh WorldMapBenchmark -p tiles=10000" or "./run.sh -h".
+set -e
+cd "$(dirname "$0")"
+mvn -B -q -f ../pom.xml install -DskipTests
+mvn -B -q package
+java -jar target/benchmarks.jar -rf json -rff results.json "$@"
@@ -0,0 +1,57 @@
+package csse2002.block.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Action#loadAction(BufferedReader)} over a generated
+ * action stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ActionParsingBenchmark {
+
+    /** Number of actions parsed per invocation. */
+    private static final int ACTIONS = 4096;
+
+    /** The actions, one per line. */
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+        StringWriter out = new StringWriter();
+        BenchmarkWorlds.generator(100).writeActions(out, ACTIONS);
+        text = out.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACTIONS)
+    public void loadAction(Blackhole blackhole)
+            throws ActionFormatException {
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        Action action;
+        while ((action = Action.loadAction(reader)) != null) {
+            blackhole.consume(action);
+        }
+    }
+}
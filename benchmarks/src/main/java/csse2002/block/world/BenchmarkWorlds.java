@@ -0,0 +1,39 @@
+package csse2002.block.world;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Generated worlds shared by the benchmarks.
+ */
+final class BenchmarkWorlds {
+
+    /** Seed of every generated world, so runs are comparable. */
+    static final long SEED = 2002;
+
+    private BenchmarkWorlds() {}
+
+    /**
+     * Makes a generator of a square world with about the given number of
+     * tiles.
+     * @param tiles number of tiles.
+     * @return the generator.
+     */
+    static WorldGenerator generator(int tiles) {
+        int side = (int) Math.ceil(Math.sqrt(tiles));
+        return new WorldGenerator(SEED, side, side);
+    }
+
+    /**
+     * Writes a generated world to a temporary file, deleted on exit.
+     * @param tiles number of tiles.
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    static File writeTemp(int tiles) throws IOException {
+        File file = File.createTempFile("benchmark-world", ".txt");
+        file.deleteOnExit();
+        generator(tiles).write(file.getPath());
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package csse2002.block.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to find paths between random tiles of a generated map with
+ * {@link PathFinder} and {@link HierarchicalPathFinder}, to compute a
+ * {@link FlowField} to a tile, and to build and query a
+ * {@link ReachabilityIndex}.
+ *
+ * Tile heights range from 1 to 3, so some neighbouring tiles are too far
+ * apart in height to step between and paths have to go around them. The
+ * pairs of tiles searched are chosen at random among those the builder can
+ * walk between, so every search finds a path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathFindingBenchmark {
+
+    /** Number of pairs of tiles searched per invocation. */
+    private static final int PAIRS = 8;
+
+    /** Width and height of the hierarchical path finder's clusters. */
+    private static final int CLUSTER_SIZE = 16;
+
+    /** Number of tiles in the map. */
+    @Param({"10000", "1000000"})
+    public int tiles;
+
+    /** The generated map. */
+    private WorldMap map;
+
+    /* Tiles to search from and to, with a path between each pair. */
+    private Tile[] from;
+    private Tile[] to;
+
+    /** Index of the next pair used by single-pair benchmarks. */
+    private int next;
+
+    /* Path finders and index kept between invocations. */
+    private PathFinder pathFinder;
+    private HierarchicalPathFinder hierarchical;
+    private ReachabilityIndex index;
+
+    @Setup
+    public void setup() {
+        WorldGenerator generator = BenchmarkWorlds.generator(tiles);
+        generator.setHeightRange(1, 3);
+        map = generator.generate();
+        pathFinder = new PathFinder(map);
+        hierarchical = new HierarchicalPathFinder(map, CLUSTER_SIZE);
+        index = new ReachabilityIndex(map);
+
+        List<Tile> all = map.getTiles();
+        Random random = new Random(BenchmarkWorlds.SEED);
+        from = new Tile[PAIRS];
+        to = new Tile[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            do {
+                from[i] = all.get(random.nextInt(all.size()));
+                to[i] = all.get(random.nextInt(all.size()));
+            } while (!index.canReach(from[i], to[i]));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        hierarchical.close();
+        index.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void pathFinder(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(pathFinder.findPath(from[i], to[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void hierarchicalPathFinder(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(hierarchical.findPath(from[i], to[i]));
+        }
+    }
+
+    @Benchmark
+    public FlowField flowField() {
+        next = (next + 1) % PAIRS;
+        return new FlowField(map, to[next]);
+    }
+
+    @Benchmark
+    public boolean buildReachabilityIndex() {
+        // The index is built by the first query.
+        next = (next + 1) % PAIRS;
+        try (ReachabilityIndex fresh = new ReachabilityIndex(map)) {
+            return fresh.canReach(from[next], to[next]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void reachabilityQuery(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(index.canReach(from[i], to[i]));
+        }
+    }
+}
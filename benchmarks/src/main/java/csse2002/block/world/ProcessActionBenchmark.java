@@ -0,0 +1,153 @@
+package csse2002.block.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of applying actions to a generated map, as done by
+ * {@link Action#processAction(Action, WorldMap)} without printing the
+ * result.
+ *
+ * Actions of one type can't be repeated forever without starting to fail,
+ * so each type is measured in a cycle of four actions that leaves the map
+ * as it found it, on a flat map of wood:
+ * <ul>
+ *     <li>MOVE_BUILDER walks east and back west, twice;</li>
+ *     <li>MOVE_BLOCK moves a block east, follows it, moves it back west
+ *     and returns, so half of its actions are MOVE_BUILDER;</li>
+ *     <li>DIG_DROP digs a block and drops it again, twice.</li>
+ * </ul>
+ * MIXED replays the generator's random action stream on a generated map,
+ * where the builder wanders and many actions fail. Its map
+ * is regenerated before each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessActionBenchmark {
+
+    /** Number of actions applied per invocation. */
+    private static final int CYCLE = 4;
+
+    /** Number of generated actions MIXED cycles through. */
+    private static final int MIXED_ACTIONS = 1 << 12;
+
+    /** Number of tiles in the map. */
+    @Param({"10000", "1000000"})
+    public int tiles;
+
+    /** Actions measured. */
+    @Param({"MOVE_BUILDER", "MOVE_BLOCK", "DIG_DROP", "MIXED"})
+    public String type;
+
+    /** Actions applied in order, wrapping around. */
+    private Action[] actions;
+
+    /** The map actions are applied to. */
+    private WorldMap map;
+
+    /** Index of the next action. */
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException, ActionFormatException {
+        next = 0;
+        if (type.equals("MIXED")) {
+            map = BenchmarkWorlds.generator(tiles).generate();
+            actions = mixedActions();
+            return;
+        }
+
+        WorldGenerator generator = BenchmarkWorlds.generator(tiles);
+        generator.setHeightRange(4, 4);
+        generator.setBlockWeights(1, 0, 0, 0);
+        generator.setInventorySize(0);
+        map = generator.generate();
+        // The builder starts at the west end of the top row.
+        switch (type) {
+            case "MOVE_BUILDER":
+                actions = actions("MOVE_BUILDER east", "MOVE_BUILDER west");
+                break;
+            case "MOVE_BLOCK":
+                // Lower the tile to the east so a block can be moved there.
+                for (Action action : actions("MOVE_BUILDER east", "DIG",
+                        "MOVE_BUILDER west")) {
+                    Action.applyAction(action, map);
+                }
+                actions = actions("MOVE_BLOCK east", "MOVE_BUILDER east",
+                        "MOVE_BLOCK west", "MOVE_BUILDER west");
+                break;
+            case "DIG_DROP":
+                actions = actions("DIG", "DROP 0");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLE)
+    public void apply(Blackhole blackhole) {
+        for (int i = 0; i < CYCLE; i++) {
+            if (next == actions.length) {
+                next = 0;
+            }
+            blackhole.consume(Action.applyAction(actions[next++], map));
+        }
+    }
+
+    /**
+     * Parses actions.
+     * @param lines the actions, as in an action file.
+     * @return the actions.
+     */
+    private static Action[] actions(String... lines)
+            throws ActionFormatException {
+        Action[] actions = new Action[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            actions[i] = Action.loadAction(
+                    new BufferedReader(new StringReader(lines[i])));
+        }
+        return actions;
+    }
+
+    /**
+     * Generates the random action stream.
+     * @return the actions.
+     */
+    private Action[] mixedActions() throws IOException, ActionFormatException {
+        StringWriter out = new StringWriter();
+        BenchmarkWorlds.generator(tiles).writeActions(out, MIXED_ACTIONS);
+        BufferedReader reader =
+                new BufferedReader(new StringReader(out.toString()));
+        List<Action> actions = new ArrayList<>();
+        Action action;
+        while ((action = Action.loadAction(reader)) != null) {
+            actions.add(action);
+        }
+        return actions.toArray(new Action[0]);
+    }
+}
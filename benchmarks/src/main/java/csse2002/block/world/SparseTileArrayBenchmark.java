@@ -0,0 +1,84 @@
+package csse2002.block.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to index a generated map with
+ * {@link SparseTileArray#addLinkedTiles(Tile, int, int)} and to look up
+ * tiles with {@link SparseTileArray#getTile(Position)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SparseTileArrayBenchmark {
+
+    /** Number of lookups per getTile invocation. */
+    private static final int LOOKUPS = 1024;
+
+    /** Number of tiles in the map. */
+    @Param({"1000", "100000", "1000000"})
+    public int tiles;
+
+    /** The generated map's starting tile. */
+    private Tile start;
+
+    /** Position of the starting tile. */
+    private Position startPosition;
+
+    /** An indexed copy of the map. */
+    private SparseTileArray array;
+
+    /** Positions to look up, about half of them holding tiles. */
+    private Position[] positions;
+
+    @Setup
+    public void setup() {
+        WorldMap map = BenchmarkWorlds.generator(tiles).generate();
+        start = map.getTiles().get(0);
+        startPosition = map.getStartPosition();
+        array = map.getTileArray();
+
+        int side = (int) Math.ceil(Math.sqrt(tiles));
+        Random random = new Random(BenchmarkWorlds.SEED);
+        positions = new Position[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            positions[i] = new Position(random.nextInt(2 * side),
+                    random.nextInt(side));
+        }
+    }
+
+    @Benchmark
+    public SparseTileArray addLinkedTiles()
+            throws WorldMapInconsistentException {
+        SparseTileArray fresh = new SparseTileArray();
+        fresh.addLinkedTiles(start, startPosition.getX(),
+                startPosition.getY());
+        return fresh;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getTile(Blackhole blackhole) {
+        for (Position position : positions) {
+            blackhole.consume(array.getTile(position));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package csse2002.block.world;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load and save generated maps with {@link WorldMap#WorldMap(String)}
+ * and {@link WorldMap#saveMap(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorldMapBenchmark {
+
+    /** Number of tiles in the map. */
+    @Param({"1000", "100000", "1000000"})
+    public int tiles;
+
+    /** The generated map file. */
+    private File input;
+
+    /** File the map is saved to. */
+    private File output;
+
+    /** The loaded map. */
+    private WorldMap map;
+
+    @Setup
+    public void setup() throws IOException, BlockWorldException {
+        input = BenchmarkWorlds.writeTemp(tiles);
+        output = File.createTempFile("benchmark-saved", ".txt");
+        output.deleteOnExit();
+        map = new WorldMap(input.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public WorldMap load() throws IOException, BlockWorldException {
+        return new WorldMap(input.getPath());
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        map.saveMap(output.getPath());
+    }
+}
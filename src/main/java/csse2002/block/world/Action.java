@@ -2,7 +2,9 @@ package csse2002.block.world;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -47,11 +49,23 @@ public class Action {
 
     /** Valid compass direction names. */
     private static final Set<String> directionNames = new HashSet<>();
+
+    /* Success messages of moves, by direction, made once so that printing
+     * them allocates nothing. */
+    private static final Map<String, String> movedBuilderMessages =
+            new HashMap<>();
+    private static final Map<String, String> movedBlockMessages =
+            new HashMap<>();
+
     static {
         directionNames.add("north");
         directionNames.add("east");
         directionNames.add("south");
         directionNames.add("west");
+        for (String direction : directionNames) {
+            movedBuilderMessages.put(direction, "Moved builder " + direction);
+            movedBlockMessages.put(direction, "Moved block " + direction);
+        }
     }
 
     /**
@@ -125,8 +139,15 @@ public class Action {
         // Ensure input is valid for loadActionFromString.
         if (line == null) {
             return null;
-        } else {
+        }
+        try {
             return loadActionFromString(line);
+        } catch (ActionFormatException e) {
+            MetricsRegistry metrics = MetricsRegistry.getInstalled();
+            if (metrics != null) {
+                metrics.recordUnparsed();
+            }
+            throw e;
         }
     }
 
@@ -281,10 +302,24 @@ public class Action {
     public static void processActions(BufferedReader reader,
                                       WorldMap startingMap)
                                throws ActionFormatException {
-        Action action;
-        // Inline variable setting. loadAction throws AFE for us.
-        while ((action = loadAction(reader)) != null) {
-            processAction(action, startingMap);
+        FlightEvents.ActionsProcessed event = FlightEvents.isRecording()
+                ? new FlightEvents.ActionsProcessed() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long count = 0;
+        try {
+            Action action;
+            // Inline variable setting. loadAction throws AFE for us.
+            while ((action = loadAction(reader)) != null) {
+                processAction(action, startingMap);
+                count++;
+            }
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.actions = count;
+                event.commit();
+            }
         }
     }
 
@@ -331,44 +366,124 @@ public class Action {
      * @require action != null, map != null
      */
     public static void processAction(Action action, WorldMap map) {
-        boolean success = false;
+        System.out.println(applyAction(action, map));
+    }
+
+    /**
+     * Performs the given action on a WorldMap and returns the message
+     * {@link #processAction(Action, WorldMap)} would print, without printing
+     * anything.
+     *
+     * @param action the action to be done on the map
+     * @param map the map to perform the action on
+     * @return the success or error message for the action.
+     * @require action != null, map != null
+     */
+    static String applyAction(Action action, WorldMap map) {
+        MetricsRegistry metrics = MetricsRegistry.getInstalled();
+        long start = metrics == null ? 0 : System.nanoTime();
+        FlightEvents.ActionApplied event = FlightEvents.isRecordingActions()
+                ? new FlightEvents.ActionApplied() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Exception failure = null;
         try {
             // Offload to helper to avoid excessive nesting.
-            // The current function only handles printing to the console.
+            // The current function only handles choosing the message.
             unsafeProcessAction(action, map);
-            success = true;
-        } catch (ActionFormatException e) {
-            System.out.println("Error: Invalid action");
-        } catch (NoExitException e) {
-            System.out.println("No exit this way");
-        } catch (TooHighException e) {
-            System.out.println("Too high");
-        } catch (TooLowException e) {
-            System.out.println("Too low");
-        } catch (InvalidBlockException e) {
-            System.out.println("Cannot use that block");
+        } catch (ActionFormatException | BlockWorldException e) {
+            failure = e;
+        } finally {
+            map.actionCompleted(action);
+        }
+        if (metrics != null) {
+            metrics.record(action.primaryAction,
+                    System.nanoTime() - start, failure);
         }
 
-        if (!success) {
-            // Error message already printed, don't print success message.
-            return;
+        // If there was no failure, the primary action is known to be valid,
+        // otherwise unsafeProcessAction would have thrown.
+        String message = failure == null
+                ? successMessage(action) : errorMessage(failure);
+        if (event != null && event.shouldCommit()) {
+            event.primary = action.primaryAction;
+            event.secondary = action.secondaryAction;
+            event.message = message;
+            event.commit();
         }
+        return message;
+    }
 
-        // Print appropriate success message.
+    /**
+     * Checks the value of an action's secondary field for its primary action.
+     *
+     * @param primary the primary action.
+     * @param secondary the secondary action.
+     * @return true if the secondary is valid for the primary action; false
+     *      otherwise, including if the primary action is invalid.
+     */
+    static boolean isSecondaryValid(int primary, String secondary) {
+        switch (primary) {
+            case DIG:
+                return secondary.equals("");
+            case MOVE_BUILDER:
+            case MOVE_BLOCK:
+                return directionNames.contains(secondary);
+            case DROP:
+                // Although exceptions are fairly slow, we expect most input
+                // cases would be valid integers and not throw.
+                try {
+                    Integer.parseInt(secondary);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            default:
+                // Will reach here if primary is invalid. Treated the same as
+                // invalid secondary values.
+                return false;
+        }
+    }
+
+    /**
+     * Gets the message printed for an action that succeeded.
+     *
+     * @param action an action that was performed without error.
+     * @return the success message.
+     */
+    static String successMessage(Action action) {
         switch (action.getPrimaryAction()) {
             case DIG:
-                System.out.println("Top block on current tile removed");
-                break;
+                return "Top block on current tile removed";
             case DROP:
-                System.out.println("Dropped a block from inventory");
-                break;
+                return "Dropped a block from inventory";
             case MOVE_BUILDER:
-                System.out.println("Moved builder " + action.secondaryAction);
-                break;
-            case MOVE_BLOCK:
-                System.out.println("Moved block " + action.secondaryAction);
-                break;
+                // The secondary action of a successful move is a direction.
+                return movedBuilderMessages.get(action.secondaryAction);
+            default: // MOVE_BLOCK
+                return movedBlockMessages.get(action.secondaryAction);
+        }
+    }
+
+    /**
+     * Gets the message printed for an action that failed with the given
+     * exception.
+     *
+     * @param exception exception thrown while performing the action.
+     * @return the error message.
+     */
+    static String errorMessage(Exception exception) {
+        if (exception instanceof NoExitException) {
+            return "No exit this way";
+        } else if (exception instanceof TooHighException) {
+            return "Too high";
+        } else if (exception instanceof TooLowException) {
+            return "Too low";
+        } else if (exception instanceof InvalidBlockException) {
+            return "Cannot use that block";
         }
+        return "Error: Invalid action";
     }
 
     /**
@@ -390,33 +505,7 @@ public class Action {
         int primary = action.primaryAction;
         String secondary = action.secondaryAction;
 
-        // Validate the actual value of the secondary field.
-        boolean secondaryValueValid = false;
-        switch (primary) {
-            case DIG:
-                secondaryValueValid = secondary.equals("");
-                break;
-            case MOVE_BUILDER:
-            case MOVE_BLOCK:
-                secondaryValueValid = directionNames.contains(secondary);
-                break;
-            case DROP:
-                // Although exceptions are fairly slow, we expect most input
-                // cases would be valid integers and not throw.
-                try {
-                    //noinspection unused
-                    Integer unused = Integer.parseInt(secondary);
-                    secondaryValueValid = true;
-                } catch (NumberFormatException e) {
-                    secondaryValueValid = false;
-                }
-                break;
-            default:
-                // Will reach here if primary is invalid. Throws the same
-                // exception as invalid secondary values.
-        }
-
-        if (!secondaryValueValid) {
+        if (!isSecondaryValid(primary, secondary)) {
             throw new ActionFormatException("Secondary action value invalid.");
         }
 
@@ -430,7 +519,7 @@ public class Action {
             case MOVE_BUILDER:
                 // If no such exit exists, .get() will return null and .moveTo()
                 // will throw NoExit as required.
-                builder.moveTo(currentTile.getExits().get(secondary));
+                builder.moveTo(currentTile.getExit(secondary));
                 break;
             case MOVE_BLOCK:
                 currentTile.moveBlock(secondary);
@@ -0,0 +1,307 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of actions applied to a {@link WorldMap} all at once or not at all.
+ *
+ * The actions are first checked against an overlay that holds copies of only
+ * the tiles they touch and of the builder's state, using the same rules as
+ * {@link Action#processAction(Action, WorldMap)}. If every action would
+ * succeed, the overlay is written back to the map, costing time proportional
+ * to the number of tiles touched. Otherwise the map is left unchanged.
+ *
+ * Observers of the map see the committed changes as a single completed
+ * action, so an {@link ActionHistory} undoes a batch in one step.
+ */
+public class ActionBatch {
+
+    /** The map actions are applied to. */
+    private final WorldMap map;
+
+    /** Actions in the order they are to be applied. */
+    private final List<Action> actions = new ArrayList<>();
+
+    /** Blocks of each tile touched by the batch, bottom to top. */
+    private final Map<Tile, List<Block>> columns = new IdentityHashMap<>();
+
+    /** The builder's tile after the actions validated so far. */
+    private Tile builderTile;
+
+    /** The builder's inventory, or null if the batch hasn't changed it. */
+    private List<Block> inventory;
+
+    /**
+     * Creates an empty batch of actions for the given map.
+     * @param map the map to apply actions to.
+     * @require map != null
+     */
+    public ActionBatch(WorldMap map) {
+        this.map = map;
+    }
+
+    /**
+     * Adds an action to the end of the batch.
+     * @param action the action to add.
+     * @require action != null
+     */
+    public void add(Action action) {
+        actions.add(action);
+    }
+
+    /**
+     * Gets the number of actions in the batch.
+     * @return number of actions.
+     */
+    public int size() {
+        return actions.size();
+    }
+
+    /**
+     * Removes every action from the batch.
+     */
+    public void clear() {
+        actions.clear();
+    }
+
+    /**
+     * Checks that every action in the batch would succeed, in order, without
+     * changing the map.
+     * @throws ActionBatchException if an action would fail.
+     */
+    public void validate() throws ActionBatchException {
+        try {
+            simulate();
+        } finally {
+            resetOverlay();
+        }
+    }
+
+    /**
+     * Applies every action in the batch to the map if all of them would
+     * succeed, then empties the batch. If any would fail, the map and the
+     * batch are left unchanged.
+     * @return the messages {@link Action#processAction(Action, WorldMap)}
+     *      would print for each action.
+     * @throws ActionBatchException if an action would fail.
+     */
+    public List<String> commit() throws ActionBatchException {
+        try {
+            simulate();
+            writeBack();
+        } finally {
+            resetOverlay();
+        }
+        if (!actions.isEmpty()) {
+            map.actionCompleted(actions.get(actions.size() - 1));
+        }
+        List<String> messages = new ArrayList<>(actions.size());
+        for (Action action : actions) {
+            messages.add(Action.successMessage(action));
+        }
+        actions.clear();
+        return messages;
+    }
+
+    /**
+     * Performs every action on the overlay.
+     * @throws ActionBatchException if an action would fail.
+     */
+    private void simulate() throws ActionBatchException {
+        builderTile = map.getBuilder().getCurrentTile();
+        for (int i = 0; i < actions.size(); i++) {
+            try {
+                simulate(actions.get(i));
+            } catch (ActionFormatException | BlockWorldException e) {
+                throw new ActionBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Performs one action on the overlay, throwing the same exceptions as
+     * performing it on the map would.
+     * @param action the action.
+     */
+    private void simulate(Action action) throws ActionFormatException,
+            NoExitException, TooHighException, TooLowException,
+            InvalidBlockException {
+        int primary = action.getPrimaryAction();
+        String secondary = action.getSecondaryAction();
+        if (!Action.isSecondaryValid(primary, secondary)) {
+            throw new ActionFormatException("Secondary action value invalid.");
+        }
+
+        switch (primary) {
+            case Action.DIG: {
+                List<Block> blocks = writableColumn(builderTile);
+                if (blocks.isEmpty()) {
+                    throw new TooLowException();
+                }
+                Block top = blocks.get(blocks.size() - 1);
+                if (!top.isDiggable()) {
+                    throw new InvalidBlockException();
+                }
+                blocks.remove(blocks.size() - 1);
+                if (top.isCarryable()) {
+                    writableInventory().add(top);
+                }
+                break;
+            }
+            case Action.MOVE_BUILDER: {
+                // Actions never change exits, so the map's are current.
+                Tile target = builderTile.getExit(secondary);
+                if (target == null || Math.abs(column(target).size()
+                        - column(builderTile).size()) > 1) {
+                    throw new NoExitException();
+                }
+                builderTile = target;
+                break;
+            }
+            case Action.MOVE_BLOCK: {
+                Tile target = builderTile.getExit(secondary);
+                if (target == null) {
+                    throw new NoExitException();
+                }
+                List<Block> blocks = writableColumn(builderTile);
+                if (column(target).size() >= blocks.size()) {
+                    throw new TooHighException();
+                }
+                Block top = blocks.get(blocks.size() - 1);
+                if (!top.isMoveable()) {
+                    throw new InvalidBlockException();
+                }
+                place(writableColumn(target), top);
+                blocks.remove(blocks.size() - 1);
+                break;
+            }
+            default: { // DROP
+                int index = Integer.parseInt(secondary);
+                List<Block> contents = inventory == null
+                        ? map.getBuilder().getInventory() : inventory;
+                if (index < 0 || index >= contents.size()) {
+                    throw new InvalidBlockException();
+                }
+                place(writableColumn(builderTile), contents.get(index));
+                writableInventory().remove(index);
+            }
+        }
+    }
+
+    /**
+     * Places a block on an overlay column, following
+     * {@link Tile#placeBlock(Block)}.
+     * @param blocks the column.
+     * @param block the block to place.
+     * @throws TooHighException if the column is too high for the block.
+     */
+    private static void place(List<Block> blocks, Block block)
+            throws TooHighException {
+        if (blocks.size() >= Tile.MAX_BLOCKS
+                || (block instanceof GroundBlock
+                && blocks.size() >= Tile.MAX_GROUND_BLOCKS)) {
+            throw new TooHighException();
+        }
+        blocks.add(block);
+    }
+
+    /**
+     * Gets a tile's blocks as changed by the batch so far, for reading.
+     * @param tile the tile.
+     * @return blocks of the tile.
+     */
+    private List<Block> column(Tile tile) {
+        List<Block> blocks = columns.get(tile);
+        return blocks == null ? tile.getBlocks() : blocks;
+    }
+
+    /**
+     * Gets a tile's blocks as changed by the batch so far, copying them into
+     * the overlay first if necessary.
+     * @param tile the tile.
+     * @return modifiable blocks of the tile.
+     */
+    private List<Block> writableColumn(Tile tile) {
+        List<Block> blocks = columns.get(tile);
+        if (blocks == null) {
+            blocks = new ArrayList<>(tile.getBlocks());
+            columns.put(tile, blocks);
+        }
+        return blocks;
+    }
+
+    /**
+     * Gets the builder's inventory as changed by the batch so far, copying
+     * it into the overlay first if necessary.
+     * @return modifiable inventory.
+     */
+    private List<Block> writableInventory() {
+        if (inventory == null) {
+            inventory = new ArrayList<>(map.getBuilder().getInventory());
+        }
+        return inventory;
+    }
+
+    /**
+     * Makes the map match the overlay, touching only what differs.
+     */
+    private void writeBack() {
+        try {
+            for (Map.Entry<Tile, List<Block>> entry : columns.entrySet()) {
+                Tile tile = entry.getKey();
+                List<Block> target = entry.getValue();
+                int common = commonPrefix(tile.getBlocks(), target);
+                for (int i = tile.getBlocks().size(); i > common; i--) {
+                    tile.removeTopBlock();
+                }
+                for (int i = common; i < target.size(); i++) {
+                    tile.restoreBlock(target.get(i));
+                }
+            }
+        } catch (TooLowException e) {
+            throw new AssertionError("Removed more blocks than exist.", e);
+        }
+
+        Builder builder = map.getBuilder();
+        if (builder.getCurrentTile() != builderTile) {
+            builder.restoreTile(builderTile);
+        }
+        if (inventory != null) {
+            List<Block> contents = builder.getInventory();
+            int common = commonPrefix(contents, inventory);
+            for (int i = contents.size() - 1; i >= common; i--) {
+                builder.takeInventory(i);
+            }
+            for (int i = common; i < inventory.size(); i++) {
+                builder.restoreInventory(i, inventory.get(i));
+            }
+        }
+    }
+
+    /**
+     * Counts the leading positions holding the same block instances.
+     * @param a a list of blocks.
+     * @param b another list of blocks.
+     * @return length of the common prefix.
+     */
+    private static int commonPrefix(List<Block> a, List<Block> b) {
+        int limit = Math.min(a.size(), b.size());
+        int i = 0;
+        while (i < limit && a.get(i) == b.get(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Discards the overlay.
+     */
+    private void resetOverlay() {
+        columns.clear();
+        builderTile = null;
+        inventory = null;
+    }
+}
@@ -0,0 +1,35 @@
+package csse2002.block.world;
+
+/**
+ * An action in an {@link ActionBatch} could not be performed, so none of the
+ * batch was applied.
+ *
+ * The cause is the exception the action would have thrown if performed on
+ * its own (an {@link ActionFormatException} for invalid actions).
+ * @serial exclude
+ */
+public class ActionBatchException extends BlockWorldException {
+
+    /* Index of the failing action in the batch. */
+    private final int actionIndex;
+
+    /**
+     * Constructs an exception for the action at the given index.
+     * @param actionIndex index of the failing action in the batch.
+     * @param cause exception the action would have thrown.
+     */
+    public ActionBatchException(int actionIndex, Exception cause) {
+        super("Action " + actionIndex + ": " + Action.errorMessage(cause));
+        this.actionIndex = actionIndex;
+        initCause(cause);
+    }
+
+    /**
+     * Gets the index of the failing action in the batch.
+     * @return action index.
+     */
+    public int getActionIndex() {
+        return actionIndex;
+    }
+
+}
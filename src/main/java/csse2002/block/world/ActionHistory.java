@@ -0,0 +1,361 @@
+package csse2002.block.world;
+
+/**
+ * Records the changes made by each action on a {@link WorldMap} so that
+ * actions can be undone and redone without reloading the map.
+ *
+ * Every change (a block placed or removed, an exit changed, the builder
+ * moved or an inventory change) is stored as one delta in preallocated ring
+ * buffers, so recording, undoing and redoing allocate nothing. Undoing or
+ * redoing an action costs time proportional to the number of changes it
+ * made.
+ *
+ * Actions that changed nothing (such as failed actions) are not recorded.
+ * Changes made outside an action are grouped with the next action to
+ * complete. When the buffers are full, the oldest actions are forgotten.
+ * Recording a new action after an undo discards the actions that could have
+ * been redone.
+ */
+public class ActionHistory implements AutoCloseable {
+
+    /* Kinds of delta. */
+    private static final int BLOCK_PLACED = 0;
+    private static final int BLOCK_REMOVED = 1;
+    private static final int EXIT_CHANGED = 2;
+    private static final int BUILDER_MOVED = 3;
+    private static final int INVENTORY_ADDED = 4;
+    private static final int INVENTORY_REMOVED = 5;
+
+    /** Object references stored per delta. */
+    private static final int REFS_PER_DELTA = 4;
+
+    /** The map whose actions are recorded. */
+    private final WorldMap map;
+
+    /* Delta ring, indexed by delta sequence & deltaMask. */
+    private final int deltaMask;
+    private final byte[] kinds;
+    private final int[] indices;
+    private final Object[] refs;
+
+    /** Sequence of the first delta of each action, indexed by action &amp;
+     * actionMask. */
+    private final long[] actionStarts;
+    private final int actionMask;
+
+    /** Oldest retained delta and next delta to write. */
+    private long deltaHead;
+    private long deltaTail;
+
+    /**
+     * Oldest retained action, the next action to redo (every action before
+     * it is applied) and the next action to record.
+     */
+    private long actionHead;
+    private long cursor;
+    private long actionTail;
+
+    /** First delta of the action being recorded, or -1 if none. */
+    private long recordingStart = -1;
+
+    /** True while the recording action is too large to keep. */
+    private boolean overflowed;
+
+    /** True while undoing or redoing, so our own changes aren't recorded. */
+    private boolean replaying;
+
+    /** Records deltas from the map. */
+    private final WorldObserver recorder = new WorldObserver() {
+        @Override
+        public void blockPlaced(Tile tile, Block block) {
+            record(BLOCK_PLACED, 0, tile, block, null, null);
+        }
+
+        @Override
+        public void blockRemoved(Tile tile, Block block) {
+            record(BLOCK_REMOVED, 0, tile, block, null, null);
+        }
+
+        @Override
+        public void exitChanged(Tile tile, String name, Tile previous,
+                                Tile target) {
+            record(EXIT_CHANGED, 0, tile, name, previous, target);
+        }
+
+        @Override
+        public void builderMoved(Builder builder, Tile from, Tile to) {
+            record(BUILDER_MOVED, 0, builder, from, to, null);
+        }
+
+        @Override
+        public void inventoryAdded(Builder builder, int index, Block block) {
+            record(INVENTORY_ADDED, index, builder, block, null, null);
+        }
+
+        @Override
+        public void inventoryRemoved(Builder builder, int index,
+                                     Block block) {
+            record(INVENTORY_REMOVED, index, builder, block, null, null);
+        }
+
+        @Override
+        public void actionCompleted(Action action) {
+            finishAction();
+        }
+    };
+
+    /**
+     * Starts recording the actions applied to the given map.
+     * @param map the map to record.
+     * @param maxDeltas maximum number of changes kept, rounded up to a power
+     *                  of two.
+     * @param maxActions maximum number of actions kept, rounded up to a
+     *                   power of two.
+     * @require map != null, 0 &lt; maxDeltas, maxActions &le; 2^30
+     */
+    public ActionHistory(WorldMap map, int maxDeltas, int maxActions) {
+        this.map = map;
+        int deltaCapacity = powerOfTwoAtLeast(maxDeltas);
+        deltaMask = deltaCapacity - 1;
+        kinds = new byte[deltaCapacity];
+        indices = new int[deltaCapacity];
+        refs = new Object[deltaCapacity * REFS_PER_DELTA];
+        int actionCapacity = powerOfTwoAtLeast(maxActions);
+        actionMask = actionCapacity - 1;
+        actionStarts = new long[actionCapacity];
+        map.addObserver(recorder);
+    }
+
+    /**
+     * Rounds up to a power of two.
+     * @param n a positive integer.
+     * @return smallest power of two &ge; n.
+     */
+    private static int powerOfTwoAtLeast(int n) {
+        int size = Integer.highestOneBit(n);
+        return size < n ? size << 1 : size;
+    }
+
+    /**
+     * Gets the number of actions that can currently be undone.
+     * @return number of undoable actions.
+     */
+    public int getUndoCount() {
+        return (int) (cursor - actionHead);
+    }
+
+    /**
+     * Gets the number of actions that can currently be redone.
+     * @return number of redoable actions.
+     */
+    public int getRedoCount() {
+        return (int) (actionTail - cursor);
+    }
+
+    /**
+     * Undoes up to n of the most recently applied actions. Observers see
+     * the completion of each undone action separately.
+     * @param n number of actions to undo.
+     * @return the number of actions undone.
+     * @require n &ge; 0
+     */
+    public int undo(int n) {
+        finishAction();
+        int undone = 0;
+        replaying = true;
+        try {
+            while (undone < n && cursor > actionHead) {
+                long action = cursor - 1;
+                for (long d = actionEnd(action) - 1;
+                     d >= actionStarts[(int) action & actionMask]; d--) {
+                    applyDelta(d, false);
+                }
+                cursor--;
+                undone++;
+                // Each step is an action as far as observers can tell.
+                map.actionCompleted(null);
+            }
+        } finally {
+            replaying = false;
+        }
+        return undone;
+    }
+
+    /**
+     * Redoes up to n of the most recently undone actions. Observers see
+     * the completion of each redone action separately.
+     * @param n number of actions to redo.
+     * @return the number of actions redone.
+     * @require n &ge; 0
+     */
+    public int redo(int n) {
+        finishAction();
+        int redone = 0;
+        replaying = true;
+        try {
+            while (redone < n && cursor < actionTail) {
+                long action = cursor;
+                for (long d = actionStarts[(int) action & actionMask];
+                     d < actionEnd(action); d++) {
+                    applyDelta(d, true);
+                }
+                cursor++;
+                redone++;
+                // Each step is an action as far as observers can tell.
+                map.actionCompleted(null);
+            }
+        } finally {
+            replaying = false;
+        }
+        return redone;
+    }
+
+    /**
+     * Stops recording and forgets all history.
+     */
+    @Override
+    public void close() {
+        map.removeObserver(recorder);
+        clear();
+    }
+
+    /**
+     * Forgets all recorded actions.
+     */
+    private void clear() {
+        deltaHead = deltaTail;
+        actionHead = actionTail = cursor;
+        recordingStart = -1;
+    }
+
+    /**
+     * Gets the sequence one past the last delta of a recorded action.
+     * @param action action sequence.
+     * @return end delta sequence.
+     */
+    private long actionEnd(long action) {
+        if (action + 1 < actionTail) {
+            return actionStarts[(int) (action + 1) & actionMask];
+        }
+        return recordingStart == -1 ? deltaTail : recordingStart;
+    }
+
+    /**
+     * Appends a delta to the action being recorded.
+     */
+    private void record(int kind, int index, Object a, Object b, Object c,
+                        Object d) {
+        if (replaying || overflowed) {
+            return;
+        }
+        if (recordingStart == -1) {
+            // First change of a new action; it replaces anything redoable.
+            if (cursor < actionTail) {
+                deltaTail = actionStarts[(int) cursor & actionMask];
+                actionTail = cursor;
+            }
+            recordingStart = deltaTail;
+        }
+        if (deltaTail - deltaHead == kinds.length) {
+            // Full; forget the oldest action.
+            if (actionHead == actionTail) {
+                // The recording action alone fills the ring; drop it too.
+                overflowed = true;
+                deltaHead = deltaTail = recordingStart;
+                return;
+            }
+            actionHead++;
+            deltaHead = actionHead < actionTail
+                    ? actionStarts[(int) actionHead & actionMask]
+                    : recordingStart;
+        }
+
+        int slot = (int) deltaTail & deltaMask;
+        kinds[slot] = (byte) kind;
+        indices[slot] = index;
+        int base = slot * REFS_PER_DELTA;
+        refs[base] = a;
+        refs[base + 1] = b;
+        refs[base + 2] = c;
+        refs[base + 3] = d;
+        deltaTail++;
+    }
+
+    /**
+     * Ends the action being recorded, if it recorded anything.
+     */
+    private void finishAction() {
+        if (overflowed) {
+            overflowed = false;
+            clear();
+            return;
+        }
+        if (recordingStart == -1 || replaying) {
+            return;
+        }
+        if (actionTail - actionHead == actionStarts.length) {
+            actionHead++;
+            deltaHead = actionHead < actionTail
+                    ? actionStarts[(int) actionHead & actionMask]
+                    : recordingStart;
+        }
+        actionStarts[(int) actionTail & actionMask] = recordingStart;
+        actionTail++;
+        cursor = actionTail;
+        recordingStart = -1;
+    }
+
+    /**
+     * Applies a delta forwards (redo) or backwards (undo).
+     * @param sequence delta sequence.
+     * @param forward true to redo the change, false to undo it.
+     */
+    private void applyDelta(long sequence, boolean forward) {
+        int slot = (int) sequence & deltaMask;
+        int base = slot * REFS_PER_DELTA;
+        int kind = kinds[slot];
+        try {
+            switch (kind) {
+                case BLOCK_PLACED:
+                case BLOCK_REMOVED: {
+                    Tile tile = (Tile) refs[base];
+                    if (forward == (kind == BLOCK_PLACED)) {
+                        tile.restoreBlock((Block) refs[base + 1]);
+                    } else {
+                        tile.removeTopBlock();
+                    }
+                    break;
+                }
+                case EXIT_CHANGED: {
+                    Tile tile = (Tile) refs[base];
+                    String name = (String) refs[base + 1];
+                    Tile target = (Tile) refs[forward ? base + 3 : base + 2];
+                    if (target == null) {
+                        tile.removeExit(name);
+                    } else {
+                        tile.addExit(name, target);
+                    }
+                    break;
+                }
+                case BUILDER_MOVED: {
+                    Builder builder = (Builder) refs[base];
+                    builder.restoreTile(
+                            (Tile) refs[forward ? base + 2 : base + 1]);
+                    break;
+                }
+                default: { // INVENTORY_ADDED or INVENTORY_REMOVED
+                    Builder builder = (Builder) refs[base];
+                    if (forward == (kind == INVENTORY_ADDED)) {
+                        builder.restoreInventory(indices[slot],
+                                (Block) refs[base + 1]);
+                    } else {
+                        builder.takeInventory(indices[slot]);
+                    }
+                }
+            }
+        } catch (TooLowException | NoExitException e) {
+            // The recorded state guarantees the block or exit exists.
+            throw new AssertionError("History does not match the map.", e);
+        }
+    }
+}
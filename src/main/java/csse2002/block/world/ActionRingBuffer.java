@@ -0,0 +1,241 @@
+package csse2002.block.world;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated ring buffer that accepts actions from many producer threads
+ * and hands them in batches to a single consumer thread.
+ *
+ * Producers claim a sequence number with a compare-and-set and then publish
+ * the action into the slot for that sequence; no locks are taken. The
+ * consumer applies every contiguous published action in one batch, which is
+ * where the world map is mutated, so the map itself is only ever touched by
+ * one thread.
+ *
+ * Actions from one producer are consumed in the order that producer
+ * published them. Actions from different producers are interleaved in claim
+ * order.
+ */
+public class ActionRingBuffer {
+
+    /**
+     * Receives actions taken from the buffer by the consumer.
+     */
+    public interface Handler {
+        /**
+         * Handles one action.
+         * @param action the consumed action.
+         * @param endOfBatch true if this is the last action of the batch.
+         */
+        void onAction(Action action, boolean endOfBatch);
+    }
+
+    /** Slots holding published actions, indexed by sequence &amp; mask. */
+    private final Action[] entries;
+
+    /** Mask mapping a sequence number to its slot. */
+    private final int mask;
+
+    /** Sequence published into each slot, or -1 if never published. */
+    private final AtomicLongArray published;
+
+    /** Last sequence claimed by a producer. */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /** Last sequence consumed. Only written by the consumer. */
+    private volatile long consumed = -1;
+
+    /* Consumer metrics. Only written by the consumer. */
+    private volatile long batches;
+    private volatile long batchedActions;
+    private volatile long maxBatchSize;
+    private volatile long maxQueueDepth;
+
+    /**
+     * Creates a ring buffer with the given number of slots.
+     * @param capacity number of slots, rounded up to a power of two.
+     * @require 0 &lt; capacity &le; 2^30
+     */
+    public ActionRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        entries = new Action[size];
+        mask = size - 1;
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Gets the number of slots in this buffer.
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * Publishes an action, waiting while the buffer is full.
+     * Safe to call from any number of threads at once.
+     * @param action the action to publish.
+     * @require action != null
+     */
+    public void publish(Action action) {
+        while (!tryPublish(action)) {
+            // Backpressure; wait for the consumer to free a slot.
+            LockSupport.parkNanos(1000);
+        }
+    }
+
+    /**
+     * Publishes an action if there is a free slot.
+     * Safe to call from any number of threads at once.
+     * @param action the action to publish.
+     * @return true if published, false if the buffer was full.
+     * @require action != null
+     */
+    public boolean tryPublish(Action action) {
+        long sequence;
+        do {
+            long current = claimed.get();
+            sequence = current + 1;
+            if (sequence - entries.length > consumed) {
+                return false;
+            }
+            if (claimed.compareAndSet(current, sequence)) {
+                break;
+            }
+        } while (true);
+
+        int slot = (int) sequence & mask;
+        entries[slot] = action;
+        // Ordered write; makes the entry visible before the sequence.
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Takes up to maxBatch contiguous published actions and passes them to
+     * the handler in sequence order. Must only be called from the consumer
+     * thread.
+     *
+     * If the handler throws, the actions it was given, including the one it
+     * threw on, are consumed and the exception is rethrown. The rest of the
+     * batch is left for the next drain.
+     * @param handler receives each action in the batch.
+     * @param maxBatch maximum number of actions to take.
+     * @return number of actions handled; 0 if none were published.
+     * @require handler != null, maxBatch &gt; 0
+     */
+    public int drain(Handler handler, int maxBatch) {
+        long first = consumed + 1;
+        long depth = claimed.get() - consumed;
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+
+        // Find the contiguous run of published slots.
+        int count = 0;
+        while (count < maxBatch
+                && published.get((int) (first + count) & mask)
+                        == first + count) {
+            count++;
+        }
+
+        int handled = 0;
+        try {
+            while (handled < count) {
+                int slot = (int) (first + handled) & mask;
+                Action action = entries[slot];
+                entries[slot] = null;
+                handled++;
+                handler.onAction(action, handled == count);
+            }
+        } finally {
+            if (handled > 0) {
+                // Volatile write; frees the slots for producers.
+                consumed = first + handled - 1;
+                batches++;
+                batchedActions += handled;
+                if (handled > maxBatchSize) {
+                    maxBatchSize = handled;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Takes up to maxBatch published actions and performs them on the map.
+     * Must only be called from the consumer thread.
+     * @param map the map to perform the actions on.
+     * @param maxBatch maximum number of actions to take.
+     * @param out stream to print action messages to, or null to discard them.
+     * @return number of actions performed.
+     * @require map != null, maxBatch &gt; 0
+     */
+    public int applyBatch(WorldMap map, int maxBatch, PrintStream out) {
+        return drain((action, endOfBatch) -> {
+            String message = Action.applyAction(action, map);
+            if (out != null) {
+                out.println(message);
+            }
+        }, maxBatch);
+    }
+
+    /**
+     * Gets the number of actions claimed but not yet consumed. This includes
+     * actions whose producers have not finished publishing.
+     * @return current queue depth.
+     */
+    public long getQueueDepth() {
+        return claimed.get() - consumed;
+    }
+
+    /**
+     * Gets the largest queue depth seen by the consumer at the start of a
+     * drain.
+     * @return maximum observed queue depth.
+     */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Gets the number of non-empty batches consumed.
+     * @return number of batches.
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Gets the total number of actions consumed.
+     * @return number of consumed actions.
+     */
+    public long getConsumedCount() {
+        return batchedActions;
+    }
+
+    /**
+     * Gets the largest batch consumed.
+     * @return maximum batch size.
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Gets the mean size of non-empty batches.
+     * @return mean batch size, or 0 if nothing has been consumed.
+     */
+    public double getMeanBatchSize() {
+        return batches == 0 ? 0 : (double) batchedActions / batches;
+    }
+}
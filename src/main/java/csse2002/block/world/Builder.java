@@ -1,9 +1,8 @@
 package csse2002.block.world;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A Player who modifies the map. <br>
@@ -23,6 +22,9 @@ public class Builder {
     /* Name of the builder*/
     String name;
 
+    /* Notified of changes to this builder, or null. Set by the WorldMap. */
+    WorldObserver observer;
+
     /**
      * Create a builder. <br>
      * Set the name of the Builder (such that getName() == name) and the
@@ -34,7 +36,7 @@ public class Builder {
     public Builder(String name, Tile startingTile) {
         this.name = name;
         currentTile = startingTile;
-        contents = new LinkedList<Block>();
+        contents = new ArrayList<Block>();
     }
 
     /**
@@ -59,7 +61,7 @@ public class Builder {
             List<Block> startingInventory) throws InvalidBlockException {
         this.name = name;
         currentTile = startingTile;
-        contents = new LinkedList<Block>();
+        contents = new ArrayList<Block>();
 
         // copy starting inventory into contents
         for (Block block: startingInventory) {
@@ -95,6 +97,45 @@ public class Builder {
         return Collections.unmodifiableList(contents);
     }
 
+    /**
+     * Move the builder to a tile without checking canEnter(). Only used to
+     * restore an earlier state of the builder, or to place it on a map
+     * built directly.
+     * @param tile the tile to put the builder on
+     */
+    void restoreTile(Tile tile) {
+        Tile previous = currentTile;
+        currentTile = tile;
+        if (observer != null) {
+            observer.builderMoved(this, previous, tile);
+        }
+    }
+
+    /**
+     * Insert a block into the inventory at the given index. Only used to
+     * restore an earlier state of the builder.
+     * @param index the inventory index to insert at
+     * @param block the block to insert
+     */
+    void restoreInventory(int index, Block block) {
+        contents.add(index, block);
+        if (observer != null) {
+            observer.inventoryAdded(this, index, block);
+        }
+    }
+
+    /**
+     * Remove the block at the given inventory index. Only used to restore an
+     * earlier state of the builder.
+     * @param index the inventory index to remove
+     */
+    void takeInventory(int index) {
+        Block block = contents.remove(index);
+        if (observer != null) {
+            observer.inventoryRemoved(this, index, block);
+        }
+    }
+
     /**
      * Drop a block from inventory on the top of the current tile <br>
      * The block at inventoryIndex should be removed from the Builder's
@@ -134,6 +175,9 @@ public class Builder {
         currentTile.placeBlock(block);
 
         contents.remove(inventoryIndex);
+        if (observer != null) {
+            observer.inventoryRemoved(this, inventoryIndex, block);
+        }
     }
 
     /**
@@ -165,6 +209,9 @@ public class Builder {
         // only add the block to the inventory if it is carryable.
         if (block.isCarryable()) {
             contents.add(block);
+            if (observer != null) {
+                observer.inventoryAdded(this, contents.size() - 1, block);
+            }
         }
     }
 
@@ -188,22 +235,11 @@ public class Builder {
             return false;
         }
 
-        boolean tilesAreConnected = false;
-        boolean heightsAreCompatible = false;
-
-        for (Map.Entry<String,
-                       Tile> entry : currentTile.getExits().entrySet()) {
-            if (entry.getValue() == newTile) {
-                tilesAreConnected = true;
-                break;
-            }
-        }
-
-        if (Math.abs(newTile.getBlocks().size()
-                     - currentTile.getBlocks().size()) <= 1) {
-            heightsAreCompatible = true;
-        }
-
+        // Checked without views of the exits or blocks, since this is
+        // called for every move.
+        boolean tilesAreConnected = currentTile.hasExitTo(newTile);
+        boolean heightsAreCompatible =
+                Math.abs(newTile.getHeight() - currentTile.getHeight()) <= 1;
 
         return tilesAreConnected && heightsAreCompatible;
     }
@@ -223,7 +259,11 @@ public class Builder {
             throw new NoExitException();
         }
 
+        Tile previous = currentTile;
         currentTile = newTile;
+        if (observer != null) {
+            observer.builderMoved(this, previous, newTile);
+        }
     }
 
 }
@@ -0,0 +1,532 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the same actions through a reference and an alternative way of
+ * applying them, each on its own copy of a map, and reports the first
+ * place where they differ.
+ *
+ * After every action the harness compares:
+ * <ul>
+ *     <li>the message each engine returns, or the exception it throws;</li>
+ *     <li>the {@link StateHash} each map keeps from the changes it is told
+ *     of by its tiles and builder.</li>
+ * </ul>
+ * Every {@link #setCheckInterval(int) few actions}, and after the last,
+ * it also compares hashes computed from scratch, which finds changes made
+ * without telling the map's observers, and the files the maps save to.
+ *
+ * When the engines differ, the actions up to that point are cut down with
+ * delta debugging (ddmin) to a shortest sequence that still makes them
+ * differ, such that removing any one of its actions makes them agree.
+ * This replays the actions many times, so it suits maps of up to a few
+ * thousand tiles.
+ *
+ * The engines are made by functions from a map to an {@link Engine}, so
+ * any new backend can be checked against {@link #reference()} by writing
+ * such a function. {@link #batch()} and {@link #replay()} check the
+ * {@link ActionBatch} and {@link ReplayEngine} paths.
+ */
+public class DifferentialHarness {
+
+    /**
+     * A way of applying actions to one map.
+     */
+    public interface Engine {
+
+        /**
+         * Applies an action to the engine's map.
+         * @param action the action.
+         * @return the message {@link Action#processAction(Action, WorldMap)}
+         *      would print for the action.
+         * @throws Exception if the engine fails, which is compared like a
+         *      message.
+         */
+        String apply(Action action) throws Exception;
+    }
+
+    /**
+     * The first difference found between two engines.
+     */
+    public static final class Divergence {
+
+        /** Index of the action after which the engines differed. */
+        private final int actionIndex;
+
+        /** What differed, e.g. "message". */
+        private final String check;
+
+        /* The differing values of the reference and the alternative. */
+        private final String expected;
+        private final String actual;
+
+        /** Shortest actions found that still make the engines differ. */
+        private List<Action> reproduction;
+
+        /**
+         * Creates a divergence.
+         * @param actionIndex index of the action after which the engines
+         *                    differed.
+         * @param check what differed.
+         * @param expected the reference's value.
+         * @param actual the alternative's value.
+         */
+        private Divergence(int actionIndex, String check, String expected,
+                           String actual) {
+            this.actionIndex = actionIndex;
+            this.check = check;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        /**
+         * Gets the index of the action after which the engines were first
+         * seen to differ. Saved maps and computed hashes are compared only
+         * every few actions, so the engines may have differed earlier.
+         * @return the index in the checked actions.
+         */
+        public int getActionIndex() {
+            return actionIndex;
+        }
+
+        /**
+         * Gets what differed: "message", "state hash", "computed state
+         * hash" or "saved map".
+         * @return the name of the comparison.
+         */
+        public String getCheck() {
+            return check;
+        }
+
+        /**
+         * Gets the reference's value of what differed.
+         * @return the value.
+         */
+        public String getExpected() {
+            return expected;
+        }
+
+        /**
+         * Gets the alternative's value of what differed.
+         * @return the value.
+         */
+        public String getActual() {
+            return actual;
+        }
+
+        /**
+         * Gets a shortest sequence of actions found that makes the engines
+         * differ when applied to new maps.
+         * @return the actions, in order.
+         */
+        public List<Action> getReproduction() {
+            return reproduction;
+        }
+
+        /**
+         * Describes the divergence and lists the reproduction in the format
+         * read by {@link Action#loadAction(BufferedReader)}, e.g.
+         * <pre>
+         * state hash differs after action 41
+         *   reference:   1f2e3d4c5b6a7980
+         *   alternative: 0a1b2c3d4e5f6789 (BLOCKS_CHANGED (3, 1))
+         * reproduction (3 actions):
+         * MOVE_BUILDER north
+         * DIG
+         * DROP 5
+         * </pre>
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(check).append(" differs after action ")
+                    .append(actionIndex).append('\n');
+            text.append("  reference:   ").append(expected).append('\n');
+            text.append("  alternative: ").append(actual).append('\n');
+            text.append("reproduction (").append(reproduction.size())
+                    .append(" actions):");
+            for (Action action : reproduction) {
+                text.append('\n').append(line(action));
+            }
+            return text.toString();
+        }
+    }
+
+    /** Makes the maps the engines are given, equal each time. */
+    private final Supplier<WorldMap> maps;
+
+    /* Makers of the compared engines. */
+    private final Function<WorldMap, Engine> reference;
+    private final Function<WorldMap, Engine> alternative;
+
+    /** Actions between full comparisons. */
+    private int checkInterval = 100;
+
+    /**
+     * Creates a harness comparing two engines.
+     * @param maps makes a new map each time it is called, with the same
+     *             tiles in the same order and the same state each time.
+     * @param reference makes the reference engine for a map.
+     * @param alternative makes the engine checked, for a map.
+     * @require maps != null, reference != null, alternative != null
+     */
+    public DifferentialHarness(Supplier<WorldMap> maps,
+                               Function<WorldMap, Engine> reference,
+                               Function<WorldMap, Engine> alternative) {
+        this.maps = maps;
+        this.reference = reference;
+        this.alternative = alternative;
+    }
+
+    /**
+     * Sets how many actions apart computed hashes and saved maps are
+     * compared. They are also compared after the last action.
+     * @param checkInterval actions between full comparisons.
+     * @require checkInterval &gt; 0
+     */
+    public void setCheckInterval(int checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Applies actions with both engines, each to a new map, until they
+     * differ, and cuts the actions down to a reproduction if they do.
+     * @param actions the actions.
+     * @return the first divergence, or null if the engines agreed.
+     * @throws IOException if the maps cannot be saved to temporary files.
+     * @require actions != null
+     */
+    public Divergence run(List<Action> actions) throws IOException {
+        Divergence divergence = find(actions);
+        if (divergence != null) {
+            divergence.reproduction = minimise(new ArrayList<>(
+                    actions.subList(0, divergence.actionIndex + 1)));
+        }
+        return divergence;
+    }
+
+    /**
+     * Applies actions with both engines until they differ.
+     * @param actions the actions.
+     * @return the first divergence, without a reproduction, or null.
+     * @throws IOException if the maps cannot be saved.
+     */
+    private Divergence find(List<Action> actions) throws IOException {
+        WorldMap expectedMap = maps.get();
+        WorldMap actualMap = maps.get();
+        // Start keeping the hashes before any engine observes the maps.
+        expectedMap.stateHash();
+        actualMap.stateHash();
+        Engine expectedEngine = reference.apply(expectedMap);
+        Engine actualEngine = alternative.apply(actualMap);
+        File expectedFile = File.createTempFile("differential", ".txt");
+        File actualFile = File.createTempFile("differential", ".txt");
+        try {
+            for (int i = 0; i < actions.size(); i++) {
+                String expected = outcome(expectedEngine, actions.get(i));
+                String actual = outcome(actualEngine, actions.get(i));
+                if (!expected.equals(actual)) {
+                    return new Divergence(i, "message", expected, actual);
+                }
+                Divergence divergence = compareHashes(i, expectedMap,
+                        actualMap);
+                if (divergence == null && (i == actions.size() - 1
+                        || (i + 1) % checkInterval == 0)) {
+                    divergence = compareFully(i, expectedMap, actualMap,
+                            expectedFile, actualFile);
+                }
+                if (divergence != null) {
+                    return divergence;
+                }
+            }
+            return null;
+        } finally {
+            expectedFile.delete();
+            actualFile.delete();
+        }
+    }
+
+    /**
+     * Compares the hashes the maps keep.
+     * @param index index of the last action applied.
+     * @param expectedMap the reference's map.
+     * @param actualMap the alternative's map.
+     * @return the divergence, or null if the hashes are equal.
+     */
+    private static Divergence compareHashes(int index, WorldMap expectedMap,
+                                            WorldMap actualMap) {
+        long expected = expectedMap.stateHash();
+        long actual = actualMap.stateHash();
+        if (expected == actual) {
+            return null;
+        }
+        return new Divergence(index, "state hash", Long.toHexString(expected),
+                Long.toHexString(actual) + describe(expectedMap, actualMap));
+    }
+
+    /**
+     * Compares hashes computed from the maps' state, and the maps' saved
+     * files.
+     * @param index index of the last action applied.
+     * @param expectedMap the reference's map.
+     * @param actualMap the alternative's map.
+     * @param expectedFile file to save the reference's map to.
+     * @param actualFile file to save the alternative's map to.
+     * @return the divergence, or null if both are equal.
+     * @throws IOException if the maps cannot be saved.
+     */
+    private static Divergence compareFully(int index, WorldMap expectedMap,
+                                           WorldMap actualMap,
+                                           File expectedFile,
+                                           File actualFile)
+            throws IOException {
+        long expected = StateHash.compute(expectedMap);
+        long actual = StateHash.compute(actualMap);
+        if (expected != actual) {
+            return new Divergence(index, "computed state hash",
+                    Long.toHexString(expected), Long.toHexString(actual)
+                    + describe(expectedMap, actualMap));
+        }
+        expectedMap.saveMap(expectedFile.getPath());
+        actualMap.saveMap(actualFile.getPath());
+        List<String> expectedLines = Files.readAllLines(expectedFile.toPath());
+        List<String> actualLines = Files.readAllLines(actualFile.toPath());
+        int lines = Math.max(expectedLines.size(), actualLines.size());
+        for (int line = 0; line < lines; line++) {
+            String expectedLine = line < expectedLines.size()
+                    ? expectedLines.get(line) : "(end of file)";
+            String actualLine = line < actualLines.size()
+                    ? actualLines.get(line) : "(end of file)";
+            if (!expectedLine.equals(actualLine)) {
+                return new Divergence(index, "saved map",
+                        "line " + (line + 1) + ": " + expectedLine,
+                        "line " + (line + 1) + ": " + actualLine);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Describes the first difference between two maps, if any.
+     * @param expectedMap the reference's map.
+     * @param actualMap the alternative's map.
+     * @return " (difference)", or "" if the maps match.
+     */
+    private static String describe(WorldMap expectedMap, WorldMap actualMap) {
+        List<WorldMapDiff.Difference> differences =
+                new WorldMapDiff(expectedMap, actualMap).getDifferences();
+        return differences.isEmpty() ? "" : " (" + differences.get(0) + ")";
+    }
+
+    /**
+     * Applies an action with an engine.
+     * @param engine the engine.
+     * @param action the action.
+     * @return the message, or "threw " and the exception.
+     */
+    private static String outcome(Engine engine, Action action) {
+        try {
+            return engine.apply(action);
+        } catch (Exception e) {
+            return "threw " + e;
+        }
+    }
+
+    /**
+     * Cuts down actions that make the engines differ, removing ever
+     * smaller chunks of them while they still do.
+     * @param actions actions that make the engines differ.
+     * @return a subsequence that makes them differ, from which no single
+     *      action can be removed.
+     * @throws IOException if the maps cannot be saved.
+     */
+    private List<Action> minimise(List<Action> actions) throws IOException {
+        int chunks = 2;
+        while (actions.size() >= 2) {
+            int size = actions.size();
+            List<Action> reduced = null;
+            // Try each chunk alone, then everything but each chunk.
+            for (int chunk = 0; chunk < chunks && reduced == null; chunk++) {
+                List<Action> subset = actions.subList(size * chunk / chunks,
+                        size * (chunk + 1) / chunks);
+                if (find(subset) != null) {
+                    reduced = new ArrayList<>(subset);
+                    chunks = 2;
+                }
+            }
+            for (int chunk = 0; chunk < chunks && reduced == null; chunk++) {
+                List<Action> complement = new ArrayList<>(
+                        actions.subList(0, size * chunk / chunks));
+                complement.addAll(actions.subList(
+                        size * (chunk + 1) / chunks, size));
+                if (find(complement) != null) {
+                    reduced = complement;
+                    chunks = Math.max(chunks - 1, 2);
+                }
+            }
+            if (reduced != null) {
+                actions = reduced;
+            } else if (chunks < size) {
+                chunks = Math.min(size, chunks * 2);
+            } else {
+                break;
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Gets an engine that applies actions as
+     * {@link Action#processAction(Action, WorldMap)} does.
+     * @return the maker of the engine.
+     */
+    public static Function<WorldMap, Engine> reference() {
+        return map -> action -> Action.applyAction(action, map);
+    }
+
+    /**
+     * Gets an engine that commits each action as an {@link ActionBatch} of
+     * its own.
+     * @return the maker of the engine.
+     */
+    public static Function<WorldMap, Engine> batch() {
+        return map -> {
+            ActionBatch batch = new ActionBatch(map);
+            return action -> {
+                batch.add(action);
+                try {
+                    return batch.commit().get(0);
+                } catch (ActionBatchException e) {
+                    batch.clear();
+                    return Action.errorMessage((Exception) e.getCause());
+                }
+            };
+        };
+    }
+
+    /**
+     * Gets an engine that applies actions with a {@link ReplayEngine},
+     * seeking back a few actions and forwards again after every eighth, so
+     * that snapshots are restored and actions replayed along the way.
+     * @return the maker of the engine.
+     */
+    public static Function<WorldMap, Engine> replay() {
+        return map -> {
+            ReplayEngine engine = new ReplayEngine(map, 16, 8);
+            return action -> {
+                String message = engine.apply(action);
+                long size = engine.getSize();
+                if (size % 8 == 0) {
+                    engine.seek(size - 5);
+                    engine.seek(size);
+                }
+                return message;
+            };
+        };
+    }
+
+    /**
+     * Generates random actions as {@link WorldGenerator#writeActions(
+     * java.io.Writer, long)} does.
+     * @param seed the seed.
+     * @param count number of actions.
+     * @return the actions.
+     * @require count &gt;= 0
+     */
+    public static List<Action> generateActions(long seed, int count) {
+        StringWriter text = new StringWriter();
+        List<Action> actions = new ArrayList<>(count);
+        try {
+            new WorldGenerator(seed, 1, 1).writeActions(text, count);
+            BufferedReader reader =
+                    new BufferedReader(new StringReader(text.toString()));
+            Action action;
+            while ((action = Action.loadAction(reader)) != null) {
+                actions.add(action);
+            }
+        } catch (IOException | ActionFormatException e) {
+            // Strings cannot fail to be written or read, and generated
+            // action lines are all well formed.
+            throw new AssertionError(e);
+        }
+        return actions;
+    }
+
+    /**
+     * Formats an action as a line of an action file.
+     * @param action the action.
+     * @return the line, without a line separator.
+     */
+    private static String line(Action action) {
+        int primary = action.getPrimaryAction();
+        // The registry's last type name is for invalid actions.
+        String name = primary >= 0 && primary <= Action.DROP
+                ? MetricsRegistry.TYPE_NAMES[primary]
+                : Integer.toString(primary);
+        String secondary = action.getSecondaryAction();
+        return secondary.isEmpty() ? name : name + " " + secondary;
+    }
+
+    /**
+     * Checks the batch and replay engines against the reference on
+     * generated maps and actions, printing the first divergence of each.
+     *
+     * Takes options "--seeds=N" maps to check (default 10), "--size=N" for
+     * N by N maps (default 16) and "--actions=N" per map (default 10000).
+     * Exits with status 1 if any engine diverged, or 2 on a bad option.
+     * @param args the options.
+     * @throws IOException if maps cannot be saved to temporary files.
+     */
+    public static void main(String[] args) throws IOException {
+        int seeds = 10;
+        int size = 16;
+        int count = 10000;
+        try {
+            for (String arg : args) {
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--seeds=")) {
+                    seeds = Integer.parseInt(value);
+                } else if (arg.startsWith("--size=")) {
+                    size = Integer.parseInt(value);
+                } else if (arg.startsWith("--actions=")) {
+                    count = Integer.parseInt(value);
+                } else {
+                    throw new NumberFormatException(arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: DifferentialHarness [--seeds=N]"
+                    + " [--size=N] [--actions=N]");
+            System.exit(2);
+        }
+        boolean diverged = false;
+        for (long seed = 0; seed < seeds; seed++) {
+            WorldGenerator generator = new WorldGenerator(seed, size, size);
+            List<Action> actions = generateActions(seed, count);
+            for (String name : Arrays.asList("batch", "replay")) {
+                DifferentialHarness harness = new DifferentialHarness(
+                        generator::generate, reference(),
+                        name.equals("batch") ? batch() : replay());
+                Divergence divergence = harness.run(actions);
+                System.out.println("seed " + seed + " " + name + ": "
+                        + (divergence == null ? "agrees" : divergence));
+                diverged |= divergence != null;
+            }
+        }
+        if (diverged) {
+            System.exit(1);
+        }
+    }
+}
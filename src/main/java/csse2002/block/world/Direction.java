@@ -0,0 +1,48 @@
+package csse2002.block.world;
+
+/**
+ * Represents cardinal directions as well as opposites to each direction
+ * and their representation as a Position shift.
+ */
+enum Direction {
+    north(0, -1),
+    east(1, 0),
+    south(0, 1),
+    west(-1, 0);
+
+    /* All directions, in order N, E, S, W. Shared to avoid copying values(). */
+    static final Direction[] ALL = values();
+
+    private final Position position;
+
+    /** Shift in the x direction. */
+    final int dx;
+    /** Shift in the y direction. */
+    final int dy;
+
+    /**
+     * Creates a Direction object.
+     * @param x Shift in the x direction.
+     * @param y Shift in the y direction.
+     */
+    Direction(int x, int y) {
+        position = new Position(x, y);
+        dx = x;
+        dy = y;
+    }
+
+    /**
+     * Returns the direction value of the compass direction opposite this.
+     * */
+    Direction opposite() {
+        // Opposite directions are two apart in N, E, S, W order.
+        return ALL[(ordinal() + 2) % ALL.length];
+    }
+
+    /**
+     * Returns this direction as a change in position.
+     */
+    Position position() {
+        return position;
+    }
+}
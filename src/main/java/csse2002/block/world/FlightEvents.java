@@ -0,0 +1,178 @@
+package csse2002.block.world;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the phases of a run: loading a map,
+ * indexing its tiles, processing actions and saving the map.
+ *
+ * The phase events are enabled by default, so any recording shows where a
+ * run spent its time, e.g. with
+ * <code>java -XX:StartFlightRecording=filename=run.jfr ...</code>. Events
+ * are only filled in and committed if the recording wants them, and cost
+ * next to nothing when no recording is running. Initialising the first
+ * event class starts parts of Flight Recorder, which takes hundreds of
+ * milliseconds on JDK 8, so events are only created once Flight Recorder
+ * has been started; see {@link #isRecording()}. On JVMs without Flight
+ * Recorder, such as JDK 8 before update 262, OpenJ9 or images built
+ * without the jdk.jfr module, no event is ever created and the event
+ * classes are never loaded.
+ *
+ * {@link ActionApplied} records every action and is disabled by default,
+ * since it is emitted far more often. It can be switched on for a running
+ * program by starting a recording that enables it, with a settings file,
+ * with <code>Recording.enable("csse2002.block.world.ActionApplied")</code>
+ * or, on JDK 17 and later, with <code>jcmd &lt;pid&gt; JFR.start
+ * +csse2002.block.world.ActionApplied#enabled=true</code>. Its events are
+ * only created while a recording has it enabled; see
+ * {@link #isRecordingActions()}.
+ */
+final class FlightEvents {
+
+    /** True if this JVM has Flight Recorder. */
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightEvents() {}
+
+    /**
+     * Checks whether the Flight Recorder API can be loaded, without
+     * initialising it.
+     * @return true if this JVM has Flight Recorder.
+     */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false,
+                    FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether Flight Recorder has been started in this JVM, by a
+     * command line option, jcmd or the API. Events should only be created
+     * while this is true.
+     * @return true if events may be recorded, false if not or if this JVM
+     *      has no Flight Recorder.
+     */
+    static boolean isRecording() {
+        return AVAILABLE && FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Checks whether a running recording has {@link ActionApplied} enabled.
+     * Unlike creating an event and asking it, this does not allocate, so it
+     * can be called for every action.
+     * @return true if ActionApplied events should be created.
+     */
+    static boolean isRecordingActions() {
+        return isRecording() && ActionAppliedType.TYPE.isEnabled();
+    }
+
+    /**
+     * Holds the type of {@link ActionApplied}, looked up the first time it
+     * is needed, since looking it up registers the event class.
+     */
+    private static final class ActionAppliedType {
+        static final EventType TYPE =
+                EventType.getEventType(ActionApplied.class);
+    }
+
+    /**
+     * A map loaded from a file.
+     */
+    @Name("csse2002.block.world.MapLoad")
+    @Label("Map Load")
+    @Category("Block World")
+    @Description("Loading a world map from a file")
+    static final class MapLoad extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Tiles")
+        int tiles;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * Tiles indexed by {@link SparseTileArray#addLinkedTiles(Tile, int, int)}.
+     */
+    @Name("csse2002.block.world.TileIndex")
+    @Label("Tile Index")
+    @Category("Block World")
+    @Description("Breadth-first search placing linked tiles by position")
+    static final class TileIndex extends Event {
+        @Label("Tiles")
+        int tiles;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    /**
+     * Actions read and applied from a reader.
+     */
+    @Name("csse2002.block.world.ActionsProcessed")
+    @Label("Actions Processed")
+    @Category("Block World")
+    @Description("Reading and applying a stream of actions")
+    static final class ActionsProcessed extends Event {
+        @Label("Actions")
+        long actions;
+
+        @Label("Pipelined")
+        boolean pipelined;
+    }
+
+    /**
+     * One applied action.
+     */
+    @Name("csse2002.block.world.ActionApplied")
+    @Label("Action Applied")
+    @Category("Block World")
+    @Description("Applying one action to a world map")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ActionApplied extends Event {
+        @Label("Primary Action")
+        int primary;
+
+        @Label("Secondary Action")
+        String secondary;
+
+        @Label("Message")
+        String message;
+    }
+
+    /**
+     * A map saved to a file.
+     */
+    @Name("csse2002.block.world.MapSave")
+    @Label("Map Save")
+    @Category("Block World")
+    @Description("Saving a world map to a file")
+    static final class MapSave extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Tiles")
+        int tiles;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+}
@@ -0,0 +1,199 @@
+package csse2002.block.world;
+
+import java.util.Arrays;
+
+/**
+ * The first move of a shortest path to one target tile, for every tile of a
+ * {@link WorldMap}.
+ *
+ * The field is computed by a single breadth-first search backwards from the
+ * target, following exits in reverse under the rules of
+ * {@link Builder#canEnter(Tile)}. It stores one byte per tile, so any number
+ * of builders heading for the target can each find their next MOVE_BUILDER
+ * direction with one array read.
+ *
+ * The field reflects the map when it was computed. Call {@link #recompute()}
+ * after blocks or exits change.
+ */
+public class FlowField {
+
+    /* Stored for the target itself and for tiles that can't reach it. */
+    private static final byte AT_TARGET = 4;
+    private static final byte UNREACHABLE = -1;
+
+    /** The map the field covers. */
+    private final WorldMap map;
+
+    /** The map's tiles. */
+    private final SparseTileArray tiles;
+
+    /** The tile builders are heading for. */
+    private final Tile target;
+
+    /** Direction ordinal of the first move from each tile, by tile id. */
+    private final byte[] next;
+
+    /* Exits in reverse: the tiles with an exit to tile id are
+     * sources[firstSource[id]] to sources[firstSource[id + 1] - 1], with the
+     * exit's direction in sourceDirections. */
+    private final int[] firstSource;
+    private int[] sources = new int[0];
+    private byte[] sourceDirections = new byte[0];
+
+    /** Number of tiles that can reach the target, including itself. */
+    private int reachableCount;
+
+    /**
+     * Computes the field for the given map and target.
+     * @param map the map.
+     * @param target the tile builders are heading for.
+     * @require map != null, target != null
+     */
+    public FlowField(WorldMap map, Tile target) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        this.target = target;
+        int count = tiles.getTileCount();
+        next = new byte[count];
+        firstSource = new int[count + 1];
+        recompute();
+    }
+
+    /**
+     * Recomputes the field from the map's current blocks and exits.
+     */
+    public void recompute() {
+        reverseExits();
+        Arrays.fill(next, UNREACHABLE);
+        reachableCount = 0;
+        int goal = tiles.getTileId(target);
+        if (goal == -1) {
+            return;
+        }
+
+        int[] queue = new int[next.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = goal;
+        next[goal] = AT_TARGET;
+        while (head < tail) {
+            int id = queue[head++];
+            int height = tiles.getTile(id).getHeight();
+            for (int i = firstSource[id]; i < firstSource[id + 1]; i++) {
+                int source = sources[i];
+                if (next[source] == UNREACHABLE && Math.abs(
+                        tiles.getTile(source).getHeight() - height) <= 1) {
+                    next[source] = sourceDirections[i];
+                    queue[tail++] = source;
+                }
+            }
+        }
+        reachableCount = tail;
+    }
+
+    /**
+     * Gets the direction of the first move on a shortest path from a tile
+     * to the target.
+     * @param from the tile to move from.
+     * @return "north", "east", "south" or "west", or null if from is the
+     *      target, cannot reach it or is not on the map.
+     * @require from != null
+     */
+    public String getDirection(Tile from) {
+        int id = tiles.getTileId(from);
+        if (id == -1) {
+            return null;
+        }
+        byte direction = next[id];
+        return direction >= 0 && direction < AT_TARGET
+                ? Direction.ALL[direction].name() : null;
+    }
+
+    /**
+     * Gets the next action for the map's builder to take towards the target.
+     * @return a MOVE_BUILDER action, or null if the builder is on the target
+     *      or cannot reach it.
+     */
+    public Action getNextAction() {
+        String direction = getDirection(map.getBuilder().getCurrentTile());
+        return direction == null
+                ? null : new Action(Action.MOVE_BUILDER, direction);
+    }
+
+    /**
+     * Checks whether a tile can reach the target.
+     * @param from the tile.
+     * @return true if from is the target or has a path to it.
+     * @require from != null
+     */
+    public boolean canReach(Tile from) {
+        int id = tiles.getTileId(from);
+        return id != -1 && next[id] != UNREACHABLE;
+    }
+
+    /**
+     * Gets the number of tiles that can reach the target, including the
+     * target itself.
+     * @return number of tiles.
+     */
+    public int getReachableCount() {
+        return reachableCount;
+    }
+
+    /**
+     * Gets the tile builders are heading for.
+     * @return the target.
+     */
+    public Tile getTarget() {
+        return target;
+    }
+
+    /**
+     * Gets the direction ordinal of the first move from a tile.
+     * @param id tile id.
+     * @return a Direction ordinal, 4 at the target, or -1 if unreachable.
+     */
+    byte getDirectionOrdinal(int id) {
+        return next[id];
+    }
+
+    /**
+     * Builds the reverse exit lists from the map's north, east, south and
+     * west exits.
+     */
+    private void reverseExits() {
+        int count = next.length;
+        Arrays.fill(firstSource, 0);
+        int exits = 0;
+        for (int id = 0; id < count; id++) {
+            Tile tile = tiles.getTile(id);
+            for (Direction direction : Direction.ALL) {
+                int to = tiles.getTileId(tile.getExit(direction.name()));
+                if (to != -1) {
+                    firstSource[to + 1]++;
+                    exits++;
+                }
+            }
+        }
+        for (int id = 0; id < count; id++) {
+            firstSource[id + 1] += firstSource[id];
+        }
+        if (sources.length < exits) {
+            sources = new int[exits];
+            sourceDirections = new byte[exits];
+        }
+        // Fill each list, keeping a cursor per list.
+        int[] fill = Arrays.copyOf(firstSource, count);
+        for (int id = 0; id < count; id++) {
+            Tile tile = tiles.getTile(id);
+            for (Direction direction : Direction.ALL) {
+                int to = tiles.getTileId(tile.getExit(direction.name()));
+                if (to != -1) {
+                    sources[fill[to]] = id;
+                    sourceDirections[fill[to]] = (byte) direction.ordinal();
+                    fill[to]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds shortest sequences of MOVE_BUILDER directions between tiles of a
+ * large {@link WorldMap} by searching an abstraction of the map, in the
+ * style of HPA*.
+ *
+ * Tile positions are split into square clusters. Tiles with an exit to or
+ * from another cluster are entrances, and for each cluster the number of
+ * moves between every pair of its entrances, staying inside the cluster, is
+ * precomputed. A query searches only entrances, then refines each step of
+ * the result into moves within a single cluster. Moves follow the same
+ * rules as {@link Builder#canEnter(Tile)}, so paths are as short as those of
+ * {@link PathFinder}.
+ *
+ * The finder observes the map. A block placed or removed marks only that
+ * tile's cluster for recomputation, and a changed exit the clusters at both
+ * of its ends; clusters are recomputed when a query next needs them. Moves
+ * between clusters are checked when searching, so they never go stale.
+ *
+ * Exits are assumed to agree with tile positions, which is the case for any
+ * map that loaded successfully. The finder is not thread safe.
+ */
+public class HierarchicalPathFinder implements AutoCloseable {
+
+    /* How a tile was reached in the abstract search. */
+    private static final byte INTRA_CLUSTER = 0;
+    private static final byte BETWEEN_CLUSTERS = 1;
+
+    /**
+     * The tiles of one cluster and the distances between its entrances.
+     */
+    private static class Cluster {
+        /** Ids of the tiles in the cluster. */
+        final int[] tiles;
+        /** Ids of the cluster's entrances. */
+        int[] entrances = new int[0];
+        /** distances[i][j] is the moves from entrance i to entrance j within
+         * the cluster, or -1 if there is no such route. */
+        int[][] distances = new int[0][];
+        /** True if the cluster must be recomputed before use. */
+        boolean dirty = true;
+
+        Cluster(int[] tiles) {
+            this.tiles = tiles;
+        }
+    }
+
+    /** The map to search. */
+    private final WorldMap map;
+
+    /** The map's tiles. */
+    private final SparseTileArray tiles;
+
+    /** All clusters. */
+    private final Cluster[] clusters;
+
+    /* Per tile: its cluster, its index within the cluster's tiles and its
+     * index within the cluster's entrances, or -1 if not an entrance. */
+    private final int[] clusterOf;
+    private final int[] localIndex;
+    private final int[] entranceIndex;
+
+    /* Scratch space for searches within one cluster, indexed by local
+     * index. */
+    private final int[] localDistances;
+    private final int[] localQueue;
+    private final int[] localParents;
+    private final byte[] localDirections;
+
+    /* Abstract search state, indexed by tile id; see PathFinder. */
+    private final int[] stamps;
+    private final int[] gScores;
+    private final int[] parents;
+    private final byte[] parentKinds;
+    private final boolean[] closed;
+    private int search;
+
+    /** Binary min-heap of (f-score &lt;&lt; 32 | tile id). */
+    private long[] heap = new long[64];
+    private int heapSize;
+
+    /** Moves from each entrance of the goal's cluster to the goal. */
+    private int[] goalDistances = new int[0];
+
+    /** Abstract nodes expanded by the most recent search. */
+    private int expanded;
+
+    /** Number of times a cluster has been recomputed. */
+    private long rebuilds;
+
+    /** Marks clusters changed by the map. */
+    private final WorldObserver invalidator = new WorldObserver() {
+        @Override
+        public void blockPlaced(Tile tile, Block block) {
+            invalidate(tile);
+        }
+
+        @Override
+        public void blockRemoved(Tile tile, Block block) {
+            invalidate(tile);
+        }
+
+        @Override
+        public void exitChanged(Tile tile, String name, Tile previous,
+                                Tile target) {
+            invalidate(tile);
+            invalidate(previous);
+            invalidate(target);
+        }
+    };
+
+    /**
+     * Creates a path finder for the given map and starts observing it.
+     * @param map the map to search.
+     * @param clusterSize width and height of a cluster, in tiles.
+     * @require map != null, 0 &lt; clusterSize &le; 256
+     */
+    public HierarchicalPathFinder(WorldMap map, int clusterSize) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        int count = tiles.getTileCount();
+        clusterOf = new int[count];
+        localIndex = new int[count];
+        entranceIndex = new int[count];
+        Arrays.fill(entranceIndex, -1);
+
+        // Group tiles by cluster coordinates.
+        Map<Long, List<Integer>> members = new HashMap<>();
+        List<List<Integer>> order = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            long key = ((long) Math.floorDiv(tiles.getTileX(id), clusterSize)
+                    << 32) | (Math.floorDiv(tiles.getTileY(id), clusterSize)
+                    & 0xFFFFFFFFL);
+            List<Integer> list = members.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                members.put(key, list);
+                order.add(list);
+            }
+            list.add(id);
+        }
+        clusters = new Cluster[order.size()];
+        for (int c = 0; c < clusters.length; c++) {
+            List<Integer> list = order.get(c);
+            int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = list.get(i);
+                clusterOf[ids[i]] = c;
+                localIndex[ids[i]] = i;
+            }
+            clusters[c] = new Cluster(ids);
+        }
+
+        int maxClusterTiles = clusterSize * clusterSize;
+        localDistances = new int[maxClusterTiles];
+        localQueue = new int[maxClusterTiles];
+        localParents = new int[maxClusterTiles];
+        localDirections = new byte[maxClusterTiles];
+        stamps = new int[count];
+        gScores = new int[count];
+        parents = new int[count];
+        parentKinds = new byte[count];
+        closed = new boolean[count];
+        map.addObserver(invalidator);
+    }
+
+    /**
+     * Finds a shortest path for the builder from one tile to another.
+     * @param from tile to start from.
+     * @param to tile to reach.
+     * @return the directions to move in, in order; empty if from is to, or
+     *      null if to cannot be reached or either tile is not on the map.
+     * @require from != null, to != null
+     */
+    public List<String> findPath(Tile from, Tile to) {
+        int start = tiles.getTileId(from);
+        int goal = tiles.getTileId(to);
+        expanded = 0;
+        if (start == -1 || goal == -1) {
+            return null;
+        }
+        if (start == goal) {
+            return new ArrayList<>();
+        }
+        int goalCluster = clusterOf[goal];
+        prepareGoal(goal);
+        newSearch();
+        int goalX = tiles.getTileX(goal);
+        int goalY = tiles.getTileY(goal);
+
+        open(start, 0, -1, INTRA_CLUSTER, heuristic(start, goalX, goalY));
+        while (heapSize > 0) {
+            int current = pop();
+            if (closed[current]) {
+                continue;
+            }
+            if (current == goal) {
+                return refine(start, goal);
+            }
+            closed[current] = true;
+            expanded++;
+            int c = clusterOf[current];
+            Cluster cluster = cluster(c);
+            int g = gScores[current];
+
+            if (current == start) {
+                // Moves from the start to its cluster's entrances, and to
+                // the goal if it is in the same cluster.
+                searchCluster(c, localIndex[start]);
+                for (int e : cluster.entrances) {
+                    int d = localDistances[localIndex[e]];
+                    if (d > 0) {
+                        relax(e, g + d, current, INTRA_CLUSTER, goalX, goalY);
+                    }
+                }
+                if (c == goalCluster) {
+                    int d = localDistances[localIndex[goal]];
+                    if (d > 0) {
+                        relax(goal, g + d, current, INTRA_CLUSTER, goalX,
+                                goalY);
+                    }
+                }
+            }
+            int entrance = entranceIndex[current];
+            if (entrance == -1) {
+                continue;
+            }
+            if (current != start) {
+                int[] row = cluster.distances[entrance];
+                for (int j = 0; j < row.length; j++) {
+                    if (row[j] > 0) {
+                        relax(cluster.entrances[j], g + row[j], current,
+                                INTRA_CLUSTER, goalX, goalY);
+                    }
+                }
+                if (c == goalCluster && goalDistances[entrance] > 0) {
+                    relax(goal, g + goalDistances[entrance], current,
+                            INTRA_CLUSTER, goalX, goalY);
+                }
+            }
+            // Moves to other clusters, checked against current heights.
+            Tile tile = tiles.getTile(current);
+            for (Direction direction : Direction.ALL) {
+                int next = step(tile, direction);
+                if (next != -1 && clusterOf[next] != c) {
+                    relax(next, g + 1, current, BETWEEN_CLUSTERS, goalX,
+                            goalY);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a shortest path for the map's builder from its current tile.
+     * @param to tile to reach.
+     * @return the directions to move in, as for
+     *      {@link #findPath(Tile, Tile)}.
+     * @require to != null
+     */
+    public List<String> findPath(Tile to) {
+        return findPath(map.getBuilder().getCurrentTile(), to);
+    }
+
+    /**
+     * Gets the number of entrances expanded by the most recent search.
+     * @return number of abstract nodes expanded.
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /**
+     * Gets the number of times a cluster has been recomputed, including the
+     * first time each was used.
+     * @return number of cluster computations.
+     */
+    public long getRebuildCount() {
+        return rebuilds;
+    }
+
+    /**
+     * Gets the number of clusters the map is split into.
+     * @return number of clusters.
+     */
+    public int getClusterCount() {
+        return clusters.length;
+    }
+
+    /**
+     * Stops observing the map.
+     */
+    @Override
+    public void close() {
+        map.removeObserver(invalidator);
+    }
+
+    /**
+     * Marks a tile's cluster for recomputation.
+     * @param tile the tile, or null.
+     */
+    private void invalidate(Tile tile) {
+        if (tile == null) {
+            return;
+        }
+        int id = tiles.getTileId(tile);
+        if (id != -1) {
+            clusters[clusterOf[id]].dirty = true;
+        }
+    }
+
+    /**
+     * Gets a cluster, recomputing it first if it is dirty.
+     * @param c cluster index.
+     * @return the cluster.
+     */
+    private Cluster cluster(int c) {
+        Cluster cluster = clusters[c];
+        if (cluster.dirty) {
+            rebuild(c);
+        }
+        return cluster;
+    }
+
+    /**
+     * Finds a cluster's entrances and the distances between them.
+     * @param c cluster index.
+     */
+    private void rebuild(int c) {
+        Cluster cluster = clusters[c];
+        for (int e : cluster.entrances) {
+            entranceIndex[e] = -1;
+        }
+        int count = 0;
+        int[] found = new int[cluster.tiles.length];
+        for (int id : cluster.tiles) {
+            if (isEntrance(id, c)) {
+                entranceIndex[id] = count;
+                found[count++] = id;
+            }
+        }
+        cluster.entrances = Arrays.copyOf(found, count);
+        cluster.distances = new int[count][];
+        for (int i = 0; i < count; i++) {
+            searchCluster(c, localIndex[cluster.entrances[i]]);
+            int[] row = new int[count];
+            for (int j = 0; j < count; j++) {
+                row[j] = localDistances[localIndex[cluster.entrances[j]]];
+            }
+            cluster.distances[i] = row;
+        }
+        cluster.dirty = false;
+        rebuilds++;
+    }
+
+    /**
+     * Checks whether a tile has a north, east, south or west exit to or
+     * from another cluster.
+     * @param id tile id.
+     * @param c the tile's cluster.
+     * @return true if the tile is an entrance.
+     */
+    private boolean isEntrance(int id, int c) {
+        Tile tile = tiles.getTile(id);
+        int x = tiles.getTileX(id);
+        int y = tiles.getTileY(id);
+        for (Direction direction : Direction.ALL) {
+            int next = tiles.getTileId(tile.getExit(direction.name()));
+            if (next != -1 && clusterOf[next] != c) {
+                return true;
+            }
+            Tile neighbour = map.getTile(
+                    new Position(x + direction.dx, y + direction.dy));
+            if (neighbour != null
+                    && neighbour.getExit(direction.opposite().name()) == tile
+                    && clusterOf[tiles.getTileId(neighbour)] != c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the tile the builder could move to in a direction.
+     * @param tile tile to move from.
+     * @param direction direction to move.
+     * @return id of the tile entered, or -1 if the move is not allowed.
+     */
+    private int step(Tile tile, Direction direction) {
+        Tile next = tile.getExit(direction.name());
+        if (next == null
+                || Math.abs(next.getHeight() - tile.getHeight()) > 1) {
+            return -1;
+        }
+        return tiles.getTileId(next);
+    }
+
+    /**
+     * Breadth-first search within one cluster, filling localDistances with
+     * moves from the start (-1 if unreachable), and localParents and
+     * localDirections with the tile each tile was entered from and the
+     * direction moved.
+     * @param c cluster index.
+     * @param start local index of the tile to start from.
+     */
+    private void searchCluster(int c, int start) {
+        int[] ids = clusters[c].tiles;
+        Arrays.fill(localDistances, 0, ids.length, -1);
+        int head = 0;
+        int tail = 0;
+        localQueue[tail++] = start;
+        localDistances[start] = 0;
+        while (head < tail) {
+            int local = localQueue[head++];
+            Tile tile = tiles.getTile(ids[local]);
+            for (Direction direction : Direction.ALL) {
+                int next = step(tile, direction);
+                if (next == -1 || clusterOf[next] != c) {
+                    continue;
+                }
+                int nextLocal = localIndex[next];
+                if (localDistances[nextLocal] == -1) {
+                    localDistances[nextLocal] = localDistances[local] + 1;
+                    localDirections[nextLocal] = (byte) direction.ordinal();
+                    localParents[nextLocal] = local;
+                    localQueue[tail++] = nextLocal;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the moves from every entrance of the goal's cluster to the goal.
+     * @param goal goal tile id.
+     */
+    private void prepareGoal(int goal) {
+        int c = clusterOf[goal];
+        Cluster cluster = cluster(c);
+        if (goalDistances.length < cluster.entrances.length) {
+            goalDistances = new int[cluster.entrances.length];
+        }
+        for (int i = 0; i < cluster.entrances.length; i++) {
+            searchCluster(c, localIndex[cluster.entrances[i]]);
+            goalDistances[i] = localDistances[localIndex[goal]];
+        }
+    }
+
+    /**
+     * Turns the abstract path into moves, searching only within the clusters
+     * it passes through.
+     * @param start start tile id.
+     * @param goal goal tile id.
+     * @return the directions from start to goal.
+     */
+    private List<String> refine(int start, int goal) {
+        List<String> path = new ArrayList<>(gScores[goal]);
+        for (int current = goal; current != start;
+             current = parents[current]) {
+            int parent = parents[current];
+            if (parentKinds[current] == BETWEEN_CLUSTERS) {
+                Tile from = tiles.getTile(parent);
+                for (Direction direction : Direction.ALL) {
+                    if (from.getExit(direction.name())
+                            == tiles.getTile(current)) {
+                        path.add(direction.name());
+                        break;
+                    }
+                }
+                continue;
+            }
+            // Walk back along the search tree within the cluster.
+            int c = clusterOf[current];
+            searchCluster(c, localIndex[parent]);
+            int local = localIndex[current];
+            int target = localIndex[parent];
+            while (local != target) {
+                path.add(Direction.ALL[localDirections[local]].name());
+                local = localParents[local];
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Starts a new abstract search.
+     */
+    private void newSearch() {
+        if (++search == 0) {
+            Arrays.fill(stamps, 0);
+            search = 1;
+        }
+        heapSize = 0;
+    }
+
+    /**
+     * Offers a route to a tile, keeping it if it is the shortest so far.
+     */
+    private void relax(int id, int g, int parent, byte kind, int goalX,
+                       int goalY) {
+        if (stamps[id] == search && (closed[id] || gScores[id] <= g)) {
+            return;
+        }
+        open(id, g, parent, kind, g + heuristic(id, goalX, goalY));
+    }
+
+    /**
+     * Records a route to a tile and adds it to the open set.
+     */
+    private void open(int id, int g, int parent, byte kind, int f) {
+        if (stamps[id] != search) {
+            stamps[id] = search;
+            closed[id] = false;
+        }
+        gScores[id] = g;
+        parents[id] = parent;
+        parentKinds[id] = kind;
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        long entry = ((long) f << 32) | id;
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heap[up] <= entry) {
+                break;
+            }
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = entry;
+    }
+
+    /**
+     * Removes the smallest entry from the heap.
+     * @return the tile id of the entry.
+     */
+    private int pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return (int) top;
+    }
+
+    /**
+     * Manhattan distance from a tile to the goal.
+     */
+    private int heuristic(int id, int goalX, int goalY) {
+        return Math.abs(tiles.getTileX(id) - goalX)
+                + Math.abs(tiles.getTileY(id) - goalY);
+    }
+}
@@ -5,6 +5,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Handles top-level interaction of performing actions on a world map.
@@ -46,41 +48,184 @@ public class Main {
      * 
      * To print an exception to System.err, use System.err.println(e), where
      * e is the caught exception.
+     *
+     * The 3 parameters may be preceded by options, each starting with "--".
+     * An unknown option is treated like a wrong number of parameters.
+     * <ul>
+     * <li> "--pipelined" reads, applies and prints actions on separate
+     *     threads using a {@link PipelinedActionProcessor}. The output is
+     *     unchanged. </li>
+     * <li> "--metrics" records the latency and failures of each action in a
+     *     {@link MetricsRegistry} and prints a summary to System.err when
+     *     the program exits. </li>
+     * <li> "--profile" prints the wall-clock time, CPU time, allocated bytes
+     *     and garbage collection time of loading the map, processing actions
+     *     and saving the map to System.err when the program finishes or
+     *     fails, with the actions processed per second. "--profile=json"
+     *     prints the same as one line of JSON. See {@link PhaseProfiler}.
+     *     </li>
+     * <li> "--metrics-port=PORT" records actions as for "--metrics" and
+     *     serves them with the map's state at
+     *     http://127.0.0.1:PORT/metrics while the program runs, using a
+     *     {@link MetricsServer}. PORT is from 0 to 65535, 0 choosing any
+     *     free port. If the port cannot be bound, the exception is printed
+     *     and the program exits with status 1. </li>
+     * </ul>
      * @param args the input arguments to the program
      */
     public static void main(String[] args) {
-        if (args.length != 3) {
+        // Split leading options from the positional parameters.
+        List<String> options = new ArrayList<>();
+        int firstParameter = 0;
+        while (firstParameter < args.length
+                && args[firstParameter].startsWith("--")) {
+            options.add(args[firstParameter]);
+            firstParameter++;
+        }
+        boolean pipelined = options.remove("--pipelined");
+        boolean metrics = options.remove("--metrics");
+        boolean profileJson = options.remove("--profile=json");
+        boolean profile = options.remove("--profile") || profileJson;
+        int metricsPort = -1;
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.startsWith("--metrics-port=")) {
+                try {
+                    int port = Integer.parseInt(
+                            option.substring("--metrics-port=".length()));
+                    if (port >= 0 && port <= 65535) {
+                        metricsPort = port;
+                        options.remove(i);
+                    }
+                } catch (NumberFormatException e) {
+                    // Left in options to be reported as unknown.
+                }
+                break;
+            }
+        }
+
+        if (args.length - firstParameter != 3 || !options.isEmpty()) {
             System.err.println("Usage: program inputMap actions outputMap");
             System.exit(1);
         }
+        String[] parameters = new String[3];
+        System.arraycopy(args, firstParameter, parameters, 0, 3);
+
+        MetricsRegistry registry = null;
+        if (metrics || metricsPort >= 0) {
+            registry = new MetricsRegistry();
+            MetricsRegistry.install(registry);
+        }
+        if (metrics) {
+            registry.dumpOnExit(System.err);
+        }
+        MetricsServer server = null;
+
+        PhaseProfiler profiler = profile ? new PhaseProfiler() : null;
 
         // Exit code if the code throws at each point.
         int exitCode = -1;
 
         try {
             exitCode = 2;
-            WorldMap map = new WorldMap(args[0]);
+            if (profiler != null) {
+                profiler.start("load");
+            }
+            WorldMap map = new WorldMap(parameters[0]);
+            if (profiler != null) {
+                profiler.stop();
+            }
+
+            if (metricsPort >= 0) {
+                server = new MetricsServer(map, registry);
+                try {
+                    server.start(metricsPort);
+                } catch (IOException e) {
+                    System.err.println(e);
+                    System.exit(1);
+                }
+            }
 
             exitCode = 3;
             Reader internalReader;
-            if (args[1].equals("System.in")) {
+            if (parameters[1].equals("System.in")) {
                 internalReader = new InputStreamReader(System.in);
             } else {
-                internalReader = new FileReader(args[1]);
+                internalReader = new FileReader(parameters[1]);
             }
             BufferedReader reader = new BufferedReader(internalReader);
 
             exitCode = 4;
-            Action.processActions(reader, map);
+            ActionCounter counter = new ActionCounter();
+            if (profiler != null) {
+                map.addObserver(counter);
+                profiler.start("actions");
+            }
+            try {
+                if (pipelined) {
+                    new PipelinedActionProcessor().processActions(reader,
+                            map);
+                } else {
+                    Action.processActions(reader, map);
+                }
+            } finally {
+                if (profiler != null) {
+                    profiler.stop(counter.actions);
+                    map.removeObserver(counter);
+                }
+            }
 
             exitCode = 5;
-            map.saveMap(args[2]);
+            if (profiler != null) {
+                profiler.start("save");
+            }
+            map.saveMap(parameters[2]);
+            if (profiler != null) {
+                profiler.stop();
+            }
 
         } catch (BlockWorldException | ActionFormatException
                 | IOException e) {
             // Print and exit with the appropriate exit code.
             System.err.println(e);
+            printProfile(profiler, profileJson);
             System.exit(exitCode);
         }
+        printProfile(profiler, profileJson);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Prints the phases measured by a profiler to System.err.
+     * @param profiler the profiler, or null if not profiling.
+     * @param json true to print JSON, false for human-readable lines.
+     */
+    private static void printProfile(PhaseProfiler profiler, boolean json) {
+        if (profiler == null) {
+            return;
+        }
+        // Includes a phase cut short by an exception.
+        profiler.stop();
+        if (json) {
+            profiler.printJson(System.err);
+        } else {
+            profiler.print(System.err);
+        }
+    }
+
+    /**
+     * Counts the actions applied to a map.
+     */
+    private static class ActionCounter implements WorldObserver {
+
+        /** Number of actions applied. */
+        private long actions;
+
+        @Override
+        public void actionCompleted(Action action) {
+            actions++;
+        }
     }
 }
@@ -0,0 +1,502 @@
+package csse2002.block.world;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The heap memory retained by a {@link WorldMap}, by subsystem.
+ *
+ * {@link #estimate(WorldMap)} works out sizes from the numbers of tiles,
+ * blocks and exits and the layout of the collections that hold them, in
+ * time linear in the number of tiles and without reflection. It uses this
+ * JVM's header and reference sizes, so it is right for compressed and
+ * uncompressed references alike, but it assumes the growth policies of the
+ * JDK 8 collections and leaves out caches built on demand, such as the exit
+ * targets kept for {@link Builder#canEnter(Tile)}.
+ *
+ * {@link #measure(WorldMap)} walks every object reachable from each
+ * subsystem, counting each object once and sizing it from the types of its
+ * fields with this JVM's header, reference and alignment sizes. It leaves
+ * out any padding the JVM puts between fields, which is rare since fields
+ * are packed by size. It reads private fields of the JDK collections, so it
+ * needs Java 8, or <code>--add-opens java.base/java.util=ALL-UNNAMED</code>
+ * on later JDKs, and is far slower than estimating. The tests check it
+ * against heap histograms.
+ *
+ * Objects shared between subsystems are counted in the first subsystem to
+ * reach them, in the order of {@link Subsystem}. Objects the JVM shares
+ * between all maps, such as cached small Integers and string literals, are
+ * counted too when measuring, but not when estimating.
+ */
+public class MemoryReport {
+
+    /**
+     * Parts of a map whose memory is reported.
+     */
+    public enum Subsystem {
+        /** The Tile objects themselves. */
+        TILES,
+        /** Each tile's list of blocks and the blocks in it. */
+        BLOCK_COLUMNS,
+        /** Each tile's map of exits and its exit names. */
+        EXITS,
+        /** The sparse tile array's position and id lookups. */
+        POSITION_INDEX,
+        /** The builder, its name and its inventory. */
+        BUILDER_INVENTORY
+    }
+
+    /* Field sizes of this JVM. */
+    private static final int REFERENCE;
+    private static final int HEADER;
+    private static final int ARRAY_HEADER;
+    private static final int ALIGNMENT;
+
+    static {
+        boolean compressedOops = true;
+        boolean compressedClasses = true;
+        int alignment = 8;
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory
+                    .getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            compressedOops = Boolean.parseBoolean(hotSpot
+                    .getVMOption("UseCompressedOops").getValue());
+            compressedClasses = Boolean.parseBoolean(hotSpot
+                    .getVMOption("UseCompressedClassPointers").getValue());
+            alignment = Integer.parseInt(hotSpot
+                    .getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (RuntimeException e) {
+            // Not HotSpot. Assume the usual 64 bit layout.
+        }
+        REFERENCE = compressedOops ? 4 : 8;
+        HEADER = compressedClasses ? 12 : 16;
+        ALIGNMENT = alignment;
+        ARRAY_HEADER = (int) align(HEADER + 4, 8);
+    }
+
+    /** Bytes retained by each subsystem. */
+    private final long[] bytes = new long[Subsystem.values().length];
+
+    /** Objects retained by each subsystem. */
+    private final long[] objects = new long[Subsystem.values().length];
+
+    /** Whether sizes were measured rather than estimated. */
+    private final boolean exact;
+
+    /**
+     * Creates an empty report.
+     * @param exact whether sizes are measured.
+     */
+    private MemoryReport(boolean exact) {
+        this.exact = exact;
+    }
+
+    /**
+     * Estimates the memory retained by a map from its contents.
+     * @param map the map.
+     * @return the report.
+     * @require map != null
+     */
+    public static MemoryReport estimate(WorldMap map) {
+        MemoryReport report = new MemoryReport(false);
+        SparseTileArray tiles = map.getTileArray();
+        int tileCount = tiles.getTileCount();
+
+        // Tile: exits, blocks, exit targets and observer.
+        report.add(Subsystem.TILES, tileCount, object(0, 4));
+        for (int id = 0; id < tileCount; id++) {
+            Tile tile = tiles.getTile(id);
+            int height = tile.getHeight();
+            // Block lists are made with room for MAX_BLOCKS.
+            report.add(Subsystem.BLOCK_COLUMNS, 1, arrayList());
+            report.add(Subsystem.BLOCK_COLUMNS, 1,
+                    array(REFERENCE, Math.max(Tile.MAX_BLOCKS, height)));
+            report.add(Subsystem.BLOCK_COLUMNS, height, object(0, 0));
+            // TreeMap: size and modCount; comparator, root, entrySet,
+            // navigableKeySet, descendingMap, keySet and values. Entries:
+            // color; key, value, left, right and parent. Names are the
+            // shared direction names.
+            report.add(Subsystem.EXITS, 1, object(8, 7));
+            report.add(Subsystem.EXITS, tile.getExits().size(),
+                    object(1, 5));
+        }
+
+        // SparseTileArray: the three collections and two coordinate arrays.
+        report.add(Subsystem.POSITION_INDEX, 1, object(0, 5));
+        report.add(Subsystem.POSITION_INDEX, 1, arrayList());
+        if (tileCount > 0) {
+            report.add(Subsystem.POSITION_INDEX, 1,
+                    array(REFERENCE, arrayListCapacity(tileCount)));
+        }
+        // HashMap: size, modCount, threshold and loadFactor; table,
+        // entrySet, keySet and values. Nodes: hash; key, value and next.
+        // Keys are Positions of two ints.
+        report.add(Subsystem.POSITION_INDEX, 1, object(16, 4));
+        if (tileCount > 0) {
+            report.add(Subsystem.POSITION_INDEX, 1,
+                    array(REFERENCE, hashMapCapacity(tileCount)));
+        }
+        report.add(Subsystem.POSITION_INDEX, tileCount, object(4, 3));
+        report.add(Subsystem.POSITION_INDEX, tileCount, object(8, 0));
+        // IdentityHashMap: size and modCount; table, entrySet, keySet and
+        // values. Ids above the Integer cache are boxed.
+        report.add(Subsystem.POSITION_INDEX, 1, object(8, 4));
+        report.add(Subsystem.POSITION_INDEX, 1,
+                array(REFERENCE, 2 * identityCapacity(tileCount)));
+        report.add(Subsystem.POSITION_INDEX, Math.max(0, tileCount - 128),
+                object(4, 0));
+        int coordinates = 16;
+        while (coordinates < tileCount) {
+            coordinates *= 2;
+        }
+        report.add(Subsystem.POSITION_INDEX, 2, array(4, coordinates));
+
+        // Builder: contents, currentTile, name and observer.
+        Builder builder = map.getBuilder();
+        int inventory = builder.getInventory().size();
+        report.add(Subsystem.BUILDER_INVENTORY, 1, object(0, 4));
+        // String: hash; value.
+        report.add(Subsystem.BUILDER_INVENTORY, 1, object(4, 1));
+        report.add(Subsystem.BUILDER_INVENTORY, 1,
+                array(2, builder.getName().length()));
+        report.add(Subsystem.BUILDER_INVENTORY, 1, arrayList());
+        if (inventory > 0) {
+            report.add(Subsystem.BUILDER_INVENTORY, 1, array(REFERENCE,
+                    arrayListCapacity(inventory)));
+        }
+        report.add(Subsystem.BUILDER_INVENTORY, inventory, object(0, 0));
+        return report;
+    }
+
+    /**
+     * Measures the memory retained by a map by walking its objects.
+     * @param map the map.
+     * @return the report.
+     * @require map != null
+     */
+    public static MemoryReport measure(WorldMap map) {
+        MemoryReport report = new MemoryReport(true);
+        Set<Object> seen =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        SparseTileArray tiles = map.getTileArray();
+        List<Tile> tileList = new ArrayList<>(tiles.getTileCount());
+        for (int id = 0; id < tiles.getTileCount(); id++) {
+            tileList.add(tiles.getTile(id));
+        }
+        // Tiles are counted first and then act as the walls between the
+        // subsystems, so walking one tile's exits does not reach the
+        // tiles they lead to.
+        for (Tile tile : tileList) {
+            if (seen.add(tile)) {
+                report.add(Subsystem.TILES, 1, shallowSize(tile));
+            }
+        }
+        Field blocks = field(Tile.class, "blocks");
+        Field exits = field(Tile.class, "exits");
+        Field exitTargets = field(Tile.class, "exitTargets");
+        for (Tile tile : tileList) {
+            report.walk(Subsystem.BLOCK_COLUMNS, read(blocks, tile), seen);
+        }
+        for (Tile tile : tileList) {
+            report.walk(Subsystem.EXITS, read(exits, tile), seen);
+            report.walk(Subsystem.EXITS, read(exitTargets, tile), seen);
+        }
+        report.walk(Subsystem.POSITION_INDEX, tiles, seen);
+        report.walk(Subsystem.BUILDER_INVENTORY, map.getBuilder(), seen);
+        return report;
+    }
+
+    /**
+     * Checks whether the sizes were measured rather than estimated.
+     * @return true if created by {@link #measure(WorldMap)}.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Gets the bytes retained by a subsystem.
+     * @param subsystem the subsystem.
+     * @return the bytes.
+     * @require subsystem != null
+     */
+    public long getBytes(Subsystem subsystem) {
+        return bytes[subsystem.ordinal()];
+    }
+
+    /**
+     * Gets the number of objects retained by a subsystem.
+     * @param subsystem the subsystem.
+     * @return the number of objects.
+     * @require subsystem != null
+     */
+    public long getObjects(Subsystem subsystem) {
+        return objects[subsystem.ordinal()];
+    }
+
+    /**
+     * Gets the bytes retained by all subsystems.
+     * @return the bytes.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (long subsystem : bytes) {
+            total += subsystem;
+        }
+        return total;
+    }
+
+    /**
+     * Describes the report as one line per subsystem and a total, e.g.
+     * <pre>
+     * TILES                 131072 bytes     4096 objects
+     * ...
+     * total                 917504 bytes (estimated)
+     * </pre>
+     * @return the description.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Subsystem subsystem : Subsystem.values()) {
+            text.append(String.format("%-17s %12d bytes %8d objects%n",
+                    subsystem, getBytes(subsystem), getObjects(subsystem)));
+        }
+        text.append(String.format("%-17s %12d bytes (%s)", "total",
+                getTotalBytes(), exact ? "measured" : "estimated"));
+        return text.toString();
+    }
+
+    /**
+     * Adds objects of one size to a subsystem.
+     * @param subsystem the subsystem.
+     * @param count number of objects.
+     * @param size bytes per object.
+     */
+    private void add(Subsystem subsystem, long count, long size) {
+        bytes[subsystem.ordinal()] += count * size;
+        objects[subsystem.ordinal()] += count;
+    }
+
+    /**
+     * Adds every object reachable from a root to a subsystem, without
+     * passing through tiles or objects already counted.
+     * @param subsystem the subsystem.
+     * @param root the root, or null.
+     * @param seen objects already counted.
+     */
+    private void walk(Subsystem subsystem, Object root, Set<Object> seen) {
+        Deque<Object> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (!seen.add(object)) {
+                continue;
+            }
+            add(subsystem, 1, shallowSize(object));
+            Class<?> type = object.getClass();
+            if (type.isArray()) {
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < Array.getLength(object); i++) {
+                        push(pending, Array.get(object, i), seen);
+                    }
+                }
+                continue;
+            }
+            for (; type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())
+                            && !field.getType().isPrimitive()) {
+                        field.setAccessible(true);
+                        push(pending, read(field, object), seen);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues an object to be walked, unless it is outside the map.
+     * @param pending objects to walk.
+     * @param object the object, or null.
+     * @param seen objects already counted.
+     */
+    private static void push(Deque<Object> pending, Object object,
+                             Set<Object> seen) {
+        if (object == null || seen.contains(object)
+                || object instanceof Tile || object instanceof Class
+                || object instanceof WorldObserver) {
+            return;
+        }
+        pending.push(object);
+    }
+
+    /**
+     * Gets the size of an object, without the objects it refers to.
+     * @param object the object.
+     * @return the size in bytes.
+     */
+    private static long shallowSize(Object object) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            return array(fieldSize(type.getComponentType()),
+                    Array.getLength(object));
+        }
+        long size = HEADER;
+        for (; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        return align(size, ALIGNMENT);
+    }
+
+    /**
+     * Gets the bytes taken by a field of a type.
+     * @param type the field's type.
+     * @return the size in bytes.
+     */
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * Gets a declared field, made accessible.
+     * @param type the declaring class.
+     * @param name the field's name.
+     * @return the field.
+     */
+    private static Field field(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            // The field names are those of this package's classes.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Reads an accessible field.
+     * @param field the field.
+     * @param object the object to read from.
+     * @return the field's value.
+     */
+    private static Object read(Field field, Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            // Fields are made accessible before being read.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Gets the estimated size of an object with the given fields.
+     * @param primitiveBytes total bytes of primitive fields.
+     * @param references number of reference fields.
+     * @return the size in bytes.
+     */
+    private static long object(int primitiveBytes, int references) {
+        return align(HEADER + primitiveBytes + references * REFERENCE,
+                ALIGNMENT);
+    }
+
+    /**
+     * Gets the size of an array.
+     * @param elementSize bytes per element.
+     * @param length number of elements.
+     * @return the size in bytes.
+     */
+    private static long array(int elementSize, long length) {
+        return align(ARRAY_HEADER + elementSize * length, ALIGNMENT);
+    }
+
+    /**
+     * Gets the size of an ArrayList without its array: size and modCount;
+     * elementData.
+     * @return the size in bytes.
+     */
+    private static long arrayList() {
+        return object(8, 1);
+    }
+
+    /**
+     * Gets the capacity of an ArrayList grown from empty by adding elements
+     * one at a time.
+     * @param size number of elements.
+     * @return the capacity.
+     */
+    private static long arrayListCapacity(int size) {
+        if (size == 0) {
+            return 0;
+        }
+        long capacity = 10;
+        while (capacity < size) {
+            capacity += capacity >> 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Gets the table length of a HashMap grown from empty.
+     * @param size number of entries.
+     * @return the table length.
+     */
+    private static long hashMapCapacity(int size) {
+        long capacity = 16;
+        while (size > capacity * 3 / 4) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Gets the capacity of an IdentityHashMap grown from empty. Its table
+     * holds two references per unit of capacity.
+     * @param size number of entries.
+     * @return the capacity.
+     */
+    private static long identityCapacity(int size) {
+        long capacity = 32;
+        while (3L * size > 2 * capacity) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Rounds a size up to a multiple of the alignment.
+     * @param size the size.
+     * @param alignment the alignment, a power of two.
+     * @return the aligned size.
+     */
+    private static long align(long size, int alignment) {
+        return (size + alignment - 1) & -alignment;
+    }
+}
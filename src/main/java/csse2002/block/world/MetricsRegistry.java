@@ -0,0 +1,405 @@
+package csse2002.block.world;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and failure counters for applied actions, by primary
+ * action type.
+ *
+ * Once a registry is {@link #install(MetricsRegistry) installed}, every
+ * action applied through {@link Action#processAction(Action, WorldMap)} or
+ * a {@link PipelinedActionProcessor} is timed and counted, and every action
+ * line that fails to parse is counted as a format failure, and every
+ * {@link WorldMap#saveMap(String) save} is timed. With no registry
+ * installed, the cost to each action is one volatile read.
+ *
+ * Latencies are kept in fixed log-linear buckets, as in HdrHistogram: each
+ * power of two of nanoseconds is split into 16 equal buckets, so recorded
+ * values are accurate to within about 6% from 1ns to hours, in a fixed
+ * amount of memory. All updates are lock-free, so one registry can be
+ * shared by any number of threads.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Causes of failed actions.
+     */
+    public enum FailureCause {
+        /** A NoExitException was thrown. */
+        NO_EXIT,
+        /** A TooHighException was thrown. */
+        TOO_HIGH,
+        /** A TooLowException was thrown. */
+        TOO_LOW,
+        /** An InvalidBlockException was thrown. */
+        INVALID_BLOCK,
+        /** The action line or secondary action was invalid. */
+        FORMAT
+    }
+
+    /**
+     * Names of the action types, by primary action. Shared with
+     * {@link MetricsServer}, which must not modify it.
+     */
+    static final String[] TYPE_NAMES =
+            {"MOVE_BUILDER", "MOVE_BLOCK", "DIG", "DROP", "INVALID"};
+
+    /** Type of actions with an invalid primary action or unparsed lines. */
+    private static final int INVALID = TYPE_NAMES.length - 1;
+
+    /** Each power of two is split into 2^SUB_BITS buckets. */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /** Buckets per histogram, enough for any non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /** Percentiles printed by {@link #dump(PrintStream)}. */
+    private static final double[] DUMPED_PERCENTILES = {50, 90, 99, 99.9};
+
+    /** The registry actions are recorded in, or null. */
+    private static volatile MetricsRegistry installed;
+
+    /** Latency counts, BUCKETS per type. */
+    private final AtomicLongArray buckets =
+            new AtomicLongArray(TYPE_NAMES.length * BUCKETS);
+
+    /* Totals per type. */
+    private final LongAdder[] counts = new LongAdder[TYPE_NAMES.length];
+    private final LongAdder[] totalNanos = new LongAdder[TYPE_NAMES.length];
+    private final AtomicLong[] maxNanos = new AtomicLong[TYPE_NAMES.length];
+
+    /** Failures per type and cause. */
+    private final LongAdder[][] failures =
+            new LongAdder[TYPE_NAMES.length][FailureCause.values().length];
+
+    /* Totals of map saves. */
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder saveNanos = new LongAdder();
+    private final AtomicLong maxSaveNanos = new AtomicLong();
+
+    /**
+     * Creates an empty registry.
+     */
+    public MetricsRegistry() {
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            counts[type] = new LongAdder();
+            totalNanos[type] = new LongAdder();
+            maxNanos[type] = new AtomicLong();
+            for (int cause = 0; cause < failures[type].length; cause++) {
+                failures[type][cause] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Sets the registry actions are recorded in.
+     * @param registry the registry, or null to stop recording.
+     */
+    public static void install(MetricsRegistry registry) {
+        installed = registry;
+    }
+
+    /**
+     * Gets the registry actions are recorded in.
+     * @return the registry, or null if none is installed.
+     */
+    public static MetricsRegistry getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Gets the number of recorded actions of a type, including failures.
+     * @param primaryAction primary action, e.g. {@link Action#DIG}.
+     * @return number of actions.
+     */
+    public long getCount(int primaryAction) {
+        return counts[type(primaryAction)].sum();
+    }
+
+    /**
+     * Gets the number of actions of a type that failed for a cause.
+     * @param primaryAction primary action, e.g. {@link Action#DIG}. Lines
+     *                      that failed to parse are counted with invalid
+     *                      primary actions.
+     * @param cause the cause.
+     * @return number of failures.
+     * @require cause != null
+     */
+    public long getFailureCount(int primaryAction, FailureCause cause) {
+        return failures[type(primaryAction)][cause.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of actions of any type that failed for a cause.
+     * @param cause the cause.
+     * @return number of failures.
+     * @require cause != null
+     */
+    public long getFailureCount(FailureCause cause) {
+        long total = 0;
+        for (LongAdder[] type : failures) {
+            total += type[cause.ordinal()].sum();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the latency at or below which a percentage of the actions of a
+     * type completed.
+     * @param primaryAction primary action, e.g. {@link Action#DIG}.
+     * @param percentile percentage from 0 to 100.
+     * @return the latency in nanoseconds, rounded up to the end of its
+     *      bucket, or 0 if no actions were recorded.
+     * @require 0 &lt;= percentile &lt;= 100
+     */
+    public long getPercentile(int primaryAction, double percentile) {
+        int type = type(primaryAction);
+        return percentile(type, type + 1, percentile);
+    }
+
+    /**
+     * Gets the latency at or below which a percentage of all recorded
+     * actions completed, whatever their type.
+     * @param percentile percentage from 0 to 100.
+     * @return the latency in nanoseconds, rounded up to the end of its
+     *      bucket, or 0 if no actions were recorded.
+     * @require 0 &lt;= percentile &lt;= 100
+     */
+    public long getPercentile(double percentile) {
+        return percentile(0, TYPE_NAMES.length, percentile);
+    }
+
+    /**
+     * Gets the longest latency of the actions of a type.
+     * @param primaryAction primary action, e.g. {@link Action#DIG}.
+     * @return the latency in nanoseconds, or 0 if none were recorded.
+     */
+    public long getMax(int primaryAction) {
+        return maxNanos[type(primaryAction)].get();
+    }
+
+    /**
+     * Gets the number of timed map saves, including failed saves.
+     * @return number of saves.
+     */
+    public long getSaveCount() {
+        return saves.sum();
+    }
+
+    /**
+     * Gets the total time spent saving maps.
+     * @return the time in nanoseconds.
+     */
+    public long getSaveNanos() {
+        return saveNanos.sum();
+    }
+
+    /**
+     * Gets the longest time taken to save a map.
+     * @return the time in nanoseconds, or 0 if none were recorded.
+     */
+    public long getMaxSaveNanos() {
+        return maxSaveNanos.get();
+    }
+
+    /**
+     * Prints a summary line for each type with recorded actions: the count,
+     * mean, percentile and maximum latencies in microseconds, and failures
+     * by cause.
+     * @param out the stream to print to.
+     * @require out != null
+     */
+    public void dump(PrintStream out) {
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            long count = counts[type].sum();
+            if (count == 0) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder(TYPE_NAMES[type]);
+            line.append(" count=").append(count);
+            line.append(String.format(" mean=%.3fus",
+                    totalNanos[type].sum() / 1000.0 / count));
+            for (double percentile : DUMPED_PERCENTILES) {
+                line.append(String.format(" p%s=%.3fus",
+                        percentile == (int) percentile
+                                ? Integer.toString((int) percentile)
+                                : Double.toString(percentile),
+                        getPercentile(type, percentile) / 1000.0));
+            }
+            line.append(String.format(" max=%.3fus",
+                    maxNanos[type].get() / 1000.0));
+            for (FailureCause cause : FailureCause.values()) {
+                long failed = failures[type][cause.ordinal()].sum();
+                if (failed > 0) {
+                    line.append(' ').append(cause).append('=').append(failed);
+                }
+            }
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the summary of {@link #dump(PrintStream)} when the JVM exits,
+     * including through System.exit().
+     * @param out the stream to print to.
+     * @require out != null
+     */
+    public void dumpOnExit(PrintStream out) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(out),
+                "metrics-dump"));
+    }
+
+    /**
+     * Records an applied action.
+     * @param primaryAction the action's primary action.
+     * @param nanos time taken to apply it.
+     * @param failure exception the action failed with, or null.
+     */
+    void record(int primaryAction, long nanos, Exception failure) {
+        int type = type(primaryAction);
+        buckets.incrementAndGet(type * BUCKETS + bucket(nanos));
+        counts[type].increment();
+        totalNanos[type].add(nanos);
+        raise(maxNanos[type], nanos);
+        if (failure != null) {
+            failures[type][cause(failure).ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records a map save.
+     * @param nanos time taken to save the map.
+     */
+    void recordSave(long nanos) {
+        saves.increment();
+        saveNanos.add(nanos);
+        raise(maxSaveNanos, nanos);
+    }
+
+    /**
+     * Gets the total latency of the actions of a type.
+     * @param primaryAction primary action, e.g. {@link Action#DIG}.
+     * @return the total in nanoseconds.
+     */
+    long getTotalNanos(int primaryAction) {
+        return totalNanos[type(primaryAction)].sum();
+    }
+
+    /**
+     * Gets a percentile of the latencies of a range of types combined.
+     * @param fromType first type.
+     * @param toType type after the last.
+     * @param percentile percentage from 0 to 100.
+     * @return the latency in nanoseconds, or 0 if none were recorded.
+     */
+    private long percentile(int fromType, int toType, double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        long max = 0;
+        for (int type = fromType; type < toType; type++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = buckets.get(type * BUCKETS + i);
+                snapshot[i] += count;
+                total += count;
+            }
+            max = Math.max(max, maxNanos[type].get());
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketEnd(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Raises a maximum to a value if it is lower.
+     * @param max the maximum.
+     * @param value the value.
+     */
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())
+                && !max.compareAndSet(current, value)) {
+            // Another thread raised the maximum; check against it.
+        }
+    }
+
+    /**
+     * Records an action line that failed to parse.
+     */
+    void recordUnparsed() {
+        counts[INVALID].increment();
+        failures[INVALID][FailureCause.FORMAT.ordinal()].increment();
+    }
+
+    /**
+     * Gets the cause of a failure.
+     * @param failure exception an action failed with.
+     * @return the cause.
+     */
+    private static FailureCause cause(Exception failure) {
+        if (failure instanceof NoExitException) {
+            return FailureCause.NO_EXIT;
+        } else if (failure instanceof TooHighException) {
+            return FailureCause.TOO_HIGH;
+        } else if (failure instanceof TooLowException) {
+            return FailureCause.TOO_LOW;
+        } else if (failure instanceof InvalidBlockException) {
+            return FailureCause.INVALID_BLOCK;
+        }
+        // Printed as "Error: Invalid action", like format errors.
+        return FailureCause.FORMAT;
+    }
+
+    /**
+     * Gets the type index of a primary action.
+     * @param primaryAction the primary action.
+     * @return the index, or INVALID for unknown primary actions.
+     */
+    private static int type(int primaryAction) {
+        return primaryAction >= 0 && primaryAction < INVALID
+                ? primaryAction : INVALID;
+    }
+
+    /**
+     * Gets the bucket of a latency.
+     * @param nanos latency in nanoseconds.
+     * @return the bucket index.
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Gets the largest latency in a bucket.
+     * @param bucket the bucket index.
+     * @return the latency in nanoseconds.
+     */
+    static long bucketEnd(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long start = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        long width = 1L << (exponent - SUB_BITS);
+        return start + width - 1;
+    }
+}
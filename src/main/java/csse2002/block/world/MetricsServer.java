@@ -0,0 +1,274 @@
+package csse2002.block.world;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the state of a running simulation at <code>/metrics</code> in the
+ * Prometheus text exposition format, on the loopback interface only.
+ *
+ * Each scrape reports:
+ * <ul>
+ *     <li>the latency quantiles, total and count of applied actions by
+ *     type, from a {@link MetricsRegistry};</li>
+ *     <li>failed actions by type and cause;</li>
+ *     <li>the count and total and longest duration of map saves;</li>
+ *     <li>the number of tiles and the builder's position on the map;</li>
+ *     <li>the JVM's heap use.</li>
+ * </ul>
+ *
+ * The registry is updated by the simulation without locking, and scrapes
+ * read it and the map without synchronising with the thread changing the
+ * map, so values may be momentarily stale but never slow the simulation.
+ */
+public class MetricsServer {
+
+    /** Content type of the text exposition format. */
+    private static final String CONTENT_TYPE =
+            "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Quantiles reported for action latencies. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** The map reported on. */
+    private final WorldMap map;
+
+    /** The registry reported on. */
+    private final MetricsRegistry registry;
+
+    /** The running server, or null. */
+    private HttpServer server;
+
+    /** Thread handling requests of the running server. */
+    private ExecutorService executor;
+
+    /**
+     * Creates a stopped server.
+     * @param map the map whose tiles and builder are reported.
+     * @param registry the registry whose actions and saves are reported.
+     * @require map != null, registry != null
+     */
+    public MetricsServer(WorldMap map, MetricsRegistry registry) {
+        this.map = map;
+        this.registry = registry;
+    }
+
+    /**
+     * Starts serving on a loopback port. Requests are handled on a single
+     * daemon thread.
+     * @param port the port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     * @require the server is not running
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     * @return the port.
+     * @require the server is running
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, if it is running.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    /**
+     * Answers one request.
+     * @param exchange the request.
+     * @throws IOException if the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")
+                    && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders the current metrics.
+     * @return the metrics in the text exposition format.
+     */
+    String scrape() {
+        StringBuilder text = new StringBuilder();
+        String[] typeNames = MetricsRegistry.TYPE_NAMES;
+
+        header(text, "block_world_action_duration_seconds", "summary",
+                "Time taken to apply actions, by primary action.");
+        for (int type = 0; type < typeNames.length; type++) {
+            // Types are indexed by primary action, with INVALID last.
+            long count = registry.getCount(type);
+            if (count == 0) {
+                continue;
+            }
+            String labels = "type=\"" + typeNames[type] + "\"";
+            for (double quantile : QUANTILES) {
+                sample(text, "block_world_action_duration_seconds",
+                        labels + ",quantile=\"" + quantile + "\"",
+                        registry.getPercentile(type, quantile * 100) / 1e9);
+            }
+            sample(text, "block_world_action_duration_seconds_sum", labels,
+                    registry.getTotalNanos(type) / 1e9);
+            sample(text, "block_world_action_duration_seconds_count", labels,
+                    count);
+        }
+
+        header(text, "block_world_action_failures_total", "counter",
+                "Failed actions and unparsable action lines, by cause.");
+        for (int type = 0; type < typeNames.length; type++) {
+            for (MetricsRegistry.FailureCause cause
+                    : MetricsRegistry.FailureCause.values()) {
+                long failed = registry.getFailureCount(type, cause);
+                if (failed > 0) {
+                    sample(text, "block_world_action_failures_total",
+                            "type=\"" + typeNames[type] + "\",cause=\""
+                            + cause + "\"", failed);
+                }
+            }
+        }
+
+        header(text, "block_world_save_duration_seconds", "summary",
+                "Time taken to save the map.");
+        sample(text, "block_world_save_duration_seconds_sum", null,
+                registry.getSaveNanos() / 1e9);
+        sample(text, "block_world_save_duration_seconds_count", null,
+                registry.getSaveCount());
+        header(text, "block_world_save_duration_max_seconds", "gauge",
+                "Longest time taken to save the map.");
+        sample(text, "block_world_save_duration_max_seconds", null,
+                registry.getMaxSaveNanos() / 1e9);
+
+        SparseTileArray tiles = map.getTileArray();
+        header(text, "block_world_tiles", "gauge", "Tiles on the map.");
+        sample(text, "block_world_tiles", null, tiles.getTileCount());
+        int builderTile = tiles.getTileId(map.getBuilder().getCurrentTile());
+        if (builderTile != -1) {
+            header(text, "block_world_builder_x", "gauge",
+                    "x coordinate of the builder's tile.");
+            sample(text, "block_world_builder_x", null,
+                    tiles.getTileX(builderTile));
+            header(text, "block_world_builder_y", "gauge",
+                    "y coordinate of the builder's tile.");
+            sample(text, "block_world_builder_y", null,
+                    tiles.getTileY(builderTile));
+        }
+
+        MemoryUsage heap =
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(text, "jvm_memory_heap_used_bytes", "gauge",
+                "Heap in use.");
+        sample(text, "jvm_memory_heap_used_bytes", null, heap.getUsed());
+        header(text, "jvm_memory_heap_committed_bytes", "gauge",
+                "Heap committed by the JVM.");
+        sample(text, "jvm_memory_heap_committed_bytes", null,
+                heap.getCommitted());
+        if (heap.getMax() >= 0) {
+            header(text, "jvm_memory_heap_max_bytes", "gauge",
+                    "Largest heap the JVM may use.");
+            sample(text, "jvm_memory_heap_max_bytes", null, heap.getMax());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Appends the HELP and TYPE lines of a metric.
+     * @param text the text to append to.
+     * @param name the metric name.
+     * @param type the metric type.
+     * @param help description of the metric.
+     */
+    private static void header(StringBuilder text, String name, String type,
+                               String help) {
+        text.append("# HELP ").append(name).append(' ').append(help)
+                .append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type)
+                .append('\n');
+    }
+
+    /**
+     * Appends a sample with an integer value.
+     * @param text the text to append to.
+     * @param name the sample name.
+     * @param labels the labels without braces, or null.
+     * @param value the value.
+     */
+    private static void sample(StringBuilder text, String name, String labels,
+                               long value) {
+        appendName(text, name, labels);
+        text.append(value).append('\n');
+    }
+
+    /**
+     * Appends a sample with a fractional value.
+     * @param text the text to append to.
+     * @param name the sample name.
+     * @param labels the labels without braces, or null.
+     * @param value the value.
+     */
+    private static void sample(StringBuilder text, String name, String labels,
+                               double value) {
+        appendName(text, name, labels);
+        text.append(String.format(Locale.ROOT, "%.9f", value)).append('\n');
+    }
+
+    /**
+     * Appends a sample's name and labels.
+     * @param text the text to append to.
+     * @param name the sample name.
+     * @param labels the labels without braces, or null.
+     */
+    private static void appendName(StringBuilder text, String name,
+                                   String labels) {
+        text.append(name);
+        if (labels != null) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ');
+    }
+}
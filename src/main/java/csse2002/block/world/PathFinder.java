@@ -0,0 +1,248 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds shortest sequences of MOVE_BUILDER directions between tiles of a
+ * {@link WorldMap}.
+ *
+ * A move is allowed under the same rules as
+ * {@link Builder#canEnter(Tile)}: there must be a north, east, south or west
+ * exit to the tile and the heights of the two tiles may differ by at most
+ * one block. Heights are read when searching, so results reflect the map's
+ * current state.
+ *
+ * The search is A* with a Manhattan distance heuristic on tile positions.
+ * Open and closed sets are primitive arrays indexed by tile id and reused
+ * between searches, so a search allocates little beyond its result. Paths
+ * are shortest as long as exits agree with tile positions, which is the case
+ * for any map that loaded successfully; exits added afterwards between
+ * distant tiles may give longer paths than necessary.
+ *
+ * A PathFinder is not thread safe.
+ */
+public class PathFinder {
+
+    /** The map to search. */
+    private final WorldMap map;
+
+    /* Per tile search state, indexed by tile id. A tile's g-score and parent
+     * are valid only when its stamp equals the current search number, so
+     * nothing needs clearing between searches. */
+    private int[] stamps = new int[0];
+    private int[] gScores = new int[0];
+    private int[] parents = new int[0];
+    private byte[] parentDirections = new byte[0];
+    private boolean[] closed = new boolean[0];
+
+    /** Number of the current search. */
+    private int search;
+
+    /** Binary min-heap of (f-score &lt;&lt; 32 | tile id). */
+    private long[] heap = new long[64];
+    private int heapSize;
+
+    /** Tiles expanded by the most recent search. */
+    private int expanded;
+
+    /**
+     * Creates a path finder for the given map.
+     * @param map the map to search.
+     * @require map != null
+     */
+    public PathFinder(WorldMap map) {
+        this.map = map;
+    }
+
+    /**
+     * Finds a shortest path for the builder from one tile to another.
+     * @param from tile to start from.
+     * @param to tile to reach.
+     * @return the directions to move in, in order; empty if from is to, or
+     *      null if to cannot be reached or either tile is not on the map.
+     * @require from != null, to != null
+     */
+    public List<String> findPath(Tile from, Tile to) {
+        SparseTileArray tiles = map.getTileArray();
+        int start = tiles.getTileId(from);
+        int goal = tiles.getTileId(to);
+        expanded = 0;
+        if (start == -1 || goal == -1) {
+            return null;
+        }
+        prepare(tiles.getTileCount());
+        int goalX = tiles.getTileX(goal);
+        int goalY = tiles.getTileY(goal);
+
+        open(start, 0, -1, -1, heuristic(tiles, start, goalX, goalY));
+        while (heapSize > 0) {
+            int current = (int) pop();
+            if (closed[current]) {
+                continue; // Stale entry; a shorter route was found later.
+            }
+            if (current == goal) {
+                return reconstruct(start, goal);
+            }
+            closed[current] = true;
+            expanded++;
+
+            Tile tile = tiles.getTile(current);
+            int height = tile.getHeight();
+            int g = gScores[current] + 1;
+            for (Direction direction : Direction.ALL) {
+                Tile next = tile.getExit(direction.name());
+                if (next == null || Math.abs(next.getHeight() - height) > 1) {
+                    continue;
+                }
+                int id = tiles.getTileId(next);
+                if (id == -1 || (stamps[id] == search
+                        && (closed[id] || gScores[id] <= g))) {
+                    continue;
+                }
+                open(id, g, current, direction.ordinal(),
+                        g + heuristic(tiles, id, goalX, goalY));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a shortest path for the map's builder from its current tile.
+     * @param to tile to reach.
+     * @return the directions to move in, as for
+     *      {@link #findPath(Tile, Tile)}.
+     * @require to != null
+     */
+    public List<String> findPath(Tile to) {
+        return findPath(map.getBuilder().getCurrentTile(), to);
+    }
+
+    /**
+     * Gets the number of tiles expanded by the most recent search.
+     * @return number of tiles expanded.
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /**
+     * Starts a new search, growing the per tile arrays if necessary.
+     * @param tileCount number of tiles on the map.
+     */
+    private void prepare(int tileCount) {
+        if (stamps.length < tileCount) {
+            stamps = new int[tileCount];
+            gScores = new int[tileCount];
+            parents = new int[tileCount];
+            parentDirections = new byte[tileCount];
+            closed = new boolean[tileCount];
+            search = 0;
+        }
+        if (++search == 0) {
+            // Wrapped around; old stamps could now look current.
+            Arrays.fill(stamps, 0);
+            search = 1;
+        }
+        heapSize = 0;
+    }
+
+    /**
+     * Records a route to a tile and adds it to the open set.
+     * @param id tile id.
+     * @param g length of the route.
+     * @param parent id of the tile the route comes from, or -1 for the
+     *               start.
+     * @param direction ordinal of the direction moved to reach the tile, or
+     *                  -1 for the start.
+     * @param f g plus the heuristic.
+     */
+    private void open(int id, int g, int parent, int direction, int f) {
+        if (stamps[id] != search) {
+            stamps[id] = search;
+            closed[id] = false;
+        }
+        gScores[id] = g;
+        parents[id] = parent;
+        parentDirections[id] = (byte) direction;
+        push(((long) f << 32) | id);
+    }
+
+    /**
+     * Estimates the moves from a tile to the goal.
+     * @param tiles the tile array.
+     * @param id tile id.
+     * @param goalX goal x coordinate.
+     * @param goalY goal y coordinate.
+     * @return Manhattan distance to the goal.
+     */
+    private static int heuristic(SparseTileArray tiles, int id, int goalX,
+                                 int goalY) {
+        return Math.abs(tiles.getTileX(id) - goalX)
+                + Math.abs(tiles.getTileY(id) - goalY);
+    }
+
+    /**
+     * Follows parents back from the goal.
+     * @param start start tile id.
+     * @param goal goal tile id.
+     * @return the directions from start to goal.
+     */
+    private List<String> reconstruct(int start, int goal) {
+        List<String> path = new ArrayList<>(gScores[goal]);
+        for (int current = goal; current != start;
+             current = parents[current]) {
+            path.add(Direction.ALL[parentDirections[current]].name());
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Adds an entry to the heap.
+     * @param entry the entry.
+     */
+    private void push(long entry) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    /**
+     * Removes the smallest entry from the heap.
+     * @return the tile id of the entry.
+     */
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top & 0xFFFFFFFFL;
+    }
+}
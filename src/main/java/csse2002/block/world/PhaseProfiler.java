@@ -0,0 +1,271 @@
+package csse2002.block.world;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the phases of a run of {@link Main}: loading the map, processing
+ * actions and saving the map.
+ *
+ * For each phase it records the wall-clock time, the CPU time and bytes
+ * allocated by the calling thread, and the time spent in garbage collection
+ * by the whole JVM. CPU time and allocations of other threads, such as the
+ * stages of a {@link PipelinedActionProcessor}, are not included. Where the
+ * JVM does not support a measurement it is reported as -1.
+ *
+ * Phases are measured one at a time, on one thread.
+ */
+final class PhaseProfiler {
+
+    /**
+     * Measurements of one phase.
+     */
+    static final class Phase {
+
+        /** Name of the phase. */
+        final String name;
+
+        /* Measurements, or -1 if unsupported. */
+        long wallNanos;
+        long cpuNanos;
+        long allocatedBytes;
+        long gcMillis;
+        long gcCount;
+
+        /** Items processed by the phase, or -1 if not counted. */
+        long items = -1;
+
+        /**
+         * Creates an unmeasured phase.
+         * @param name name of the phase.
+         */
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the items processed per second of wall-clock time.
+         * @return the rate, or -1 if items were not counted.
+         */
+        double itemsPerSecond() {
+            if (items < 0) {
+                return -1;
+            }
+            return wallNanos == 0 ? 0 : items * 1e9 / wallNanos;
+        }
+    }
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /** Allocation counters, or null if the JVM has none. */
+    private final com.sun.management.ThreadMXBean allocations;
+
+    private final List<GarbageCollectorMXBean> collectors =
+            ManagementFactory.getGarbageCollectorMXBeans();
+
+    /** Phases measured so far, in order. */
+    private final List<Phase> phases = new ArrayList<>();
+
+    /** The phase being measured, or null. */
+    private Phase current;
+
+    /* Readings at the start of the current phase. */
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+    private long startGcMillis;
+    private long startGcCount;
+
+    /**
+     * Creates a profiler with no phases.
+     */
+    PhaseProfiler() {
+        allocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads)
+                        .isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        if (allocations != null) {
+            allocations.setThreadAllocatedMemoryEnabled(true);
+        }
+        if (threads.isCurrentThreadCpuTimeSupported()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    /**
+     * Starts measuring a phase, stopping the current one.
+     * @param name name of the phase.
+     * @require name != null
+     */
+    void start(String name) {
+        stop();
+        current = new Phase(name);
+        startGcMillis = gcMillis();
+        startGcCount = gcCount();
+        startAllocated = allocatedBytes();
+        startCpu = cpuNanos();
+        startWall = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the current phase, if any.
+     */
+    void stop() {
+        if (current == null) {
+            return;
+        }
+        long wall = System.nanoTime();
+        long cpu = cpuNanos();
+        long allocated = allocatedBytes();
+        current.wallNanos = wall - startWall;
+        current.cpuNanos = cpu < 0 ? -1 : cpu - startCpu;
+        current.allocatedBytes = allocated < 0 ? -1
+                : allocated - startAllocated;
+        long gc = gcMillis();
+        current.gcMillis = gc < 0 ? -1 : gc - startGcMillis;
+        long count = gcCount();
+        current.gcCount = count < 0 ? -1 : count - startGcCount;
+        phases.add(current);
+        current = null;
+    }
+
+    /**
+     * Stops measuring the current phase, recording the items it processed.
+     * @param items number of items processed.
+     * @require a phase is being measured
+     */
+    void stop(long items) {
+        current.items = items;
+        stop();
+    }
+
+    /**
+     * Gets the phases measured so far.
+     * @return the phases, in order.
+     */
+    List<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * Prints a line for each measured phase, e.g.
+     * <pre>
+     * load     wall=12.345ms cpu=11.900ms alloc=3.2MiB gc=0ms (0)
+     * actions  wall=120.000ms cpu=118.000ms alloc=40.0MiB gc=3ms (2) 83333/s
+     * </pre>
+     * @param out the stream to print to.
+     * @require out != null
+     */
+    void print(PrintStream out) {
+        for (Phase phase : phases) {
+            StringBuilder line = new StringBuilder(
+                    String.format(Locale.ROOT, "%-8s wall=%.3fms", phase.name,
+                            phase.wallNanos / 1e6));
+            line.append(phase.cpuNanos < 0 ? " cpu=n/a" : String.format(
+                    Locale.ROOT, " cpu=%.3fms", phase.cpuNanos / 1e6));
+            line.append(phase.allocatedBytes < 0 ? " alloc=n/a"
+                    : String.format(Locale.ROOT, " alloc=%.1fMiB",
+                            phase.allocatedBytes / 1048576.0));
+            line.append(phase.gcMillis < 0 ? " gc=n/a"
+                    : " gc=" + phase.gcMillis + "ms (" + phase.gcCount + ")");
+            if (phase.items >= 0) {
+                line.append(String.format(Locale.ROOT, " %.0f/s",
+                        phase.itemsPerSecond()));
+            }
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the measured phases as one line of JSON, e.g.
+     * <pre>
+     * {"phases":[{"name":"load","wallNanos":12345000,"cpuNanos":11900000,
+     * "allocatedBytes":3355443,"gcMillis":0,"gcCount":0}, ...]}
+     * </pre>
+     * Actions processing also has "items" and "itemsPerSecond". Unsupported
+     * measurements are -1.
+     * @param out the stream to print to.
+     * @require out != null
+     */
+    void printJson(PrintStream out) {
+        StringBuilder json = new StringBuilder("{\"phases\":[");
+        for (int i = 0; i < phases.size(); i++) {
+            Phase phase = phases.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            // Phase names are fixed identifiers, so need no escaping.
+            json.append("{\"name\":\"").append(phase.name).append('"');
+            json.append(",\"wallNanos\":").append(phase.wallNanos);
+            json.append(",\"cpuNanos\":").append(phase.cpuNanos);
+            json.append(",\"allocatedBytes\":").append(phase.allocatedBytes);
+            json.append(",\"gcMillis\":").append(phase.gcMillis);
+            json.append(",\"gcCount\":").append(phase.gcCount);
+            if (phase.items >= 0) {
+                json.append(",\"items\":").append(phase.items);
+                json.append(String.format(Locale.ROOT,
+                        ",\"itemsPerSecond\":%.1f", phase.itemsPerSecond()));
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        out.println(json);
+        out.flush();
+    }
+
+    /**
+     * Reads the CPU time of the calling thread.
+     * @return the time in nanoseconds, or -1 if unsupported.
+     */
+    private long cpuNanos() {
+        return threads.isCurrentThreadCpuTimeSupported()
+                ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Reads the bytes allocated by the calling thread.
+     * @return the bytes, or -1 if unsupported.
+     */
+    private long allocatedBytes() {
+        return allocations == null ? -1 : allocations.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /**
+     * Reads the total collection time of all garbage collectors.
+     * @return the time in milliseconds, or -1 if unsupported.
+     */
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            long time = collector.getCollectionTime();
+            if (time < 0) {
+                return -1;
+            }
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * Reads the total number of collections of all garbage collectors.
+     * @return the count, or -1 if unsupported.
+     */
+    private long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            long count = collector.getCollectionCount();
+            if (count < 0) {
+                return -1;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,342 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Processes actions in three pipelined stages so that I/O stalls do not
+ * block the simulation.
+ *
+ * <ol>
+ *     <li>The reader stage decodes actions from a reader.</li>
+ *     <li>The apply stage performs each action on the world map.</li>
+ *     <li>The output stage prints the message for each action.</li>
+ * </ol>
+ *
+ * The reader and apply stages run on their own threads and the output stage
+ * runs on the calling thread. Stages are connected by bounded queues, so a
+ * slow stage blocks the stage feeding it instead of buffering without limit.
+ *
+ * The printed output is identical to that of
+ * {@link Action#processActions(BufferedReader, WorldMap)}, including when
+ * an invalid action line is encountered.
+ */
+public class PipelinedActionProcessor {
+
+    /** Default capacity of each queue between stages. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Marks the end of the action queue. Compared by identity. */
+    private static final Action END_OF_ACTIONS = new Action(-1, "");
+
+    /** Marks the end of the message queue. Compared by identity. */
+    @SuppressWarnings("RedundantStringConstructorCall")
+    private static final String END_OF_MESSAGES = new String("");
+
+    /** Capacity of each queue between stages. */
+    private final int capacity;
+
+    /** Stream the output stage prints messages to. */
+    private final PrintStream out;
+
+    /** Exception thrown by the reader stage, if any. */
+    private volatile ActionFormatException readFailure;
+
+    /** Unexpected exception thrown by the reader stage, if any. */
+    private volatile RuntimeException readError;
+
+    /** Unexpected exception thrown by the apply stage, if any. */
+    private volatile RuntimeException applyFailure;
+
+    /* Per-stage counters. Each is only written by its own stage. */
+    private volatile long actionsRead;
+    private volatile long actionsApplied;
+    private volatile long messagesWritten;
+    private volatile long readNanos;
+    private volatile long applyNanos;
+    private volatile long writeNanos;
+
+    /**
+     * Creates a processor printing to System.out with queues of
+     * {@link #DEFAULT_CAPACITY}.
+     */
+    public PipelinedActionProcessor() {
+        this(DEFAULT_CAPACITY, System.out);
+    }
+
+    /**
+     * Creates a processor with the given queue capacity and output stream.
+     * @param capacity capacity of each queue between stages.
+     * @param out stream to print action messages to.
+     * @require capacity &gt; 0, out != null
+     */
+    public PipelinedActionProcessor(int capacity, PrintStream out) {
+        this.capacity = capacity;
+        this.out = out;
+    }
+
+    /**
+     * Reads all actions from the given reader and performs them on the given
+     * map, printing a message for each.
+     *
+     * Behaves exactly as
+     * {@link Action#processActions(BufferedReader, WorldMap)}: every action
+     * before an invalid line is performed and printed before the exception
+     * is thrown.
+     *
+     * @param reader the reader to read actions from
+     * @param map the map actions will be applied to
+     * @throws ActionFormatException if an action line is invalid or the
+     *      processor was interrupted.
+     * @require reader != null, map != null
+     */
+    public void processActions(BufferedReader reader, WorldMap map)
+            throws ActionFormatException {
+        FlightEvents.ActionsProcessed event = FlightEvents.isRecording()
+                ? new FlightEvents.ActionsProcessed() : null;
+        if (event != null) {
+            event.begin();
+        }
+        try {
+            runStages(reader, map);
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.actions = actionsApplied;
+                event.pipelined = true;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Runs the three stages until every action has been printed.
+     * @param reader the reader to read actions from.
+     * @param map the map to apply actions to.
+     * @throws ActionFormatException as for
+     *      {@link #processActions(BufferedReader, WorldMap)}.
+     */
+    private void runStages(BufferedReader reader, WorldMap map)
+            throws ActionFormatException {
+        BlockingQueue<Action> actions = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<String> messages = new ArrayBlockingQueue<>(capacity);
+        readFailure = null;
+        readError = null;
+        applyFailure = null;
+
+        Thread readerThread = new Thread(
+                () -> readStage(reader, actions), "action-reader");
+        Thread applyThread = new Thread(
+                () -> applyStage(map, actions, messages), "action-apply");
+        readerThread.setDaemon(true);
+        applyThread.setDaemon(true);
+        readerThread.start();
+        applyThread.start();
+
+        try {
+            writeStage(messages);
+            applyThread.join();
+            if (applyFailure != null) {
+                // Nothing takes from the action queue any more, so the
+                // reader may be blocked on it, or on reading. It is a daemon
+                // thread, so stop it without waiting.
+                readerThread.interrupt();
+            } else {
+                readerThread.join();
+            }
+        } catch (InterruptedException e) {
+            readerThread.interrupt();
+            applyThread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new ActionFormatException("Interrupted while processing.");
+        }
+
+        // Both stages have finished, so their failures are visible here.
+        if (applyFailure != null) {
+            throw applyFailure;
+        }
+        if (readError != null) {
+            throw readError;
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+    }
+
+    /**
+     * Decodes actions from the reader into the action queue, ending it with
+     * {@link #END_OF_ACTIONS} however reading stops, unless interrupted.
+     * @param reader Reader to decode actions from.
+     * @param actions Queue to put actions into.
+     */
+    private void readStage(BufferedReader reader,
+                           BlockingQueue<Action> actions) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                Action action;
+                try {
+                    action = Action.loadAction(reader);
+                } catch (ActionFormatException e) {
+                    readFailure = e;
+                    action = null;
+                }
+                readNanos += System.nanoTime() - start;
+                if (action == null) {
+                    break;
+                }
+                actions.put(action);
+                actionsRead++;
+            }
+        } catch (InterruptedException e) {
+            // Processing was abandoned; nothing waits for the end.
+            interrupted = true;
+        } catch (RuntimeException e) {
+            // Surface this on the calling thread rather than losing it.
+            readError = e;
+        } finally {
+            if (!interrupted) {
+                end(actions, END_OF_ACTIONS);
+            }
+        }
+    }
+
+    /**
+     * Applies queued actions to the map, queueing their messages and ending
+     * the message queue with {@link #END_OF_MESSAGES} however applying
+     * stops, unless interrupted.
+     * @param map Map to apply actions to.
+     * @param actions Queue to take actions from.
+     * @param messages Queue to put messages into.
+     */
+    private void applyStage(WorldMap map, BlockingQueue<Action> actions,
+                            BlockingQueue<String> messages) {
+        boolean interrupted = false;
+        try {
+            Action action;
+            while ((action = actions.take()) != END_OF_ACTIONS) {
+                long start = System.nanoTime();
+                String message = Action.applyAction(action, map);
+                applyNanos += System.nanoTime() - start;
+                actionsApplied++;
+                messages.put(message);
+            }
+        } catch (InterruptedException e) {
+            // Processing was abandoned; nothing waits for the end.
+            interrupted = true;
+        } catch (RuntimeException e) {
+            // Surface this on the calling thread rather than losing it.
+            applyFailure = e;
+        } finally {
+            if (!interrupted) {
+                end(messages, END_OF_MESSAGES);
+            }
+        }
+    }
+
+    /**
+     * Puts the end marker on a queue, waiting for space.
+     * @param queue the queue.
+     * @param end the end marker.
+     */
+    private static <T> void end(BlockingQueue<T> queue, T end) {
+        try {
+            queue.put(end);
+        } catch (InterruptedException e) {
+            // Processing was abandoned; nothing waits for the end.
+        }
+    }
+
+    /**
+     * Prints queued messages until {@link #END_OF_MESSAGES} is taken.
+     * @param messages Queue to take messages from.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void writeStage(BlockingQueue<String> messages)
+            throws InterruptedException {
+        String message;
+        while ((message = messages.take()) != END_OF_MESSAGES) {
+            long start = System.nanoTime();
+            out.println(message);
+            writeNanos += System.nanoTime() - start;
+            messagesWritten++;
+        }
+        out.flush();
+    }
+
+    /**
+     * Gets the number of actions decoded by the reader stage.
+     * @return number of actions read.
+     */
+    public long getActionsRead() {
+        return actionsRead;
+    }
+
+    /**
+     * Gets the number of actions performed by the apply stage.
+     * @return number of actions applied.
+     */
+    public long getActionsApplied() {
+        return actionsApplied;
+    }
+
+    /**
+     * Gets the number of messages printed by the output stage.
+     * @return number of messages written.
+     */
+    public long getMessagesWritten() {
+        return messagesWritten;
+    }
+
+    /**
+     * Gets the time the reader stage spent decoding, excluding time blocked
+     * on a full queue.
+     * @return busy time of the reader stage in nanoseconds.
+     */
+    public long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Gets the time the apply stage spent performing actions, excluding time
+     * blocked on its queues.
+     * @return busy time of the apply stage in nanoseconds.
+     */
+    public long getApplyNanos() {
+        return applyNanos;
+    }
+
+    /**
+     * Gets the time the output stage spent printing, excluding time blocked
+     * on an empty queue.
+     * @return busy time of the output stage in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Returns the throughput of each stage in items per second of busy time.
+     * @return a one-line summary of the stage counters.
+     */
+    @Override
+    public String toString() {
+        return "read " + actionsRead + " (" + perSecond(actionsRead, readNanos)
+                + "/s), applied " + actionsApplied + " ("
+                + perSecond(actionsApplied, applyNanos) + "/s), written "
+                + messagesWritten + " ("
+                + perSecond(messagesWritten, writeNanos) + "/s)";
+    }
+
+    /**
+     * Converts a count over a duration to a rate per second.
+     * @param count Number of items.
+     * @param nanos Duration in nanoseconds.
+     * @return Items per second, or 0 if no time has elapsed.
+     */
+    private static long perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : (long) (count * 1e9 / nanos);
+    }
+}
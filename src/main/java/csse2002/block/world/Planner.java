@@ -0,0 +1,574 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Finds a shortest sequence of actions that takes a {@link WorldMap} from
+ * its current state to one satisfying a {@link Goal}.
+ *
+ * The search is breadth-first over world states, one layer of equal plan
+ * length at a time, trying every MOVE_BUILDER, DIG, DROP and MOVE_BLOCK
+ * action under the same rules as
+ * {@link Action#processAction(Action, WorldMap)}. A state stores only the
+ * builder's tile, the inventory and the tiles changed so far, and carries a
+ * Zobrist hash updated in constant time per block moved, which is used to
+ * skip states already seen.
+ *
+ * Expanding a layer can be spread over several threads; successors are
+ * merged in order afterwards, so the plan found does not depend on the
+ * number of threads. A planner with more than one thread owns a thread
+ * pool, which is shut down by {@link #close()}. At most a fixed number of
+ * states are kept, and the search gives up when that budget is spent.
+ *
+ * The map must not change while planning. Blocks are treated as
+ * interchangeable with other blocks of the same type.
+ */
+public class Planner implements AutoCloseable {
+
+    /**
+     * A condition on the world state for the planner to achieve.
+     */
+    public abstract static class Goal {
+
+        Goal() {}
+
+        /**
+         * Checks whether a state satisfies the goal.
+         * @param planner the planner holding the map.
+         * @param state the state.
+         * @return true if satisfied.
+         */
+        abstract boolean isSatisfied(Planner planner, State state);
+
+        /**
+         * A goal satisfied when a tile has exactly the given number of
+         * blocks.
+         * @param tile the tile.
+         * @param height number of blocks.
+         * @return the goal.
+         * @require tile != null
+         */
+        public static Goal tileHeight(final Tile tile, final int height) {
+            return new Goal() {
+                @Override
+                boolean isSatisfied(Planner planner, State state) {
+                    int id = planner.tiles.getTileId(tile);
+                    return id != -1 && planner.height(state, id) == height;
+                }
+            };
+        }
+
+        /**
+         * A goal satisfied when the top block of a tile has the given type.
+         * @param tile the tile.
+         * @param blockType block type, as given by
+         *                  {@link Block#getBlockType()}.
+         * @return the goal.
+         * @require tile != null, blockType != null
+         */
+        public static Goal topBlock(final Tile tile, String blockType) {
+            final int type = WorldMap.BlockTypes.valueOf(blockType).ordinal();
+            return new Goal() {
+                @Override
+                boolean isSatisfied(Planner planner, State state) {
+                    int id = planner.tiles.getTileId(tile);
+                    if (id == -1) {
+                        return false;
+                    }
+                    int height = planner.height(state, id);
+                    return height > 0
+                            && planner.block(state, id, height - 1) == type;
+                }
+            };
+        }
+
+        /**
+         * A goal satisfied when the builder is on the given tile.
+         * @param tile the tile.
+         * @return the goal.
+         * @require tile != null
+         */
+        public static Goal builderOn(final Tile tile) {
+            return new Goal() {
+                @Override
+                boolean isSatisfied(Planner planner, State state) {
+                    return state.builder == planner.tiles.getTileId(tile);
+                }
+            };
+        }
+    }
+
+    /**
+     * A world state reached by a sequence of actions. Immutable once built.
+     */
+    static final class State {
+        /** The state this was reached from, or null for the start. */
+        final State parent;
+        /** The action taken from the parent, or null for the start. */
+        final Action action;
+        /** Id of the builder's tile. */
+        final int builder;
+        /** Block type codes of the inventory. */
+        final byte[] inventory;
+        /** Ids of changed tiles, sorted, and their block type codes. */
+        final int[] changedIds;
+        final byte[][] columns;
+        /** Hash of the differences from the start state. */
+        final long hash;
+
+        State(State parent, Action action, int builder, byte[] inventory,
+              int[] changedIds, byte[][] columns, long hash) {
+            this.parent = parent;
+            this.action = action;
+            this.builder = builder;
+            this.inventory = inventory;
+            this.changedIds = changedIds;
+            this.columns = columns;
+            this.hash = hash;
+        }
+    }
+
+    /* Properties of each block type, indexed by type code. */
+    private static final boolean[] DIGGABLE;
+    private static final boolean[] MOVEABLE;
+    private static final boolean[] CARRYABLE;
+    private static final boolean[] GROUND;
+
+    static {
+        WorldMap.BlockTypes[] types = WorldMap.BlockTypes.values();
+        DIGGABLE = new boolean[types.length];
+        MOVEABLE = new boolean[types.length];
+        CARRYABLE = new boolean[types.length];
+        GROUND = new boolean[types.length];
+        for (WorldMap.BlockTypes type : types) {
+            Block block = type.newInstance();
+            DIGGABLE[type.ordinal()] = block.isDiggable();
+            MOVEABLE[type.ordinal()] = block.isMoveable();
+            CARRYABLE[type.ordinal()] = block.isCarryable();
+            GROUND[type.ordinal()] = block instanceof GroundBlock;
+        }
+    }
+
+    /** The map to plan on. */
+    private final WorldMap map;
+
+    /** The map's tiles. */
+    private final SparseTileArray tiles;
+
+    /** Maximum number of states kept in one search. */
+    private final int maxStates;
+
+    /** Threads expanding each layer, or null to expand on the caller. */
+    private final ForkJoinPool pool;
+
+    /** States kept by the most recent search. */
+    private int stateCount;
+
+    /** True if the most recent search ran out of budget. */
+    private boolean budgetExhausted;
+
+    /**
+     * Creates a planner that expands states on the calling thread.
+     * @param map the map to plan on.
+     * @param maxStates maximum number of states kept in one search.
+     * @require map != null, maxStates &gt; 0
+     */
+    public Planner(WorldMap map, int maxStates) {
+        this(map, maxStates, 1);
+    }
+
+    /**
+     * Creates a planner.
+     * @param map the map to plan on.
+     * @param maxStates maximum number of states kept in one search.
+     * @param threads number of threads expanding each layer.
+     * @require map != null, maxStates &gt; 0, threads &gt; 0
+     */
+    public Planner(WorldMap map, int maxStates, int threads) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        this.maxStates = maxStates;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Finds a shortest sequence of actions achieving a goal from the map's
+     * current state.
+     * @param goal the goal.
+     * @return the actions, in order; empty if the goal is already
+     *      satisfied, or null if it cannot be achieved within the state
+     *      budget.
+     * @require goal != null
+     */
+    public List<Action> plan(Goal goal) {
+        budgetExhausted = false;
+        Builder builder = map.getBuilder();
+        List<Block> contents = builder.getInventory();
+        byte[] inventory = new byte[contents.size()];
+        for (int i = 0; i < inventory.length; i++) {
+            inventory[i] = code(contents.get(i));
+        }
+        State start = new State(null, null,
+                tiles.getTileId(builder.getCurrentTile()), inventory,
+                new int[0], new byte[0][], 0);
+        stateCount = 1;
+        if (start.builder == -1) {
+            return null;
+        }
+
+        LongHashSet seen = new LongHashSet();
+        seen.add(start.hash);
+        List<State> layer = Collections.singletonList(start);
+        while (!layer.isEmpty()) {
+            for (State state : layer) {
+                if (goal.isSatisfied(this, state)) {
+                    return actionsTo(state);
+                }
+            }
+            List<List<State>> expansions = expandAll(layer);
+            List<State> nextLayer = new ArrayList<>();
+            for (List<State> successors : expansions) {
+                for (State successor : successors) {
+                    if (!seen.add(successor.hash)) {
+                        continue;
+                    }
+                    if (++stateCount > maxStates) {
+                        budgetExhausted = true;
+                        return null;
+                    }
+                    nextLayer.add(successor);
+                }
+            }
+            layer = nextLayer;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of states kept by the most recent search.
+     * @return number of states.
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Checks whether the most recent search gave up because it reached the
+     * state budget.
+     * @return true if the budget was exhausted.
+     */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * Shuts down the planner's threads. The planner must not be used
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Expands every state of a layer, in parallel if configured.
+     * @param layer the states.
+     * @return the successors of each state, in layer order.
+     */
+    private List<List<State>> expandAll(List<State> layer) {
+        if (pool == null || layer.size() < 2) {
+            List<List<State>> result = new ArrayList<>(layer.size());
+            for (State state : layer) {
+                result.add(expand(state));
+            }
+            return result;
+        }
+        try {
+            return pool.submit(() -> layer.parallelStream()
+                    .map(this::expand)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while planning.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Expansion failed.",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Generates every state one successful action away.
+     * @param state the state.
+     * @return the successors.
+     */
+    private List<State> expand(State state) {
+        List<State> successors = new ArrayList<>();
+        Tile tile = tiles.getTile(state.builder);
+        int height = height(state, state.builder);
+
+        for (Direction direction : Direction.ALL) {
+            int next = tiles.getTileId(tile.getExit(direction.name()));
+            if (next == -1) {
+                continue;
+            }
+            int nextHeight = height(state, next);
+            // MOVE_BUILDER
+            if (Math.abs(nextHeight - height) <= 1) {
+                successors.add(new State(state,
+                        new Action(Action.MOVE_BUILDER, direction.name()),
+                        next, state.inventory, state.changedIds,
+                        state.columns, state.hash
+                        ^ ZobristKeys.builder(state.builder)
+                        ^ ZobristKeys.builder(next)));
+            }
+            // MOVE_BLOCK
+            if (nextHeight < height) {
+                int top = block(state, state.builder, height - 1);
+                if (MOVEABLE[top] && canPlace(nextHeight, top)) {
+                    successors.add(moveBlock(state, next, direction, height,
+                            nextHeight, top));
+                }
+            }
+        }
+
+        // DIG
+        if (height > 0) {
+            int top = block(state, state.builder, height - 1);
+            if (DIGGABLE[top]) {
+                byte[] inventory = state.inventory;
+                long hash = state.hash
+                        ^ ZobristKeys.block(state.builder, height - 1, top);
+                if (CARRYABLE[top]) {
+                    inventory = Arrays.copyOf(inventory, inventory.length + 1);
+                    inventory[inventory.length - 1] = (byte) top;
+                    hash ^= ZobristKeys.inventory(inventory.length - 1, top);
+                }
+                successors.add(withColumn(state, new Action(Action.DIG, ""),
+                        inventory, state.builder,
+                        column(state, state.builder, height - 1), hash));
+            }
+        }
+
+        // DROP
+        for (int i = 0; i < state.inventory.length; i++) {
+            int type = state.inventory[i];
+            if (!canPlace(height, type)) {
+                continue;
+            }
+            byte[] inventory = new byte[state.inventory.length - 1];
+            System.arraycopy(state.inventory, 0, inventory, 0, i);
+            System.arraycopy(state.inventory, i + 1, inventory, i,
+                    inventory.length - i);
+            long hash = state.hash
+                    ^ ZobristKeys.block(state.builder, height, type);
+            // Blocks after i shift down one place.
+            for (int j = i; j < state.inventory.length; j++) {
+                hash ^= ZobristKeys.inventory(j, state.inventory[j]);
+                if (j < inventory.length) {
+                    hash ^= ZobristKeys.inventory(j, inventory[j]);
+                }
+            }
+            byte[] column = column(state, state.builder, height + 1);
+            column[height] = (byte) type;
+            successors.add(withColumn(state,
+                    new Action(Action.DROP, Integer.toString(i)), inventory,
+                    state.builder, column, hash));
+        }
+        return successors;
+    }
+
+    /**
+     * Makes the state after moving the builder's top block to a neighbour.
+     */
+    private State moveBlock(State state, int next, Direction direction,
+                            int height, int nextHeight, int top) {
+        byte[] from = column(state, state.builder, height - 1);
+        byte[] to = column(state, next, nextHeight + 1);
+        to[nextHeight] = (byte) top;
+        long hash = state.hash
+                ^ ZobristKeys.block(state.builder, height - 1, top)
+                ^ ZobristKeys.block(next, nextHeight, top);
+        State moved = withColumn(state,
+                new Action(Action.MOVE_BLOCK, direction.name()),
+                state.inventory, state.builder, from, hash);
+        // Second column change, on the intermediate state's tables.
+        return withColumn(moved, moved.action, moved.inventory, next, to,
+                hash, state);
+    }
+
+    /**
+     * Checks Tile.placeBlock's height rules.
+     * @param height current number of blocks.
+     * @param type type code of the block to place.
+     * @return true if the block can be placed.
+     */
+    private static boolean canPlace(int height, int type) {
+        return height < Tile.MAX_BLOCKS
+                && !(GROUND[type] && height >= Tile.MAX_GROUND_BLOCKS);
+    }
+
+    /**
+     * Makes a successor with one tile's blocks replaced.
+     */
+    private State withColumn(State state, Action action, byte[] inventory,
+                             int id, byte[] column, long hash) {
+        return withColumn(state, action, inventory, id, column, hash, state);
+    }
+
+    /**
+     * Makes a successor of parent with one tile's blocks replaced in the
+     * changed tiles of base.
+     */
+    private State withColumn(State base, Action action, byte[] inventory,
+                             int id, byte[] column, long hash,
+                             State parent) {
+        int index = Arrays.binarySearch(base.changedIds, id);
+        int[] ids;
+        byte[][] columns;
+        if (index >= 0) {
+            ids = base.changedIds;
+            columns = base.columns.clone();
+            columns[index] = column;
+        } else {
+            int insert = -index - 1;
+            int length = base.changedIds.length;
+            ids = new int[length + 1];
+            columns = new byte[length + 1][];
+            System.arraycopy(base.changedIds, 0, ids, 0, insert);
+            System.arraycopy(base.columns, 0, columns, 0, insert);
+            ids[insert] = id;
+            columns[insert] = column;
+            System.arraycopy(base.changedIds, insert, ids, insert + 1,
+                    length - insert);
+            System.arraycopy(base.columns, insert, columns, insert + 1,
+                    length - insert);
+        }
+        return new State(parent, action, base.builder, inventory, ids,
+                columns, hash);
+    }
+
+    /**
+     * Gets the number of blocks on a tile in a state.
+     * @param state the state.
+     * @param id tile id.
+     * @return number of blocks.
+     */
+    int height(State state, int id) {
+        int index = Arrays.binarySearch(state.changedIds, id);
+        return index >= 0 ? state.columns[index].length
+                : tiles.getTile(id).getHeight();
+    }
+
+    /**
+     * Gets the type code of a block on a tile in a state.
+     * @param state the state.
+     * @param id tile id.
+     * @param level index of the block, 0 at the bottom.
+     * @return block type code.
+     */
+    int block(State state, int id, int level) {
+        int index = Arrays.binarySearch(state.changedIds, id);
+        return index >= 0 ? state.columns[index][level]
+                : code(tiles.getTile(id).getBlocks().get(level));
+    }
+
+    /**
+     * Copies a tile's blocks in a state into an array of a given length,
+     * truncating or leaving room at the top.
+     * @param state the state.
+     * @param id tile id.
+     * @param length length of the copy.
+     * @return the copy.
+     */
+    private byte[] column(State state, int id, int length) {
+        int index = Arrays.binarySearch(state.changedIds, id);
+        if (index >= 0) {
+            return Arrays.copyOf(state.columns[index], length);
+        }
+        List<Block> blocks = tiles.getTile(id).getBlocks();
+        byte[] column = new byte[length];
+        for (int i = 0; i < Math.min(length, blocks.size()); i++) {
+            column[i] = code(blocks.get(i));
+        }
+        return column;
+    }
+
+    /**
+     * Gets the type code of a block.
+     * @param block the block.
+     * @return its type code.
+     */
+    private static byte code(Block block) {
+        return (byte) WorldMap.BlockTypes.fromInstance(block).ordinal();
+    }
+
+    /**
+     * Follows parents back to the start.
+     * @param state the final state.
+     * @return the actions leading to it.
+     */
+    private static List<Action> actionsTo(State state) {
+        List<Action> actions = new ArrayList<>();
+        for (State s = state; s.parent != null; s = s.parent) {
+            actions.add(s.action);
+        }
+        Collections.reverse(actions);
+        return actions;
+    }
+
+    /**
+     * An open-addressing set of longs, for state hashes.
+     */
+    private static final class LongHashSet {
+        private long[] slots = new long[1024];
+        private boolean hasZero;
+        private int size;
+
+        /**
+         * Adds a value.
+         * @param value the value.
+         * @return true if it was not already present.
+         */
+        boolean add(long value) {
+            if (value == 0) {
+                // Zero marks empty slots, so it is tracked separately.
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if (2 * (size + 1) > slots.length) {
+                grow();
+            }
+            int mask = slots.length - 1;
+            int i = (int) ZobristKeys.mix(value) & mask;
+            while (slots[i] != 0) {
+                if (slots[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = value;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            size = 0;
+            for (long value : old) {
+                if (value != 0) {
+                    add(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package csse2002.block.world;
+
+import java.util.Arrays;
+
+/**
+ * Answers whether the builder could walk from one tile of a
+ * {@link WorldMap} to another, following the rules of
+ * {@link Builder#canEnter(Tile)}.
+ *
+ * Tiles are grouped into components joined by two-way links: a pair of
+ * opposite north, east, south or west exits between tiles whose heights
+ * differ by at most one block. Tiles in the same component can reach each
+ * other, so when every exit has a matching opposite exit, a query is a
+ * comparison of two labels.
+ *
+ * The index observes the map and updates itself after every block placed
+ * or removed. A height change only adds or removes links of one tile. Added
+ * links merge two components by relabelling the smaller one. Removed links
+ * are checked by searching outwards from both ends at once; if a component
+ * splits, the search stops as soon as the smaller part has been explored,
+ * and only that part is relabelled. Changed exits rebuild the index on the
+ * next query.
+ *
+ * If the map has any one-way exits, tiles in different components may still
+ * be reachable, so those queries fall back to a {@link PathFinder} search.
+ *
+ * The index is not thread safe.
+ */
+public class ReachabilityIndex implements AutoCloseable {
+
+    /** The indexed map. */
+    private final WorldMap map;
+
+    /** The map's tiles. */
+    private final SparseTileArray tiles;
+
+    /** Searches used when components can't answer a query. */
+    private final PathFinder pathFinder;
+
+    /** Height of each tile, as last seen by the index. */
+    private int[] heights;
+
+    /** Component label of each tile. */
+    private int[] labels;
+
+    /** Number of tiles with each label. */
+    private int[] sizes;
+
+    /* Labels not in use, as a stack. */
+    private int[] freeLabels;
+    private int freeCount;
+
+    /** Number of components. */
+    private int componentCount;
+
+    /** Number of exits without a matching opposite exit. */
+    private int oneWayExits;
+
+    /** True if exits have changed since the index was built. */
+    private boolean stale = true;
+
+    /* Search state. A tile is marked by a search when marks[id] equals
+     * markBase plus the number of the side that reached it. */
+    private int[] marks;
+    private int markBase;
+    private int[] queue;
+
+    /* Neighbours found by the last expand() and not yet queued. */
+    private final int[] pending = new int[Direction.ALL.length];
+    private int pendingCount;
+
+    /* Scratch space for heightChanged(). */
+    private final int[] before = new int[Direction.ALL.length];
+    private final int[] sources = new int[Direction.ALL.length + 1];
+
+    /** Rebuilds or updates the index as the map changes. */
+    private final WorldObserver updater = new WorldObserver() {
+        @Override
+        public void blockPlaced(Tile tile, Block block) {
+            heightChanged(tile);
+        }
+
+        @Override
+        public void blockRemoved(Tile tile, Block block) {
+            heightChanged(tile);
+        }
+
+        @Override
+        public void exitChanged(Tile tile, String name, Tile previous,
+                                Tile target) {
+            stale = true;
+        }
+    };
+
+    /**
+     * Creates an index of the given map's tiles and starts observing it.
+     * @param map the map to index.
+     * @require map != null
+     */
+    public ReachabilityIndex(WorldMap map) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        this.pathFinder = new PathFinder(map);
+        int count = tiles.getTileCount();
+        heights = new int[count];
+        labels = new int[count];
+        sizes = new int[count];
+        freeLabels = new int[count];
+        marks = new int[count];
+        queue = new int[count];
+        map.addObserver(updater);
+    }
+
+    /**
+     * Checks whether the builder could walk from one tile to another.
+     * @param from tile to start from.
+     * @param to tile to reach.
+     * @return true if to can be reached from from; false otherwise,
+     *      including if either tile is not on the map.
+     * @require from != null, to != null
+     */
+    public boolean canReach(Tile from, Tile to) {
+        int start = tiles.getTileId(from);
+        int goal = tiles.getTileId(to);
+        if (start == -1 || goal == -1) {
+            return false;
+        }
+        rebuildIfStale();
+        if (labels[start] == labels[goal]) {
+            return true;
+        }
+        return oneWayExits > 0 && pathFinder.findPath(from, to) != null;
+    }
+
+    /**
+     * Checks whether the map's builder could walk from its current tile to
+     * the given tile.
+     * @param to tile to reach.
+     * @return true if to can be reached.
+     * @require to != null
+     */
+    public boolean canReach(Tile to) {
+        return canReach(map.getBuilder().getCurrentTile(), to);
+    }
+
+    /**
+     * Gets the number of groups of tiles joined by two-way links.
+     * @return number of components.
+     */
+    public int getComponentCount() {
+        rebuildIfStale();
+        return componentCount;
+    }
+
+    /**
+     * Gets the number of tiles joined to the given tile by two-way links,
+     * including itself.
+     * @param tile the tile.
+     * @return size of the tile's component, or 0 if it is not on the map.
+     * @require tile != null
+     */
+    public int getComponentSize(Tile tile) {
+        int id = tiles.getTileId(tile);
+        if (id == -1) {
+            return 0;
+        }
+        rebuildIfStale();
+        return sizes[labels[id]];
+    }
+
+    /**
+     * Gets the component label of a tile. Tiles have equal labels exactly
+     * when they are joined by two-way links.
+     * @param id tile id.
+     * @return component label.
+     */
+    int getLabel(int id) {
+        rebuildIfStale();
+        return labels[id];
+    }
+
+    /**
+     * Stops observing the map.
+     */
+    @Override
+    public void close() {
+        map.removeObserver(updater);
+    }
+
+    /**
+     * Checks whether a tile has a two-way link in a direction, using the
+     * heights last seen by the index.
+     * @param id tile id.
+     * @param direction the direction.
+     * @return the id of the linked tile, or -1 if there is no link.
+     */
+    private int link(int id, Direction direction) {
+        Tile tile = tiles.getTile(id);
+        Tile next = tile.getExit(direction.name());
+        if (next == null
+                || next.getExit(direction.opposite().name()) != tile) {
+            return -1;
+        }
+        int nextId = tiles.getTileId(next);
+        if (nextId == -1 || Math.abs(heights[nextId] - heights[id]) > 1) {
+            return -1;
+        }
+        return nextId;
+    }
+
+    /**
+     * Labels every tile from scratch if exits have changed.
+     */
+    private void rebuildIfStale() {
+        if (!stale) {
+            return;
+        }
+        stale = false;
+        int count = heights.length;
+        oneWayExits = 0;
+        for (int id = 0; id < count; id++) {
+            Tile tile = tiles.getTile(id);
+            heights[id] = tile.getHeight();
+            for (Direction direction : Direction.ALL) {
+                Tile next = tile.getExit(direction.name());
+                if (next != null && (tiles.getTileId(next) == -1
+                        || next.getExit(direction.opposite().name())
+                        != tile)) {
+                    oneWayExits++;
+                }
+            }
+        }
+
+        Arrays.fill(labels, -1);
+        componentCount = 0;
+        freeCount = 0;
+        for (int id = 0; id < count; id++) {
+            if (labels[id] == -1) {
+                int label = componentCount++;
+                sizes[label] = relabel(id, -1, label);
+            }
+        }
+        for (int label = count - 1; label >= componentCount; label--) {
+            sizes[label] = 0;
+            freeLabels[freeCount++] = label;
+        }
+    }
+
+    /**
+     * Updates the components after a tile's height changed.
+     * @param tile the tile.
+     */
+    private void heightChanged(Tile tile) {
+        int id = tiles.getTileId(tile);
+        if (id == -1 || stale) {
+            return;
+        }
+        // Links of the tile before and after the change.
+        for (Direction direction : Direction.ALL) {
+            before[direction.ordinal()] = link(id, direction);
+        }
+        heights[id] = tile.getHeight();
+
+        // Each part a component may split into contains this tile or one
+        // of the tiles it lost a link to. Tiles with equal labels before
+        // each check are known to be joined, so each lost neighbour is
+        // checked against an earlier tile with the same label.
+        int sourceCount = 0;
+        sources[sourceCount++] = id;
+        for (Direction direction : Direction.ALL) {
+            int lost = before[direction.ordinal()];
+            if (lost != -1 && link(id, direction) == -1) {
+                for (int i = 0; i < sourceCount; i++) {
+                    if (labels[sources[i]] == labels[lost]) {
+                        splitIfDisconnected(sources[i], lost);
+                        break;
+                    }
+                }
+                sources[sourceCount++] = lost;
+            }
+        }
+
+        for (Direction direction : Direction.ALL) {
+            int next = link(id, direction);
+            if (next != -1 && labels[next] != labels[id]) {
+                merge(id, next);
+            }
+        }
+    }
+
+    /**
+     * Joins the components of two newly linked tiles by relabelling the
+     * smaller one.
+     * @param a a tile id.
+     * @param b a tile id with a different label.
+     */
+    private void merge(int a, int b) {
+        int labelA = labels[a];
+        int labelB = labels[b];
+        if (sizes[labelA] < sizes[labelB]) {
+            relabel(a, labelA, labelB);
+            freeLabel(labelA, labelB);
+        } else {
+            relabel(b, labelB, labelA);
+            freeLabel(labelB, labelA);
+        }
+    }
+
+    /**
+     * Releases a label whose tiles were all moved to another label.
+     * @param label the emptied label.
+     * @param into the label its tiles were moved to.
+     */
+    private void freeLabel(int label, int into) {
+        sizes[into] += sizes[label];
+        sizes[label] = 0;
+        freeLabels[freeCount++] = label;
+        componentCount--;
+    }
+
+    /**
+     * Checks whether two tiles with the same label are still joined, and if
+     * not, moves the smaller part to a new label.
+     * @param a a tile id.
+     * @param b a tile id with the same label.
+     */
+    private void splitIfDisconnected(int a, int b) {
+        int label = labels[a];
+        if (markBase > Integer.MAX_VALUE - 3) {
+            Arrays.fill(marks, 0);
+            markBase = 0;
+        }
+        markBase += 2;
+        int sideA = markBase;
+        int sideB = markBase + 1;
+
+        // Two searches share the queue array: side A grows up from the
+        // start and side B grows down from the end. Neither can outgrow
+        // the component, which fits in the array.
+        int headA = 0;
+        int tailA = 0;
+        int headB = queue.length - 1;
+        int tailB = queue.length - 1;
+        queue[tailA++] = a;
+        marks[a] = sideA;
+        queue[tailB--] = b;
+        marks[b] = sideB;
+
+        while (headA < tailA && headB > tailB) {
+            // Expand one tile on each side in turn.
+            if (expand(queue[headA++], label, sideA, sideB)) {
+                return; // The searches met.
+            }
+            for (int i = 0; i < pendingCount; i++) {
+                queue[tailA++] = pending[i];
+            }
+            if (expand(queue[headB--], label, sideB, sideA)) {
+                return;
+            }
+            for (int i = 0; i < pendingCount; i++) {
+                queue[tailB--] = pending[i];
+            }
+        }
+
+        // One side ran out of tiles without meeting the other: it is a
+        // complete component. Move it to a new label.
+        int newLabel = freeLabels[--freeCount];
+        int moved;
+        if (headA >= tailA) {
+            for (int i = 0; i < tailA; i++) {
+                labels[queue[i]] = newLabel;
+            }
+            moved = tailA;
+        } else {
+            for (int i = queue.length - 1; i > tailB; i--) {
+                labels[queue[i]] = newLabel;
+            }
+            moved = queue.length - 1 - tailB;
+        }
+        sizes[newLabel] = moved;
+        sizes[label] -= moved;
+        componentCount++;
+    }
+
+    /**
+     * Finds the unmarked linked neighbours of a tile within a label, marking
+     * them for one side of a split check and leaving them in pending.
+     * @param id tile to expand.
+     * @param label label to stay within.
+     * @param side mark of the expanding side.
+     * @param other mark of the other side.
+     * @return true if a neighbour was marked by the other side.
+     */
+    private boolean expand(int id, int label, int side, int other) {
+        pendingCount = 0;
+        for (Direction direction : Direction.ALL) {
+            int next = link(id, direction);
+            if (next == -1 || labels[next] != label) {
+                continue;
+            }
+            if (marks[next] == other) {
+                return true;
+            }
+            if (marks[next] != side) {
+                marks[next] = side;
+                pending[pendingCount++] = next;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives a new label to every tile linked to a start tile that has a
+     * given label.
+     * @param start tile to start from.
+     * @param from label to replace, or -1 for unlabelled tiles.
+     * @param to new label.
+     * @return number of tiles relabelled.
+     */
+    private int relabel(int start, int from, int to) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        labels[start] = to;
+        while (head < tail) {
+            int id = queue[head++];
+            for (Direction direction : Direction.ALL) {
+                int next = link(id, direction);
+                if (next != -1 && labels[next] == from) {
+                    labels[next] = to;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+}
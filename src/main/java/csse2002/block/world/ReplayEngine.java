@@ -0,0 +1,423 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the actions applied to a {@link WorldMap} and can move the map to
+ * the state after any recorded action.
+ *
+ * Snapshots of the blocks on every tile and of the builder are taken every
+ * N actions. Seeking restores the nearest snapshot at or before the target
+ * and replays only the actions after it, or simply replays forwards if the
+ * map is already closer. Only the tiles and inventory entries that differ
+ * from the snapshot are touched when restoring.
+ *
+ * At most a fixed number of snapshots are kept. When that limit is reached,
+ * every second snapshot is dropped and the interval doubles, so memory stays
+ * bounded however long the run.
+ *
+ * Actions never change exits, so snapshots do not record them. Exits
+ * changed by other means between recorded actions are not restored.
+ */
+public class ReplayEngine {
+
+    /* Encoding of the secondary action in the action log. */
+    private static final int SECONDARY_EMPTY = 0;
+    private static final int SECONDARY_DIRECTION = 1;
+    private static final int SECONDARY_NUMBER = 2;
+    private static final int SECONDARY_RAW = 3;
+
+    /** Directions in the order used by the action log. */
+    private static final String[] DIRECTIONS = {
+            "north", "east", "south", "west"
+    };
+
+    /** All block types, indexed by the codes stored in snapshots. */
+    private static final WorldMap.BlockTypes[] BLOCK_TYPES =
+            WorldMap.BlockTypes.values();
+
+    /**
+     * The blocks on every tile and the builder's state after some number of
+     * actions.
+     */
+    private static class Snapshot {
+        /** Number of actions applied when the snapshot was taken. */
+        final long position;
+        /** Number of blocks on each tile, in getTiles() order. */
+        final byte[] heights;
+        /** Block type codes of every tile, bottom to top, concatenated. */
+        final byte[] blocks;
+        /** Index of the builder's tile in getTiles(). */
+        final int builderTile;
+        /** Block type codes of the inventory. */
+        final byte[] inventory;
+
+        Snapshot(long position, byte[] heights, byte[] blocks,
+                 int builderTile, byte[] inventory) {
+            this.position = position;
+            this.heights = heights;
+            this.blocks = blocks;
+            this.builderTile = builderTile;
+            this.inventory = inventory;
+        }
+    }
+
+    /** The map actions are applied to. */
+    private final WorldMap map;
+
+    /** Maximum number of snapshots kept. */
+    private final int maxSnapshots;
+
+    /** Number of actions between snapshots. */
+    private long snapshotInterval;
+
+    /** Snapshots, in order of position. The first is the initial state. */
+    private final List<Snapshot> snapshots = new ArrayList<>();
+
+    /** Encoded actions; see {@link #encode(Action)}. */
+    private long[] log = new long[1024];
+
+    /** Actions that cannot be encoded compactly. */
+    private final List<Action> rawActions = new ArrayList<>();
+
+    /** Number of recorded actions. */
+    private long size;
+
+    /** Number of recorded actions currently applied to the map. */
+    private long position;
+
+    /**
+     * Creates an engine recording actions applied to the given map from its
+     * current state.
+     * @param map the map to apply actions to.
+     * @param snapshotInterval actions between snapshots.
+     * @param maxSnapshots maximum number of snapshots kept.
+     * @require map != null, snapshotInterval &gt; 0, maxSnapshots &ge; 2
+     */
+    public ReplayEngine(WorldMap map, long snapshotInterval,
+                        int maxSnapshots) {
+        this.map = map;
+        this.snapshotInterval = snapshotInterval;
+        this.maxSnapshots = maxSnapshots;
+        snapshots.add(takeSnapshot(0));
+    }
+
+    /**
+     * Reads all actions from the reader, recording them and applying them to
+     * the map. Prints the same output as
+     * {@link Action#processActions(BufferedReader, WorldMap)}.
+     * @param reader the reader to read actions from.
+     * @throws ActionFormatException if an action line is invalid.
+     * @require reader != null
+     */
+    public void processActions(BufferedReader reader)
+            throws ActionFormatException {
+        Action action;
+        while ((action = Action.loadAction(reader)) != null) {
+            System.out.println(apply(action));
+        }
+    }
+
+    /**
+     * Records an action and applies it to the map. If the map has been moved
+     * back by {@link #seek(long)}, the actions after it are discarded first.
+     * @param action the action to apply.
+     * @return the message for the action, as printed by
+     *      {@link Action#processAction(Action, WorldMap)}.
+     * @require action != null
+     */
+    public String apply(Action action) {
+        if (position < size) {
+            truncate();
+        }
+        if (size == log.length) {
+            log = Arrays.copyOf(log, log.length * 2);
+        }
+        log[(int) size++] = encode(action);
+        String message = Action.applyAction(action, map);
+        position++;
+        if (position % snapshotInterval == 0) {
+            snapshots.add(takeSnapshot(position));
+            if (snapshots.size() > maxSnapshots) {
+                thinSnapshots();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Moves the map to the state after the first index recorded actions.
+     * @param index number of recorded actions to have applied.
+     * @require 0 &le; index &le; getSize()
+     */
+    public void seek(long index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("No such action: " + index);
+        }
+        Snapshot nearest = snapshots.get(0);
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.position > index) {
+                break;
+            }
+            nearest = snapshot;
+        }
+        // Replay from where we are if that is at least as close.
+        if (position > index || position < nearest.position) {
+            restore(nearest);
+            position = nearest.position;
+        }
+        while (position < index) {
+            Action.applyAction(decode(log[(int) position]), map);
+            position++;
+        }
+    }
+
+    /**
+     * Gets the number of recorded actions.
+     * @return number of actions.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of recorded actions currently applied to the map.
+     * @return current position.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the number of snapshots held, including the initial state.
+     * @return number of snapshots.
+     */
+    public int getSnapshotCount() {
+        return snapshots.size();
+    }
+
+    /**
+     * Gets the current number of actions between snapshots.
+     * @return snapshot interval.
+     */
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Gets the number of recorded actions that could not be encoded
+     * compactly.
+     * @return number of raw actions held.
+     */
+    int getRawActionCount() {
+        return rawActions.size();
+    }
+
+    /**
+     * Discards recorded actions and snapshots after the current position.
+     */
+    private void truncate() {
+        // The first raw action discarded holds the number of raw actions
+        // recorded before it.
+        for (long i = position; i < size; i++) {
+            if (((int) (log[(int) i] >>> 8) & 0xFF) == SECONDARY_RAW) {
+                int kept = (int) (log[(int) i] >>> 32);
+                rawActions.subList(kept, rawActions.size()).clear();
+                break;
+            }
+        }
+        size = position;
+        while (snapshots.get(snapshots.size() - 1).position > position) {
+            snapshots.remove(snapshots.size() - 1);
+        }
+    }
+
+    /**
+     * Drops every snapshot not at a multiple of twice the interval, then
+     * doubles the interval.
+     */
+    private void thinSnapshots() {
+        snapshotInterval *= 2;
+        List<Snapshot> kept = new ArrayList<>();
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.position % snapshotInterval == 0) {
+                kept.add(snapshot);
+            }
+        }
+        snapshots.clear();
+        snapshots.addAll(kept);
+    }
+
+    /**
+     * Captures the blocks on every tile and the builder's state.
+     * @param position number of actions applied.
+     * @return the snapshot.
+     */
+    private Snapshot takeSnapshot(long position) {
+        SparseTileArray tileArray = map.getTileArray();
+        List<Tile> tiles = tileArray.getTiles();
+        byte[] heights = new byte[tiles.size()];
+        int total = 0;
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = (byte) tiles.get(i).getBlocks().size();
+            total += heights[i];
+        }
+        byte[] blocks = new byte[total];
+        int next = 0;
+        for (Tile tile : tiles) {
+            for (Block block : tile.getBlocks()) {
+                blocks[next++] = blockCode(block);
+            }
+        }
+        Builder builder = map.getBuilder();
+        List<Block> inventory = builder.getInventory();
+        byte[] inventoryCodes = new byte[inventory.size()];
+        for (int i = 0; i < inventoryCodes.length; i++) {
+            inventoryCodes[i] = blockCode(inventory.get(i));
+        }
+        return new Snapshot(position, heights, blocks,
+                tileArray.getTileId(builder.getCurrentTile()),
+                inventoryCodes);
+    }
+
+    /**
+     * Makes the map match a snapshot, touching only what differs.
+     * @param snapshot the snapshot to restore.
+     */
+    private void restore(Snapshot snapshot) {
+        List<Tile> tiles = map.getTiles();
+        int offset = 0;
+        for (int i = 0; i < snapshot.heights.length; i++) {
+            int height = snapshot.heights[i];
+            restoreColumn(tiles.get(i), snapshot.blocks, offset, height);
+            offset += height;
+        }
+
+        Builder builder = map.getBuilder();
+        Tile builderTile = tiles.get(snapshot.builderTile);
+        if (builder.getCurrentTile() != builderTile) {
+            builder.restoreTile(builderTile);
+        }
+        List<Block> inventory = builder.getInventory();
+        int common = commonPrefix(inventory, snapshot.inventory, 0,
+                snapshot.inventory.length);
+        for (int i = inventory.size() - 1; i >= common; i--) {
+            builder.takeInventory(i);
+        }
+        for (int i = common; i < snapshot.inventory.length; i++) {
+            builder.restoreInventory(i,
+                    BLOCK_TYPES[snapshot.inventory[i]].newInstance());
+        }
+    }
+
+    /**
+     * Makes a tile's blocks match part of a snapshot.
+     * @param tile the tile to restore.
+     * @param codes block codes.
+     * @param offset index of the tile's bottom block in codes.
+     * @param height number of blocks the tile should have.
+     */
+    private static void restoreColumn(Tile tile, byte[] codes, int offset,
+                                      int height) {
+        List<Block> blocks = tile.getBlocks();
+        int common = commonPrefix(blocks, codes, offset, height);
+        try {
+            for (int i = blocks.size(); i > common; i--) {
+                tile.removeTopBlock();
+            }
+        } catch (TooLowException e) {
+            throw new AssertionError("Removed more blocks than exist.", e);
+        }
+        for (int i = common; i < height; i++) {
+            tile.restoreBlock(BLOCK_TYPES[codes[offset + i]].newInstance());
+        }
+    }
+
+    /**
+     * Counts the leading blocks whose types match the given codes.
+     * @param blocks blocks to compare.
+     * @param codes block codes.
+     * @param offset index of the first code.
+     * @param length number of codes.
+     * @return length of the matching prefix.
+     */
+    private static int commonPrefix(List<Block> blocks, byte[] codes,
+                                    int offset, int length) {
+        int limit = Math.min(blocks.size(), length);
+        int i = 0;
+        while (i < limit && blockCode(blocks.get(i)) == codes[offset + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the code of a block's type.
+     * @param block the block.
+     * @return block type code.
+     */
+    private static byte blockCode(Block block) {
+        return (byte) WorldMap.BlockTypes.fromInstance(block).ordinal();
+    }
+
+    /**
+     * Encodes an action into a long. The low byte is the primary action,
+     * the next byte says how the secondary action is stored and the high
+     * 32 bits hold the direction index, DROP index or raw action index.
+     * @param action the action.
+     * @return the encoded action.
+     */
+    private long encode(Action action) {
+        int primary = action.getPrimaryAction();
+        String secondary = action.getSecondaryAction();
+        int kind = SECONDARY_RAW;
+        int value = 0;
+        if (primary >= 0 && primary <= Action.DROP) {
+            if (secondary.equals("")) {
+                kind = SECONDARY_EMPTY;
+            } else if ((value = Arrays.asList(DIRECTIONS).indexOf(secondary))
+                    != -1) {
+                kind = SECONDARY_DIRECTION;
+            } else {
+                try {
+                    value = Integer.parseInt(secondary);
+                    // Only if it converts back exactly, e.g. not "+1".
+                    if (Integer.toString(value).equals(secondary)) {
+                        kind = SECONDARY_NUMBER;
+                    }
+                } catch (NumberFormatException e) {
+                    // Leave as raw.
+                }
+            }
+        }
+        if (kind == SECONDARY_RAW) {
+            primary = 0;
+            value = rawActions.size();
+            rawActions.add(action);
+        }
+        return primary | (kind << 8) | ((long) value << 32);
+    }
+
+    /**
+     * Decodes an action encoded by {@link #encode(Action)}.
+     * @param code the encoded action.
+     * @return an equivalent action.
+     */
+    private Action decode(long code) {
+        int primary = (int) code & 0xFF;
+        int value = (int) (code >>> 32);
+        switch ((int) (code >>> 8) & 0xFF) {
+            case SECONDARY_EMPTY:
+                return new Action(primary, "");
+            case SECONDARY_DIRECTION:
+                return new Action(primary, DIRECTIONS[value]);
+            case SECONDARY_NUMBER:
+                return new Action(primary, Integer.toString(value));
+            default:
+                return rawActions.get(value);
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package csse2002.block.world;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongFunction;
+
+/**
+ * Applies random actions to a generated map for a set time, sampling the
+ * heap, action latencies and garbage collection at regular intervals, to
+ * find slow leaks and latencies that creep up over long runs.
+ *
+ * Actions come from {@link WorldGenerator#writeActions(java.io.Writer,
+ * long)} in chunks with different seeds, so they never repeat and many of
+ * them fail, as in real action files. Each one is applied as by
+ * {@link Action#processAction(Action, WorldMap)} without printing. Random
+ * actions can leave the builder stuck, on a tile it can neither leave nor
+ * change, so when every action of a chunk fails the harness carries on
+ * with a newly generated map.
+ *
+ * At the end of each interval the harness records:
+ * <ul>
+ *     <li>the actions applied and failed, and maps started;</li>
+ *     <li>the 50th and 99th percentile and longest action latencies, from
+ *     a {@link MetricsRegistry} installed for the interval;</li>
+ *     <li>the number and total time of garbage collections during the
+ *     interval;</li>
+ *     <li>the heap in use after a full collection.</li>
+ * </ul>
+ *
+ * The first quarter of the samples is left out of drift checks, while the
+ * JIT compiles and the heap settles. The trend of each measurement over
+ * the rest is the Theil-Sen slope, the median of the slopes between every
+ * pair of samples, so one slow collection or outlying sample does not make
+ * a trend. A measurement drifts if its trend grows it over the checked
+ * samples by more than its limit, as a fraction of its median.
+ *
+ * The harness replaces the installed registry while it runs, and restores
+ * it when done.
+ */
+public class SoakHarness {
+
+    /** Actions generated at a time. */
+    private static final int CHUNK = 10000;
+
+    /* Smallest medians that growth is a fraction of, so that values near
+     * zero do not drift from noise alone. */
+    private static final double HEAP_FLOOR = 1 << 20;
+    private static final double LATENCY_FLOOR = 100;
+    private static final double GC_FLOOR = 10;
+
+    /**
+     * Most points fitted when measuring growth. Longer series are split
+     * into this many runs, each standing for its median.
+     */
+    private static final int MAX_FIT_POINTS = 512;
+
+    /**
+     * Measurements at the end of one interval.
+     */
+    public static final class Sample {
+
+        /* Measurements. */
+        private final long elapsedMillis;
+        private final long actions;
+        private final long failures;
+        private final long medianNanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long newMaps;
+        private final long gcCount;
+        private final long gcMillis;
+        private final long heapBytes;
+
+        /**
+         * Creates a sample.
+         * @param elapsedMillis time since the run started.
+         * @param actions actions applied in the interval.
+         * @param failures actions that failed in the interval.
+         * @param medianNanos median action latency.
+         * @param p99Nanos 99th percentile action latency.
+         * @param maxNanos longest action latency.
+         * @param newMaps maps started in the interval.
+         * @param gcCount collections during the interval.
+         * @param gcMillis time spent collecting during the interval.
+         * @param heapBytes heap in use after a full collection.
+         */
+        Sample(long elapsedMillis, long actions, long failures,
+               long medianNanos, long p99Nanos, long maxNanos, long newMaps,
+               long gcCount, long gcMillis, long heapBytes) {
+            this.elapsedMillis = elapsedMillis;
+            this.actions = actions;
+            this.failures = failures;
+            this.medianNanos = medianNanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.newMaps = newMaps;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.heapBytes = heapBytes;
+        }
+
+        /**
+         * Gets the time from the start of the run to the sample.
+         * @return the time in milliseconds.
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Gets the number of actions applied in the interval.
+         * @return number of actions, including failed ones.
+         */
+        public long getActions() {
+            return actions;
+        }
+
+        /**
+         * Gets the number of actions that failed in the interval.
+         * @return number of failed actions.
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the median latency of the interval's actions.
+         * @return the latency in nanoseconds.
+         */
+        public long getMedianNanos() {
+            return medianNanos;
+        }
+
+        /**
+         * Gets the 99th percentile latency of the interval's actions.
+         * @return the latency in nanoseconds.
+         */
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * Gets the longest latency of the interval's actions.
+         * @return the latency in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Gets the number of maps started in the interval, after the
+         * builder was stuck on the one before.
+         * @return number of maps.
+         */
+        public long getNewMaps() {
+            return newMaps;
+        }
+
+        /**
+         * Gets the number of garbage collections during the interval.
+         * @return the number, or -1 if unsupported.
+         */
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        /**
+         * Gets the time spent in garbage collection during the interval.
+         * @return the time in milliseconds, or -1 if unsupported.
+         */
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        /**
+         * Gets the heap in use after a full collection at the end of the
+         * interval.
+         * @return the heap in bytes.
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+    }
+
+    /**
+     * The samples of a run and the drift found in them.
+     */
+    public static final class Report {
+
+        /** Samples in order. */
+        private final List<Sample> samples;
+
+        /* Growth over the checked samples, as a fraction of the median, or
+         * 0 if there were too few samples. */
+        private final double heapGrowth;
+        private final double latencyGrowth;
+        private final double gcGrowth;
+
+        /* Whether each measurement drifted. */
+        private final boolean heapDrifting;
+        private final boolean latencyDrifting;
+        private final boolean gcDrifting;
+
+        /**
+         * Checks the samples of a run for drift.
+         * @param samples the samples.
+         * @param harness the harness with the drift limits.
+         */
+        private Report(List<Sample> samples, SoakHarness harness) {
+            this.samples = Collections.unmodifiableList(samples);
+            int first = samples.size() / 4;
+            int count = samples.size() - first;
+            double[] heap = new double[count];
+            double[] latency = new double[count];
+            double[] gc = new double[count];
+            for (int i = 0; i < count; i++) {
+                Sample sample = samples.get(first + i);
+                heap[i] = sample.heapBytes;
+                latency[i] = sample.p99Nanos;
+                gc[i] = Math.max(0, sample.gcMillis);
+            }
+            heapGrowth = growth(heap, HEAP_FLOOR);
+            latencyGrowth = growth(latency, LATENCY_FLOOR);
+            gcGrowth = growth(gc, GC_FLOOR);
+            heapDrifting = heapGrowth > harness.heapLimit;
+            latencyDrifting = latencyGrowth > harness.latencyLimit;
+            gcDrifting = gcGrowth > harness.gcLimit;
+        }
+
+        /**
+         * Gets the samples of the run.
+         * @return the samples, in order.
+         */
+        public List<Sample> getSamples() {
+            return samples;
+        }
+
+        /**
+         * Checks whether the heap in use after collection grew by more
+         * than its limit.
+         * @return true if the heap drifted upwards.
+         */
+        public boolean isHeapDrifting() {
+            return heapDrifting;
+        }
+
+        /**
+         * Checks whether the 99th percentile action latency grew by more
+         * than its limit.
+         * @return true if latency drifted upwards.
+         */
+        public boolean isLatencyDrifting() {
+            return latencyDrifting;
+        }
+
+        /**
+         * Checks whether the time spent collecting in each interval grew
+         * by more than its limit.
+         * @return true if collection time drifted upwards.
+         */
+        public boolean isGcDrifting() {
+            return gcDrifting;
+        }
+
+        /**
+         * Checks whether any measurement drifted upwards.
+         * @return true if the heap, latency or collection time drifted.
+         */
+        public boolean isDrifting() {
+            return heapDrifting || latencyDrifting || gcDrifting;
+        }
+
+        /**
+         * Prints a line per sample, then the drift of the run as by
+         * {@link #printDrift(PrintStream)}.
+         * @param out the stream to print to.
+         * @require out != null
+         */
+        public void print(PrintStream out) {
+            for (Sample sample : samples) {
+                out.println(format(sample));
+            }
+            printDrift(out);
+        }
+
+        /**
+         * Prints the growth of each measurement, marking those that
+         * drifted, e.g.
+         * <pre>
+         * heap growth 2.1%
+         * p99 latency growth 85.0% DRIFTING
+         * gc time growth 0.0%
+         * </pre>
+         * @param out the stream to print to.
+         * @require out != null
+         */
+        public void printDrift(PrintStream out) {
+            printGrowth(out, "heap", heapGrowth, heapDrifting);
+            printGrowth(out, "p99 latency", latencyGrowth, latencyDrifting);
+            printGrowth(out, "gc time", gcGrowth, gcDrifting);
+            out.flush();
+        }
+
+        /**
+         * Prints the growth of a measurement.
+         * @param out the stream to print to.
+         * @param name name of the measurement.
+         * @param growth the growth.
+         * @param drifting whether it drifted.
+         */
+        private void printGrowth(PrintStream out, String name, double growth,
+                                 boolean drifting) {
+            out.println(String.format(Locale.ROOT, "%s growth %.1f%%%s", name,
+                    growth * 100, drifting ? " DRIFTING" : ""));
+        }
+    }
+
+    /** Seed of the map and actions. */
+    private final long seed;
+
+    /* Size of the generated map. */
+    private final int width;
+    private final int height;
+
+    /* Length of the run and of each interval. */
+    private long durationMillis = 60000;
+    private long intervalMillis = 1000;
+
+    /* Largest growth of each measurement that is not drift. */
+    private double heapLimit = 0.1;
+    private double latencyLimit = 0.5;
+    private double gcLimit = 0.5;
+
+    /**
+     * Creates a harness that runs for a minute, sampling every second,
+     * with the default drift limits: 10% for the heap, 50% for latency
+     * and collection time.
+     * @param seed seed of the map and actions.
+     * @param width width of the generated map.
+     * @param height height of the generated map.
+     * @require width &gt; 0, height &gt; 0
+     */
+    public SoakHarness(long seed, int width, int height) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets how long to run and how often to sample.
+     * @param durationMillis length of the run in milliseconds.
+     * @param intervalMillis time between samples in milliseconds.
+     * @require 0 &lt; intervalMillis &lt;= durationMillis
+     */
+    public void setDuration(long durationMillis, long intervalMillis) {
+        this.durationMillis = durationMillis;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Sets the largest growth of each measurement over the checked samples
+     * that is not drift, as a fraction of its median.
+     * @param heap limit for the heap in use after collection.
+     * @param latency limit for the 99th percentile action latency.
+     * @param gc limit for the time spent collecting per interval.
+     * @require heap &gt;= 0, latency &gt;= 0, gc &gt;= 0
+     */
+    public void setDriftLimits(double heap, double latency, double gc) {
+        this.heapLimit = heap;
+        this.latencyLimit = latency;
+        this.gcLimit = gc;
+    }
+
+    /**
+     * Generates a map and applies random actions to it for the set time.
+     * @param progress stream to print each sample to as it is taken, or
+     *                 null.
+     * @return the samples and drift found.
+     */
+    public Report run(PrintStream progress) {
+        return run(number -> new WorldGenerator(seed + number, width, height)
+                .generate(), progress);
+    }
+
+    /**
+     * Applies random actions to maps for the set time.
+     * @param maps makes the maps actions are applied to, given the number
+     *             of maps made before.
+     * @param progress stream to print each sample to as it is taken, or
+     *                 null.
+     * @return the samples and drift found.
+     * @require maps != null
+     */
+    Report run(LongFunction<WorldMap> maps, PrintStream progress) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<GarbageCollectorMXBean> collectors =
+                ManagementFactory.getGarbageCollectorMXBeans();
+        MetricsRegistry previous = MetricsRegistry.getInstalled();
+        List<Sample> samples = new ArrayList<>();
+        long chunk = 0;
+        long mapCount = 0;
+        WorldMap map = maps.apply(mapCount++);
+        long start = System.nanoTime();
+        try {
+            long gcCount = gcCount(collectors);
+            long gcMillis = gcMillis(collectors);
+            // Time spent sampling is not part of any interval.
+            long intervals = durationMillis / intervalMillis;
+            for (long interval = 0; interval < intervals; interval++) {
+                MetricsRegistry registry = new MetricsRegistry();
+                MetricsRegistry.install(registry);
+                long firstMap = mapCount;
+                long end = System.nanoTime() + intervalMillis * 1000000;
+                while (System.nanoTime() < end) {
+                    if (!applyChunk(map, chunk++)) {
+                        map = maps.apply(mapCount++);
+                    }
+                }
+                MetricsRegistry.install(null);
+
+                // Collections during the interval, then the live heap.
+                long intervalGcCount = difference(gcCount(collectors),
+                        gcCount);
+                long intervalGcMillis = difference(gcMillis(collectors),
+                        gcMillis);
+                System.gc();
+                long heap = memory.getHeapMemoryUsage().getUsed();
+                gcCount = gcCount(collectors);
+                gcMillis = gcMillis(collectors);
+
+                long actions = 0;
+                for (int primary : new int[] {Action.MOVE_BUILDER,
+                        Action.MOVE_BLOCK, Action.DIG, Action.DROP, -1}) {
+                    actions += registry.getCount(primary);
+                }
+                long failures = 0;
+                for (MetricsRegistry.FailureCause cause
+                        : MetricsRegistry.FailureCause.values()) {
+                    failures += registry.getFailureCount(cause);
+                }
+                Sample sample = new Sample(
+                        (System.nanoTime() - start) / 1000000, actions,
+                        failures, registry.getPercentile(50),
+                        registry.getPercentile(99),
+                        registry.getPercentile(100), mapCount - firstMap,
+                        intervalGcCount, intervalGcMillis, heap);
+                samples.add(sample);
+                if (progress != null) {
+                    progress.println(format(sample));
+                    progress.flush();
+                }
+            }
+        } finally {
+            MetricsRegistry.install(previous);
+        }
+        return new Report(samples, this);
+    }
+
+    /**
+     * Generates a chunk of actions and applies them to a map.
+     * @param map the map.
+     * @param chunk number of the chunk, which seeds its actions.
+     * @return true if any action succeeded.
+     */
+    private boolean applyChunk(WorldMap map, long chunk) {
+        StringWriter text = new StringWriter();
+        try {
+            new WorldGenerator(seed + chunk, width, height)
+                    .writeActions(text, CHUNK);
+            BufferedReader reader =
+                    new BufferedReader(new StringReader(text.toString()));
+            boolean succeeded = false;
+            Action action;
+            while ((action = Action.loadAction(reader)) != null) {
+                String message = Action.applyAction(action, map);
+                succeeded |= message.equals(Action.successMessage(action));
+            }
+            return succeeded;
+        } catch (IOException | ActionFormatException e) {
+            // Strings cannot fail to be written or read, and generated
+            // action lines are all well formed.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Gets the growth of a series of samples over its length, from its
+     * Theil-Sen slope.
+     *
+     * The slope is the median of the slopes between every pair of points,
+     * which takes memory quadratic in the number of points. Series longer
+     * than {@link #MAX_FIT_POINTS} are first split into that many runs of
+     * consecutive samples, each fitted as one point at its middle with its
+     * median value, so that hours of samples cost no more than a few
+     * minutes'.
+     * @param values the samples, in order.
+     * @param floor smallest median the growth is a fraction of.
+     * @return the growth as a fraction of the median of the values, or of
+     *      the floor if that is larger, or 0 if there are fewer than 3
+     *      values.
+     */
+    static double growth(double[] values, double floor) {
+        int n = values.length;
+        if (n < 3) {
+            return 0;
+        }
+        int points = Math.min(n, MAX_FIT_POINTS);
+        double[] x = new double[points];
+        double[] y = new double[points];
+        for (int i = 0; i < points; i++) {
+            int start = (int) ((long) i * n / points);
+            int end = (int) ((long) (i + 1) * n / points);
+            double[] run = Arrays.copyOfRange(values, start, end);
+            Arrays.sort(run);
+            x[i] = (start + end - 1) / 2.0;
+            y[i] = median(run);
+        }
+        double[] slopes = new double[points * (points - 1) / 2];
+        int count = 0;
+        for (int i = 0; i < points; i++) {
+            for (int j = i + 1; j < points; j++) {
+                slopes[count++] = (y[j] - y[i]) / (x[j] - x[i]);
+            }
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        Arrays.sort(slopes);
+        return median(slopes) * (n - 1) / Math.max(median(sorted), floor);
+    }
+
+    /**
+     * Gets the median of sorted values.
+     * @param sorted the values, in increasing order.
+     * @return the median.
+     * @require sorted.length &gt; 0
+     */
+    private static double median(double[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle]
+                : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * Formats a sample as one line, e.g.
+     * <pre>
+     * 10000ms actions=1834000 failed=1021000 maps=1 p50=0.180us
+     * p99=1.410us max=210.300us gc=3 (4ms) heap=12.4MiB
+     * </pre>
+     * @param sample the sample.
+     * @return the line.
+     */
+    private static String format(Sample sample) {
+        return String.format(Locale.ROOT, "%dms actions=%d failed=%d"
+                + " maps=%d p50=%.3fus p99=%.3fus max=%.3fus gc=%d (%dms)"
+                + " heap=%.1fMiB", sample.elapsedMillis, sample.actions,
+                sample.failures, sample.newMaps, sample.medianNanos / 1000.0,
+                sample.p99Nanos / 1000.0, sample.maxNanos / 1000.0,
+                sample.gcCount, sample.gcMillis,
+                sample.heapBytes / 1048576.0);
+    }
+
+    /**
+     * Subtracts an earlier reading of a counter.
+     * @param now the current reading, or -1 if unsupported.
+     * @param before the earlier reading, or -1 if unsupported.
+     * @return the difference, or -1 if either is unsupported.
+     */
+    private static long difference(long now, long before) {
+        return now < 0 || before < 0 ? -1 : now - before;
+    }
+
+    /**
+     * Reads the total collection time of all garbage collectors.
+     * @param collectors the collectors.
+     * @return the time in milliseconds, or -1 if unsupported.
+     */
+    private static long gcMillis(List<GarbageCollectorMXBean> collectors) {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            long time = collector.getCollectionTime();
+            if (time < 0) {
+                return -1;
+            }
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * Reads the total number of collections of all garbage collectors.
+     * @param collectors the collectors.
+     * @return the count, or -1 if unsupported.
+     */
+    private static long gcCount(List<GarbageCollectorMXBean> collectors) {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            long count = collector.getCollectionCount();
+            if (count < 0) {
+                return -1;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Runs a soak test and prints its samples and drift to System.out.
+     *
+     * Takes options "--seconds=N" (default 60), "--interval=N" seconds
+     * between samples (default 1), "--seed=N" (default 2002) and
+     * "--size=N" for an N by N map (default 64). Exits with status 1 if
+     * any measurement drifted, or 2 on a bad option.
+     * @param args the options.
+     */
+    public static void main(String[] args) {
+        long seconds = 60;
+        long interval = 1;
+        long seed = 2002;
+        int size = 64;
+        try {
+            for (String arg : args) {
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--seconds=")) {
+                    seconds = Long.parseLong(value);
+                } else if (arg.startsWith("--interval=")) {
+                    interval = Long.parseLong(value);
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(value);
+                } else if (arg.startsWith("--size=")) {
+                    size = Integer.parseInt(value);
+                } else {
+                    throw new NumberFormatException(arg);
+                }
+            }
+            if (interval <= 0 || seconds < interval || size <= 0) {
+                throw new NumberFormatException("Out of range.");
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: SoakHarness [--seconds=N]"
+                    + " [--interval=N] [--seed=N] [--size=N]");
+            System.exit(2);
+        }
+        SoakHarness harness = new SoakHarness(seed, size, size);
+        harness.setDuration(seconds * 1000, interval * 1000);
+        Report report = harness.run(System.out);
+        report.printDrift(System.out);
+        if (report.isDrifting()) {
+            System.exit(1);
+        }
+    }
+}
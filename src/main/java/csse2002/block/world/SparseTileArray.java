@@ -3,7 +3,9 @@ package csse2002.block.world;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -27,51 +29,19 @@ public class SparseTileArray {
         }
     }
 
-    /**
-     * Represents cardinal directions as well as opposites to each direction
-     * and their representation as a Position shift.
-     */
-    private enum Direction {
-        north(0, -1, "south"),
-        east(1, 0, "west"),
-        south(0, 1, "north"),
-        west(-1, 0, "east");
-
-        private final String oppositeName;
-        private final Position position;
-
-        /**
-         * Creates a Direction object.
-         * @param x Shift in the x direction.
-         * @param y Shift in the y direction.
-         * @param oppositeName Name of the direction opposite this.
-         */
-        Direction(int x, int y, String oppositeName) {
-            this.oppositeName = oppositeName;
-            position = new Position(x, y);
-        }
-
-        /**
-         * Returns the direction value of the compass direction opposite this.
-         * */
-        Direction opposite() {
-            return Direction.valueOf(oppositeName);
-        }
-
-        /**
-         * Returns this direction as a change in position.
-         */
-        Position position() {
-            return position;
-        }
-    }
-
     /** Set of inserted tiles, in BFS order relative to a starting tile. */
     private final List<Tile> insertedTiles = new ArrayList<>();
 
     /** Mapping of position to tiles. */
     private final Map<Position, Tile> positionMapping = new HashMap<>();
 
+    /** Mapping of tiles to their index in insertedTiles. */
+    private final Map<Tile, Integer> tileIds = new IdentityHashMap<>();
+
+    /* Coordinates of each tile, indexed by tile id. */
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+
     /**
      * Constructor which initialises an empty SparseTileArray.
      * More precisely, getTile(new Position(x, y)) returns null for any x and y.
@@ -85,6 +55,7 @@ public class SparseTileArray {
     private void resetInternalState() {
         insertedTiles.clear();
         positionMapping.clear();
+        tileIds.clear();
     }
 
     /**
@@ -113,6 +84,85 @@ public class SparseTileArray {
         return Collections.unmodifiableList(insertedTiles);
     }
 
+    /**
+     * Gets the number of tiles in the array. Tile ids range from 0 to one
+     * less than this.
+     * @return number of tiles.
+     */
+    int getTileCount() {
+        return insertedTiles.size();
+    }
+
+    /**
+     * Gets the id of a tile, which is its index in {@link #getTiles()}.
+     * @param tile the tile.
+     * @return the tile's id, or -1 if it is not in the array.
+     */
+    int getTileId(Tile tile) {
+        Integer id = tileIds.get(tile);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the tile with the given id.
+     * @param id tile id.
+     * @return the tile.
+     * @require 0 &lt;= id &lt; getTileCount()
+     */
+    Tile getTile(int id) {
+        return insertedTiles.get(id);
+    }
+
+    /**
+     * Gets the x coordinate of the tile with the given id.
+     * @param id tile id.
+     * @return x coordinate.
+     * @require 0 &lt;= id &lt; getTileCount()
+     */
+    int getTileX(int id) {
+        return xs[id];
+    }
+
+    /**
+     * Gets the y coordinate of the tile with the given id.
+     * @param id tile id.
+     * @return y coordinate.
+     * @require 0 &lt;= id &lt; getTileCount()
+     */
+    int getTileY(int id) {
+        return ys[id];
+    }
+
+    /**
+     * Adds a tile at a position without following its exits, assigning it
+     * the next id. Callers are responsible for the tiles being geometrically
+     * consistent, as {@link #addLinkedTiles(Tile, int, int)} would ensure.
+     * @param tile tile to add.
+     * @param position the tile's position.
+     * @require tile is not in the array, no tile is at position
+     */
+    void appendTile(Tile tile, Position position) {
+        positionMapping.put(position, tile);
+        addTileId(tile, position);
+    }
+
+    /**
+     * Appends a tile, assigning it the next id.
+     * @param tile tile to add.
+     * @param position the tile's position.
+     */
+    private void addTileId(Tile tile, Position position) {
+        int id = insertedTiles.size();
+        if (id == xs.length) {
+            xs = Arrays.copyOf(xs, id * 2);
+            ys = Arrays.copyOf(ys, id * 2);
+        }
+        xs[id] = position.getX();
+        ys[id] = position.getY();
+        insertedTiles.add(tile);
+        tileIds.put(tile, id);
+    }
+
     /**
      * Add a set of tiles to the sparse grid.
      *
@@ -143,13 +193,26 @@ public class SparseTileArray {
             throws WorldMapInconsistentException {
         // We offload the actual computations to a helper function and
         // clean before/after it.
+        FlightEvents.TileIndex event = FlightEvents.isRecording()
+                ? new FlightEvents.TileIndex() : null;
+        if (event != null) {
+            event.begin();
+        }
         resetInternalState();
         try {
             unsafeBreadthFirstAddTiles(
                     startingTile, new Position(startingX, startingY));
+            if (event != null) {
+                event.succeeded = true;
+            }
         } catch (WorldMapInconsistentException e) {
             resetInternalState();
             throw e;
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.tiles = insertedTiles.size();
+                event.commit();
+            }
         }
     }
 
@@ -193,7 +256,7 @@ public class SparseTileArray {
 
             // The following 'if' logic makes sure each tile exists in only
             // one position.
-            if (insertedTiles.contains(currentTile)) {
+            if (tileIds.containsKey(currentTile)) {
                 // The tile has already been encountered.
                 if (positionMapping.containsKey(currentPos)
                         && positionMapping.get(currentPos).equals(currentTile)) {
@@ -222,12 +285,12 @@ public class SparseTileArray {
 
             // Add the tile to the grid.
             positionMapping.put(currentPos, currentTile);
-            insertedTiles.add(currentTile);
+            addTileId(currentTile, currentPos);
 
             // Exits of the current tile.
             Map<String, Tile> exits = currentTile.getExits();
             // Iterate over the directions in order of N, E, S, W.
-            for (Direction dir : Direction.values()) {
+            for (Direction dir : Direction.ALL) {
                 if (exits.containsKey(dir.name())) {
                     Tile adjTile = exits.get(dir.name());
 
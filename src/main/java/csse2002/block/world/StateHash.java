@@ -0,0 +1,155 @@
+package csse2002.block.world;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains a 64-bit Zobrist hash of a {@link WorldMap}'s state: the blocks
+ * on every tile, every exit, the builder's tile and the inventory.
+ *
+ * The hash is the XOR of one {@link ZobristKeys} key per block, exit,
+ * builder position and inventory slot, with tiles identified by their index
+ * in {@link WorldMap#getTiles()}. As an observer of the map it updates the
+ * hash in constant time for each block or exit change and builder move.
+ *
+ * Inventory changes are the exception: they cost time proportional to the
+ * number of blocks after the changed slot. The inventory is a list, so
+ * inserting or removing a block moves every block after it to a new slot,
+ * and a hash that tells orders apart has to account for each block's slot.
+ * No keying of slots avoids that without also tracking sums over the rest
+ * of the list, which costs as much to keep current. Digging appends and
+ * dropping usually takes from near the end, so most changes touch one or
+ * two slots.
+ *
+ * Maps with the same tiles in the same order and the same state have equal
+ * hashes, so loading one file twice gives equal hashes.
+ */
+class StateHash implements WorldObserver {
+
+    /** The hashed map. */
+    private final WorldMap map;
+
+    /** The map's tiles. */
+    private final SparseTileArray tiles;
+
+    /** Current hash. */
+    private long hash;
+
+    /**
+     * Computes the hash of a map. Does not observe the map; add the result
+     * as an observer to keep it current.
+     * @param map the map.
+     */
+    StateHash(WorldMap map) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        hash = compute(map);
+    }
+
+    /**
+     * Gets the hash of the map's current state.
+     * @return the hash.
+     */
+    long get() {
+        return hash;
+    }
+
+    /**
+     * Computes the hash of a map's state from scratch.
+     * @param map the map.
+     * @return the hash.
+     */
+    static long compute(WorldMap map) {
+        SparseTileArray tiles = map.getTileArray();
+        long result = 0;
+        for (int id = 0; id < tiles.getTileCount(); id++) {
+            Tile tile = tiles.getTile(id);
+            List<Block> blocks = tile.getBlocks();
+            for (int level = 0; level < blocks.size(); level++) {
+                result ^= ZobristKeys.block(id, level, code(blocks.get(level)));
+            }
+            for (Map.Entry<String, Tile> exit : tile.getExits().entrySet()) {
+                result ^= ZobristKeys.exit(id, exit.getKey(),
+                        tiles.getTileId(exit.getValue()));
+            }
+        }
+        Builder builder = map.getBuilder();
+        result ^= ZobristKeys.builder(
+                tiles.getTileId(builder.getCurrentTile()));
+        List<Block> inventory = builder.getInventory();
+        for (int i = 0; i < inventory.size(); i++) {
+            result ^= ZobristKeys.inventory(i, code(inventory.get(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public void blockPlaced(Tile tile, Block block) {
+        int id = tiles.getTileId(tile);
+        if (id != -1) {
+            hash ^= ZobristKeys.block(id, tile.getHeight() - 1, code(block));
+        }
+    }
+
+    @Override
+    public void blockRemoved(Tile tile, Block block) {
+        int id = tiles.getTileId(tile);
+        if (id != -1) {
+            hash ^= ZobristKeys.block(id, tile.getHeight(), code(block));
+        }
+    }
+
+    @Override
+    public void exitChanged(Tile tile, String name, Tile previous,
+                            Tile target) {
+        int id = tiles.getTileId(tile);
+        if (id == -1) {
+            return;
+        }
+        if (previous != null) {
+            hash ^= ZobristKeys.exit(id, name, tiles.getTileId(previous));
+        }
+        if (target != null) {
+            hash ^= ZobristKeys.exit(id, name, tiles.getTileId(target));
+        }
+    }
+
+    @Override
+    public void builderMoved(Builder builder, Tile from, Tile to) {
+        hash ^= ZobristKeys.builder(tiles.getTileId(from))
+                ^ ZobristKeys.builder(tiles.getTileId(to));
+    }
+
+    @Override
+    public void inventoryAdded(Builder builder, int index, Block block) {
+        // Blocks from index onwards moved up one slot.
+        List<Block> inventory = builder.getInventory();
+        for (int i = index + 1; i < inventory.size(); i++) {
+            int type = code(inventory.get(i));
+            hash ^= ZobristKeys.inventory(i - 1, type)
+                    ^ ZobristKeys.inventory(i, type);
+        }
+        hash ^= ZobristKeys.inventory(index, code(block));
+    }
+
+    @Override
+    public void inventoryRemoved(Builder builder, int index, Block block) {
+        // Blocks after index moved down one slot.
+        hash ^= ZobristKeys.inventory(index, code(block));
+        List<Block> inventory = builder.getInventory();
+        for (int i = index; i < inventory.size(); i++) {
+            int type = code(inventory.get(i));
+            hash ^= ZobristKeys.inventory(i + 1, type)
+                    ^ ZobristKeys.inventory(i, type);
+        }
+    }
+
+    /**
+     * Gets the type code of a block.
+     * @param block the block.
+     * @return its type code.
+     */
+    private static int code(Block block) {
+        return WorldMap.BlockTypes.fromInstance(block).ordinal();
+    }
+}
@@ -1,8 +1,8 @@
 package csse2002.block.world;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -18,10 +18,10 @@ import java.util.TreeMap;
 @SuppressWarnings("ALL")
 public class Tile implements Serializable {
     /* The maximum number of blocks allowed on a tile. */
-    private static final int MAX_BLOCKS = 8;
+    static final int MAX_BLOCKS = 8;
 
     /* The maximum number of ground allowed on a tile. */
-    private static final int MAX_GROUND_BLOCKS = 3;
+    static final int MAX_GROUND_BLOCKS = 3;
 
     /* Exits from this Tile. Strings are names of the exits */
     private Map<String, Tile> exits;
@@ -29,6 +29,13 @@ public class Tile implements Serializable {
     /* Blocks in this Tile*/
     private List<Block> blocks;
 
+    /* Targets of the exits, or null if an exit has changed since they were
+     * last needed. Lets canEnter() check exits without creating iterators. */
+    private transient Tile[] exitTargets;
+
+    /* Notified of changes to this tile, or null. Set by the owning WorldMap. */
+    transient WorldObserver observer;
+
     /**
      * Construct a new tile.<br>
      * Each tile should be constructed with no exits (getExits().size() == 0).
@@ -41,8 +48,8 @@ public class Tile implements Serializable {
     public Tile() {
         exits = new TreeMap<String, Tile>();
 
-        // use a list for now, but could be a stack
-        blocks = new LinkedList<Block>();
+        // Sized so that placing blocks never grows the list.
+        blocks = new ArrayList<Block>(MAX_BLOCKS);
 
         // each tile starts with 2 soil blocks and 1 grass block
         blocks.add(new SoilBlock());
@@ -89,7 +96,8 @@ public class Tile implements Serializable {
         }
 
         // make a copy of startingBlocks
-        blocks = new LinkedList<>(startingBlocks);
+        blocks = new ArrayList<>(MAX_BLOCKS);
+        blocks.addAll(startingBlocks);
     }
 
     /**
@@ -111,6 +119,43 @@ public class Tile implements Serializable {
         return Collections.unmodifiableList(blocks);
     }
 
+    /**
+     * Gets the number of blocks on this tile without creating a view of them.
+     * @return number of blocks
+     */
+    int getHeight() {
+        return blocks.size();
+    }
+
+    /**
+     * Gets the tile an exit leads to without creating a view of the exits.
+     * @param name name of the exit
+     * @return the target of the exit, or null if there is no such exit
+     */
+    Tile getExit(String name) {
+        return exits.get(name);
+    }
+
+    /**
+     * Checks whether any exit of this tile leads to a tile, without
+     * allocating once the exits have been checked since they last changed.
+     * @param target the tile
+     * @return true if an exit leads to target
+     */
+    boolean hasExitTo(Tile target) {
+        Tile[] targets = exitTargets;
+        if (targets == null) {
+            targets = exits.values().toArray(new Tile[exits.size()]);
+            exitTargets = targets;
+        }
+        for (Tile exit : targets) {
+            if (exit == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Return the block that is the top block on the tile. <br>
      * If there are no blocks, throw a TooLowException
@@ -135,7 +180,23 @@ public class Tile implements Serializable {
             throw new TooLowException();
         }
 
-        blocks.remove(blocks.size() - 1);
+        Block removed = blocks.remove(blocks.size() - 1);
+        if (observer != null) {
+            observer.blockRemoved(this, removed);
+        }
+    }
+
+    /**
+     * Put a block back on top of this tile without checking the height
+     * rules. Only used to restore an earlier state of the tile, which already
+     * satisfied them.
+     * @param block the block to put back.
+     */
+    void restoreBlock(Block block) {
+        blocks.add(block);
+        if (observer != null) {
+            observer.blockPlaced(this, block);
+        }
     }
 
     /**
@@ -154,7 +215,11 @@ public class Tile implements Serializable {
         }
 
         // add to exits
-        exits.put(name, target);
+        Tile previous = exits.put(name, target);
+        exitTargets = null;
+        if (observer != null && previous != target) {
+            observer.exitChanged(this, name, previous, target);
+        }
     }
 
     /**
@@ -171,7 +236,11 @@ public class Tile implements Serializable {
             throw new NoExitException();
         }
 
-        exits.remove(name);
+        Tile previous = exits.remove(name);
+        exitTargets = null;
+        if (observer != null) {
+            observer.exitChanged(this, name, previous, null);
+        }
     }
 
     /**
@@ -228,12 +297,12 @@ public class Tile implements Serializable {
      */
     public void moveBlock(String exitName) throws TooHighException,
             InvalidBlockException, NoExitException {
-        if (exitName == null || !exits.containsKey(exitName)) {
+        Tile exit = exitName == null ? null : exits.get(exitName);
+        if (exit == null) {
             throw new NoExitException();
         }
 
-        Tile exit = exits.get(exitName);
-        if (exit.getBlocks().size() >= blocks.size()) {
+        if (exit.getHeight() >= blocks.size()) {
             throw new TooHighException();
         }
 
@@ -293,6 +362,9 @@ public class Tile implements Serializable {
         }
 
         blocks.add(block);
+        if (observer != null) {
+            observer.blockPlaced(this, block);
+        }
     }
 
 }
@@ -0,0 +1,172 @@
+package csse2002.block.world;
+
+/**
+ * A single change to a tile or builder of a {@link WorldMap}, as published
+ * by a {@link WorldEventPublisher}.
+ *
+ * Events are compact and hold no references into the map: tiles are given
+ * by their ids, which are their indices in {@link WorldMap#getTiles()}, and
+ * blocks by their type names. Only the fields relevant to the event's type
+ * are set; the rest are null or -1.
+ */
+public final class WorldEvent {
+
+    /**
+     * Kinds of change.
+     */
+    public enum Type {
+        /** A block was placed on {@link #getTileId()}. */
+        BLOCK_PLACED,
+        /** The top block of {@link #getTileId()} was removed. */
+        BLOCK_REMOVED,
+        /** An exit of {@link #getTileId()} was added, replaced or removed. */
+        EXIT_CHANGED,
+        /**
+         * The builder moved from {@link #getFromId()} to {@link #getToId()}.
+         */
+        BUILDER_MOVED,
+        /** A block was inserted into the builder's inventory. */
+        INVENTORY_ADDED,
+        /** A block was removed from the builder's inventory. */
+        INVENTORY_REMOVED
+    }
+
+    private final Type type;
+    private final int tileId;
+    private final String blockType;
+    private final String exitName;
+    private final int fromId;
+    private final int toId;
+    private final int index;
+
+    /**
+     * Creates an event. Use the static factories in this class.
+     */
+    private WorldEvent(Type type, int tileId, String blockType,
+                       String exitName, int fromId, int toId, int index) {
+        this.type = type;
+        this.tileId = tileId;
+        this.blockType = blockType;
+        this.exitName = exitName;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.index = index;
+    }
+
+    /**
+     * Creates a BLOCK_PLACED or BLOCK_REMOVED event.
+     * @param placed true if the block was placed, false if removed.
+     * @param tileId id of the changed tile.
+     * @param block the block placed or removed.
+     * @return the event.
+     */
+    static WorldEvent block(boolean placed, int tileId, Block block) {
+        return new WorldEvent(placed ? Type.BLOCK_PLACED : Type.BLOCK_REMOVED,
+                tileId, block.getBlockType(), null, -1, -1, -1);
+    }
+
+    /**
+     * Creates an EXIT_CHANGED event.
+     * @param tileId id of the tile owning the exit.
+     * @param name name of the exit.
+     * @param previousId id of the previous target, or -1.
+     * @param targetId id of the new target, or -1.
+     * @return the event.
+     */
+    static WorldEvent exit(int tileId, String name, int previousId,
+                           int targetId) {
+        return new WorldEvent(Type.EXIT_CHANGED, tileId, null, name,
+                previousId, targetId, -1);
+    }
+
+    /**
+     * Creates a BUILDER_MOVED event.
+     * @param fromId id of the tile moved from.
+     * @param toId id of the tile moved to.
+     * @return the event.
+     */
+    static WorldEvent moved(int fromId, int toId) {
+        return new WorldEvent(Type.BUILDER_MOVED, -1, null, null,
+                fromId, toId, -1);
+    }
+
+    /**
+     * Creates an INVENTORY_ADDED or INVENTORY_REMOVED event.
+     * @param added true if the block was added, false if removed.
+     * @param index inventory index of the block.
+     * @param block the block.
+     * @return the event.
+     */
+    static WorldEvent inventory(boolean added, int index, Block block) {
+        return new WorldEvent(
+                added ? Type.INVENTORY_ADDED : Type.INVENTORY_REMOVED,
+                -1, block.getBlockType(), null, -1, -1, index);
+    }
+
+    /**
+     * Gets the kind of change.
+     * @return the event type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the id of the changed tile, for block and exit events.
+     * @return the tile id, or -1.
+     */
+    public int getTileId() {
+        return tileId;
+    }
+
+    /**
+     * Gets the type of the block placed, removed, added or taken, for block
+     * and inventory events, as given by {@link Block#getBlockType()}.
+     * @return the block type, or null.
+     */
+    public String getBlockType() {
+        return blockType;
+    }
+
+    /**
+     * Gets the name of the changed exit, for exit events.
+     * @return the exit name, or null.
+     */
+    public String getExitName() {
+        return exitName;
+    }
+
+    /**
+     * Gets the id of the previous exit target or of the tile the builder
+     * left.
+     * @return the tile id, or -1 if there was none or it is not in the map.
+     */
+    public int getFromId() {
+        return fromId;
+    }
+
+    /**
+     * Gets the id of the new exit target or of the tile the builder
+     * entered.
+     * @return the tile id, or -1 if there is none or it is not in the map.
+     */
+    public int getToId() {
+        return toId;
+    }
+
+    /**
+     * Gets the inventory index, for inventory events.
+     * @return the index, or -1.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return type + (tileId < 0 ? "" : " #" + tileId)
+                + (exitName == null ? "" : " " + exitName)
+                + (blockType == null ? "" : " " + blockType)
+                + (index < 0 ? "" : " @" + index);
+    }
+}
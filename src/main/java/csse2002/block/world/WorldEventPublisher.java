@@ -0,0 +1,457 @@
+package csse2002.block.world;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Publishes the changes made to a {@link WorldMap} as batches of
+ * {@link WorldEvent}s.
+ *
+ * Events are collected while actions run and published as one batch once
+ * every N completed actions, or whenever {@link #flush()} is called.
+ *
+ * The nested Subscriber and Subscription interfaces follow the contract of
+ * java.util.concurrent.Flow (which is not available on Java 8): a subscriber
+ * receives no more batches than it has requested. Batches that cannot be
+ * delivered yet are buffered per subscriber, up to a limit; a subscriber that
+ * falls further behind is cancelled with an IllegalStateException. When the
+ * publisher is closed, each subscriber is completed after it has requested
+ * its remaining buffered batches.
+ *
+ * The publisher only observes the map while it has subscribers, so an unused
+ * publisher adds no cost to mutations. Since observers are attached to and
+ * detached from the map on the thread that applies actions, subscribe() and
+ * close() must be called on that thread or while no actions are running. A
+ * subscriber that cancels or fails from another thread is detached when the
+ * next action completes.
+ *
+ * flush(), request() and cancel() may be called from any thread. Batches
+ * are queued for each subscriber in the order they were published, and are
+ * delivered outside the publisher's lock, on the thread that applies
+ * actions, the thread calling flush() or close(), or the thread calling
+ * request(), so a slow subscriber does not hold up collecting events.
+ */
+public class WorldEventPublisher implements AutoCloseable {
+
+    /**
+     * Receives batches of events. Mirrors Flow.Subscriber.
+     */
+    public interface Subscriber {
+        /**
+         * Called once, before any other method.
+         * @param subscription subscription used to request batches.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Receives the next batch of events.
+         * @param batch unmodifiable list of events, in the order they
+         *              happened.
+         */
+        void onNext(List<WorldEvent> batch);
+
+        /**
+         * The subscription failed and no more batches will be delivered.
+         * @param throwable the cause.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * The publisher was closed and no more batches will be delivered.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Links a subscriber to this publisher. Mirrors Flow.Subscription.
+     */
+    public interface Subscription {
+        /**
+         * Adds n batches to the number the subscriber is willing to receive.
+         * @param n number of batches; must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops delivery to the subscriber.
+         */
+        void cancel();
+    }
+
+    /** The map whose changes are published. */
+    private final WorldMap map;
+
+    /** The map's tiles, for looking up tile ids. */
+    private final SparseTileArray tiles;
+
+    /** Number of completed actions per batch. */
+    private final int actionsPerBatch;
+
+    /** Maximum batches buffered for a subscriber without demand. */
+    private final int maxBufferedBatches;
+
+    /** Active subscriptions. Guarded by this. */
+    private final List<SubscriptionImpl> subscriptions = new ArrayList<>();
+
+    /** Events collected since the last batch was published. Guarded by this. */
+    private List<WorldEvent> pending = new ArrayList<>();
+
+    /**
+     * Actions completed since the last batch was published. Guarded by
+     * this.
+     */
+    private int actionsSinceBatch;
+
+    /** True while the collector is attached to the map. Guarded by this. */
+    private boolean attached;
+
+    /** Collects events from the map while there are subscribers. */
+    private final WorldObserver collector = new WorldObserver() {
+        @Override
+        public void blockPlaced(Tile tile, Block block) {
+            collect(WorldEvent.block(true, id(tile), block));
+        }
+
+        @Override
+        public void blockRemoved(Tile tile, Block block) {
+            collect(WorldEvent.block(false, id(tile), block));
+        }
+
+        @Override
+        public void exitChanged(Tile tile, String name, Tile previous,
+                                Tile target) {
+            collect(WorldEvent.exit(id(tile), name, id(previous),
+                    id(target)));
+        }
+
+        @Override
+        public void builderMoved(Builder builder, Tile from, Tile to) {
+            collect(WorldEvent.moved(id(from), id(to)));
+        }
+
+        @Override
+        public void inventoryAdded(Builder builder, int index, Block block) {
+            collect(WorldEvent.inventory(true, index, block));
+        }
+
+        @Override
+        public void inventoryRemoved(Builder builder, int index,
+                                     Block block) {
+            collect(WorldEvent.inventory(false, index, block));
+        }
+
+        @Override
+        public void actionCompleted(Action action) {
+            completeAction();
+        }
+    };
+
+    /**
+     * Creates a publisher emitting one batch per action.
+     * @param map the map to publish changes of.
+     * @require map != null
+     */
+    public WorldEventPublisher(WorldMap map) {
+        this(map, 1, 1024);
+    }
+
+    /**
+     * Creates a publisher for the given map.
+     * @param map the map to publish changes of.
+     * @param actionsPerBatch number of completed actions per batch.
+     * @param maxBufferedBatches batches buffered for a subscriber before it
+     *                           is cancelled for falling behind.
+     * @require map != null, actionsPerBatch &gt; 0, maxBufferedBatches &gt; 0
+     */
+    public WorldEventPublisher(WorldMap map, int actionsPerBatch,
+                               int maxBufferedBatches) {
+        this.map = map;
+        this.tiles = map.getTileArray();
+        this.actionsPerBatch = actionsPerBatch;
+        this.maxBufferedBatches = maxBufferedBatches;
+    }
+
+    /**
+     * Adds a subscriber. Changes made from now on are delivered to it.
+     * Must be called on the thread that applies actions, or while no
+     * actions are running.
+     * @param subscriber the subscriber.
+     * @require subscriber != null
+     */
+    public void subscribe(Subscriber subscriber) {
+        SubscriptionImpl subscription = new SubscriptionImpl(subscriber);
+        synchronized (this) {
+            if (!attached) {
+                map.addObserver(collector);
+                attached = true;
+            }
+            subscriptions.add(subscription);
+        }
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Publishes the events collected so far as a batch, even if fewer than
+     * the configured number of actions have completed. Does nothing if no
+     * events were collected.
+     */
+    public void flush() {
+        List<SubscriptionImpl> targets;
+        List<SubscriptionImpl> overflowed = null;
+        synchronized (this) {
+            actionsSinceBatch = 0;
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<WorldEvent> batch = Collections.unmodifiableList(pending);
+            pending = new ArrayList<>();
+            targets = new ArrayList<>(subscriptions);
+            // Queued under the lock, so that batches keep their order.
+            for (SubscriptionImpl subscription : targets) {
+                if (!subscription.enqueue(batch)) {
+                    if (overflowed == null) {
+                        overflowed = new ArrayList<>();
+                    }
+                    overflowed.add(subscription);
+                }
+            }
+        }
+        if (overflowed != null) {
+            for (SubscriptionImpl subscription : overflowed) {
+                subscription.fail(new IllegalStateException(
+                        "Subscriber fell more than " + maxBufferedBatches
+                        + " batches behind."));
+            }
+        }
+        for (SubscriptionImpl subscription : targets) {
+            subscription.deliver();
+        }
+    }
+
+    /**
+     * Flushes remaining events, completes every subscriber and stops
+     * observing the map. Must be called on the thread that applies actions,
+     * or while no actions are running.
+     */
+    @Override
+    public void close() {
+        flush();
+        for (SubscriptionImpl subscription : snapshotSubscriptions()) {
+            subscription.complete();
+        }
+        synchronized (this) {
+            detachIfUnused();
+        }
+    }
+
+    /**
+     * Gets the number of active subscribers.
+     * @return number of subscribers.
+     */
+    public synchronized int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Gets the id of a tile.
+     * @param tile the tile, or null.
+     * @return the tile's id, or -1 if null or not in the map.
+     */
+    private int id(Tile tile) {
+        return tile == null ? -1 : tiles.getTileId(tile);
+    }
+
+    /**
+     * Adds an event to the next batch, unless every subscriber has left.
+     * @param event the event.
+     */
+    private synchronized void collect(WorldEvent event) {
+        if (!subscriptions.isEmpty()) {
+            pending.add(event);
+        }
+    }
+
+    /**
+     * Counts a completed action, publishing a batch if enough have
+     * completed. Runs on the thread that applies actions, so this is where
+     * the publisher detaches from the map once every subscriber has left.
+     */
+    private void completeAction() {
+        synchronized (this) {
+            if (detachIfUnused()
+                    || ++actionsSinceBatch < actionsPerBatch) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Stops observing the map if there are no subscribers. Must be called
+     * holding the lock, on the thread that applies actions.
+     * @return true if not observing the map.
+     */
+    private boolean detachIfUnused() {
+        if (attached && subscriptions.isEmpty()) {
+            map.removeObserver(collector);
+            attached = false;
+        }
+        return !attached;
+    }
+
+    /**
+     * Copies the subscription list so callbacks may unsubscribe.
+     * @return copy of the active subscriptions.
+     */
+    private synchronized List<SubscriptionImpl> snapshotSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    /**
+     * Removes a subscription. If it was the last, collected events are
+     * dropped; the publisher detaches from the map when the next action
+     * completes.
+     * @param subscription subscription to remove.
+     */
+    private synchronized void remove(SubscriptionImpl subscription) {
+        if (subscriptions.remove(subscription) && subscriptions.isEmpty()) {
+            pending.clear();
+            actionsSinceBatch = 0;
+        }
+    }
+
+    /**
+     * A subscriber's demand and buffered batches.
+     */
+    private class SubscriptionImpl implements Subscription {
+
+        private final Subscriber subscriber;
+
+        /** Batches waiting for demand. */
+        private final Queue<List<WorldEvent>> buffered = new ArrayDeque<>();
+
+        /** Batches requested but not yet delivered. */
+        private long demand;
+
+        /** True while delivering, so re-entrant requests don't recurse. */
+        private boolean delivering;
+
+        /** True once the publisher has closed. */
+        private boolean completing;
+
+        /** True once cancelled, failed or completed. */
+        private boolean done;
+
+        SubscriptionImpl(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException(
+                        "Non-positive request: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            deliver();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+                buffered.clear();
+            }
+            remove(this);
+        }
+
+        /**
+         * Buffers a batch, to be delivered by {@link #deliver()}.
+         * @param batch the batch.
+         * @return false if the buffer is full.
+         */
+        synchronized boolean enqueue(List<WorldEvent> batch) {
+            if (done) {
+                return true;
+            }
+            if (buffered.size() < maxBufferedBatches) {
+                buffered.add(batch);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Delivers buffered batches while there is demand, then completes
+         * the subscriber if the publisher was closed.
+         */
+        void deliver() {
+            while (true) {
+                List<WorldEvent> batch;
+                synchronized (this) {
+                    if (delivering || done) {
+                        return;
+                    }
+                    if (buffered.isEmpty()) {
+                        if (!completing) {
+                            return;
+                        }
+                        done = true;
+                        batch = null;
+                    } else if (demand == 0) {
+                        return;
+                    } else {
+                        batch = buffered.remove();
+                        demand--;
+                        delivering = true;
+                    }
+                }
+                if (batch == null) {
+                    subscriber.onComplete();
+                    return;
+                }
+                try {
+                    subscriber.onNext(batch);
+                } finally {
+                    synchronized (this) {
+                        delivering = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Ends the subscription with an error.
+         * @param throwable the cause.
+         */
+        void fail(Throwable throwable) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                buffered.clear();
+            }
+            remove(this);
+            subscriber.onError(throwable);
+        }
+
+        /**
+         * Ends the subscription normally once the subscriber has requested
+         * every buffered batch.
+         */
+        void complete() {
+            synchronized (this) {
+                completing = true;
+            }
+            remove(this);
+            deliver();
+        }
+    }
+}
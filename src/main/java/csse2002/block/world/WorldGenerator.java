@@ -0,0 +1,440 @@
+package csse2002.block.world;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates large, geometrically consistent world maps and action streams
+ * from a seed, for testing and benchmarking at scale.
+ *
+ * Tiles lie on a grid of the configured width and height. Each row holds
+ * one run of tiles, cut from the row's extent within the
+ * {@link Shape} to a fraction of its width set by the density. Every run
+ * contains the grid's middle column, and neighbouring tiles are always
+ * linked by exits both ways, so every tile can be reached from every other
+ * through exits.
+ *
+ * Everything about a tile is derived from the seed and the tile's id, so
+ * {@link #write(Writer)} streams maps of tens of millions of tiles in the
+ * format read by {@link WorldMap#WorldMap(String)} while keeping only a few
+ * numbers per row in memory. Tile ids are assigned row by row, so tile 0 is
+ * the left end of the top row, where the builder starts. Equal seeds and
+ * settings always give equal maps.
+ */
+public class WorldGenerator {
+
+    /**
+     * Outlines of the generated world.
+     */
+    public enum Shape {
+        /** Every row spans the full width. */
+        RECTANGLE,
+        /** Rows span an ellipse inscribed in the grid. */
+        DISC
+    }
+
+    /* Salts separating the random streams of rows, tiles and actions. */
+    private static final long ROW_SALT = 0x5EED0001L;
+    private static final long TILE_SALT = 0x5EED0002L;
+    private static final long ACTION_SALT = 0x5EED0003L;
+
+    /** Block types by ordinal, as named in the map format. */
+    private static final WorldMap.BlockTypes[] TYPES =
+            WorldMap.BlockTypes.values();
+
+    /** Generator seed. */
+    private final long seed;
+
+    /* Grid size, in tiles. */
+    private final int width;
+    private final int height;
+
+    /** Outline of the world. */
+    private Shape shape = Shape.RECTANGLE;
+
+    /** Fraction of each row's extent covered by tiles. */
+    private double density = 1.0;
+
+    /* Range of tile heights. */
+    private int minHeight = 1;
+    private int maxHeight = 5;
+
+    /** Relative frequency of each block type, by ordinal. */
+    private int[] weights = {1, 1, 2, 1};
+
+    /** Number of blocks in the builder's inventory. */
+    private int inventorySize = 5;
+
+    /* Extent of each row's run of tiles, inclusive, and the id of its first
+     * tile. Computed when the map is generated. */
+    private int[] lefts;
+    private int[] rights;
+    private int[] firstIds;
+    private long tileCount;
+
+    /* State of the random stream being drawn from. */
+    private long random;
+
+    /**
+     * Creates a generator of rectangular, fully covered worlds with the
+     * default height range and block weights.
+     * @param seed the seed.
+     * @param width grid width.
+     * @param height grid height.
+     * @require width &gt; 0, height &gt; 0
+     */
+    public WorldGenerator(long seed, int width, int height) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets the outline of the world.
+     * @param shape the outline.
+     * @require shape != null
+     */
+    public void setShape(Shape shape) {
+        this.shape = shape;
+        lefts = null;
+    }
+
+    /**
+     * Sets the fraction of each row's extent covered by tiles. Each row has
+     * at least one tile.
+     * @param density fraction from 0 to 1.
+     * @require 0 &lt;= density &lt;= 1
+     */
+    public void setDensity(double density) {
+        this.density = density;
+        lefts = null;
+    }
+
+    /**
+     * Sets the range of tile heights, in blocks.
+     * @param minHeight smallest height.
+     * @param maxHeight largest height.
+     * @require 0 &lt;= minHeight &lt;= maxHeight &lt;= 8
+     */
+    public void setHeightRange(int minHeight, int maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * Sets how often each block type is chosen. Grass and soil are ground
+     * blocks, so only wood and stone are chosen above the third block; if
+     * both of their weights are 0, wood is used.
+     * @param wood weight of wood blocks.
+     * @param grass weight of grass blocks.
+     * @param soil weight of soil blocks.
+     * @param stone weight of stone blocks.
+     * @require all weights &gt;= 0 and at least one is positive
+     */
+    public void setBlockWeights(int wood, int grass, int soil, int stone) {
+        weights = new int[TYPES.length];
+        weights[WorldMap.BlockTypes.wood.ordinal()] = wood;
+        weights[WorldMap.BlockTypes.grass.ordinal()] = grass;
+        weights[WorldMap.BlockTypes.soil.ordinal()] = soil;
+        weights[WorldMap.BlockTypes.stone.ordinal()] = stone;
+    }
+
+    /**
+     * Sets the number of wood and soil blocks in the builder's inventory.
+     * @param inventorySize number of blocks.
+     * @require inventorySize &gt;= 0
+     */
+    public void setInventorySize(int inventorySize) {
+        this.inventorySize = inventorySize;
+    }
+
+    /**
+     * Gets the number of tiles in the generated world.
+     * @return number of tiles.
+     */
+    public long getTileCount() {
+        layout();
+        return tileCount;
+    }
+
+    /**
+     * Writes the world to a writer in the map file format.
+     * @param out the writer. Buffering it is recommended.
+     * @throws IOException if writing fails.
+     * @throws IllegalStateException if the world has too many tiles for
+     *      tile ids to be ints.
+     * @require out != null
+     */
+    public void write(Writer out) throws IOException {
+        layout();
+        out.write(lefts[0] + "\n0\nGenerator\n");
+        List<Block> inventory = makeInventory();
+        List<String> names = new ArrayList<>(inventory.size());
+        for (Block block : inventory) {
+            names.add(block.getBlockType());
+        }
+        out.write(String.join(",", names));
+        out.write("\n\ntotal:" + tileCount + "\n");
+
+        StringBuilder line = new StringBuilder();
+        byte[] blocks = new byte[Tile.MAX_BLOCKS];
+        for (int y = 0; y < height; y++) {
+            for (int x = lefts[y]; x <= rights[y]; x++) {
+                int id = firstIds[y] + x - lefts[y];
+                int count = makeBlocks(id, blocks);
+                line.setLength(0);
+                line.append(id).append(' ');
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    line.append(TYPES[blocks[i]].name());
+                }
+                out.append(line).append('\n');
+            }
+        }
+
+        out.write("\nexits\n");
+        for (int y = 0; y < height; y++) {
+            for (int x = lefts[y]; x <= rights[y]; x++) {
+                line.setLength(0);
+                line.append(firstIds[y] + x - lefts[y]).append(' ');
+                boolean first = true;
+                for (Direction direction : Direction.ALL) {
+                    int next = tileId(x + direction.dx, y + direction.dy);
+                    if (next != -1) {
+                        line.append(first ? "" : ",").append(direction.name())
+                                .append(':').append(next);
+                        first = false;
+                    }
+                }
+                out.append(line).append('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the world to a file in the map file format.
+     * @param filename the file to write.
+     * @throws IOException if the file cannot be opened or written to.
+     * @require filename != null
+     */
+    public void write(String filename) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(filename),
+                1 << 16)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Builds the world in memory. Meant for worlds small enough to hold;
+     * use {@link #write(Writer)} for larger ones.
+     * @return the world, equal to the one written by {@link #write(Writer)}.
+     * @throws IllegalStateException if the world has too many tiles for
+     *      tile ids to be ints.
+     */
+    public WorldMap generate() {
+        layout();
+        Tile[] tiles = new Tile[(int) tileCount];
+        byte[] blocks = new byte[Tile.MAX_BLOCKS];
+        try {
+            for (int id = 0; id < tiles.length; id++) {
+                int count = makeBlocks(id, blocks);
+                List<Block> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(TYPES[blocks[i]].newInstance());
+                }
+                tiles[id] = new Tile(list);
+            }
+            for (int y = 0; y < height; y++) {
+                for (int x = lefts[y]; x <= rights[y]; x++) {
+                    Tile tile = tiles[tileId(x, y)];
+                    for (Direction direction : Direction.ALL) {
+                        int next = tileId(x + direction.dx, y + direction.dy);
+                        if (next != -1) {
+                            tile.addExit(direction.name(), tiles[next]);
+                        }
+                    }
+                }
+            }
+            return new WorldMap(tiles[0], new Position(lefts[0], 0),
+                    new Builder("Generator", tiles[0], makeInventory()));
+        } catch (TooHighException | NoExitException | InvalidBlockException
+                | WorldMapInconsistentException e) {
+            // Generated blocks respect tile limits and exits are consistent.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes random actions, one per line, in the format read by
+     * {@link Action#loadAction(java.io.BufferedReader)}. Actions are
+     * chosen without looking at the world, so many of them fail.
+     * @param out the writer. Buffering it is recommended.
+     * @param count number of actions.
+     * @throws IOException if writing fails.
+     * @require out != null, count &gt;= 0
+     */
+    public void writeActions(Writer out, long count) throws IOException {
+        random = ZobristKeys.mix(seed ^ ACTION_SALT);
+        for (long i = 0; i < count; i++) {
+            String direction = Direction.ALL[next(Direction.ALL.length)].name();
+            int kind = next(10);
+            if (kind < 4) {
+                out.write("MOVE_BUILDER " + direction + "\n");
+            } else if (kind < 6) {
+                out.write("DIG\n");
+            } else if (kind < 8) {
+                out.write("DROP " + next(inventorySize + 2) + "\n");
+            } else {
+                out.write("MOVE_BLOCK " + direction + "\n");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Works out the run of tiles in each row and the tile ids, if not
+     * already done for the current settings.
+     */
+    private void layout() {
+        if (lefts != null) {
+            return;
+        }
+        int[] newLefts = new int[height];
+        int[] newRights = new int[height];
+        int[] newFirstIds = new int[height];
+        int spine = width / 2;
+        long count = 0;
+        for (int y = 0; y < height; y++) {
+            // Extent of the row within the shape, always including the
+            // middle column.
+            int low = 0;
+            int high = width - 1;
+            if (shape == Shape.DISC) {
+                double dy = (y + 0.5 - height / 2.0) / (height / 2.0);
+                double half = width / 2.0 * Math.sqrt(Math.max(0, 1 - dy * dy));
+                low = Math.max(0, (int) Math.ceil(width / 2.0 - half - 0.5));
+                high = Math.min(width - 1,
+                        (int) Math.floor(width / 2.0 + half - 0.5));
+                low = Math.min(low, spine);
+                high = Math.max(high, spine);
+            }
+
+            // A random run of the row's share of the extent, over the spine.
+            int length = Math.max(1,
+                    (int) Math.round(density * (high - low + 1)));
+            int first = Math.max(low, spine - length + 1);
+            int last = Math.min(spine, high - length + 1);
+            random = ZobristKeys.mix(seed ^ (ROW_SALT + y));
+            newLefts[y] = first + next(last - first + 1);
+            newRights[y] = newLefts[y] + length - 1;
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many tiles.");
+            }
+            newFirstIds[y] = (int) count;
+            count += length;
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many tiles.");
+        }
+        lefts = newLefts;
+        rights = newRights;
+        firstIds = newFirstIds;
+        tileCount = count;
+    }
+
+    /**
+     * Gets the id of the tile at a grid position.
+     * @param x x coordinate.
+     * @param y y coordinate.
+     * @return the id, or -1 if there is no tile there.
+     */
+    private int tileId(int x, int y) {
+        if (y < 0 || y >= height || x < lefts[y] || x > rights[y]) {
+            return -1;
+        }
+        return firstIds[y] + x - lefts[y];
+    }
+
+    /**
+     * Chooses the blocks of a tile.
+     * @param id tile id.
+     * @param blocks receives the block type ordinals, bottom first.
+     * @return number of blocks.
+     */
+    private int makeBlocks(int id, byte[] blocks) {
+        random = ZobristKeys.mix(seed ^ (TILE_SALT + id));
+        int count = minHeight + next(maxHeight - minHeight + 1);
+        for (int level = 0; level < count; level++) {
+            blocks[level] = (byte) chooseType(level < Tile.MAX_GROUND_BLOCKS);
+        }
+        return count;
+    }
+
+    /**
+     * Chooses a block type by weight.
+     * @param ground true if ground blocks may be chosen.
+     * @return the type's ordinal.
+     */
+    private int chooseType(boolean ground) {
+        int total = 0;
+        for (int type = 0; type < weights.length; type++) {
+            if (ground || !isGround(type)) {
+                total += weights[type];
+            }
+        }
+        if (total == 0) {
+            return WorldMap.BlockTypes.wood.ordinal();
+        }
+        int choice = next(total);
+        for (int type = 0; type < weights.length; type++) {
+            if (ground || !isGround(type)) {
+                choice -= weights[type];
+                if (choice < 0) {
+                    return type;
+                }
+            }
+        }
+        throw new AssertionError("Weights changed while choosing.");
+    }
+
+    /**
+     * Checks whether a block type is a ground block.
+     * @param type the type's ordinal.
+     * @return true for grass and soil.
+     */
+    private static boolean isGround(int type) {
+        return type == WorldMap.BlockTypes.grass.ordinal()
+                || type == WorldMap.BlockTypes.soil.ordinal();
+    }
+
+    /**
+     * Makes the builder's inventory of wood and soil.
+     * @return the inventory.
+     */
+    private List<Block> makeInventory() {
+        random = ZobristKeys.mix(seed);
+        List<Block> inventory = new ArrayList<>(inventorySize);
+        for (int i = 0; i < inventorySize; i++) {
+            inventory.add(next(2) == 0 ? new WoodBlock() : new SoilBlock());
+        }
+        return inventory;
+    }
+
+    /**
+     * Draws the next number from the current random stream.
+     * @param bound exclusive upper bound.
+     * @return a number from 0 to bound - 1.
+     * @require bound &gt; 0
+     */
+    private int next(int bound) {
+        random = ZobristKeys.mix(random);
+        return (int) ((random >>> 1) % bound);
+    }
+}
@@ -1,6 +1,7 @@
 package csse2002.block.world;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -27,7 +28,7 @@ public class WorldMap {
      * their Java classes.
      */
     @SuppressWarnings("WeakerAccess")
-    private enum BlockTypes {
+    enum BlockTypes {
         wood(WoodBlock.class),
         grass(GrassBlock.class),
         soil(SoilBlock.class),
@@ -133,6 +134,73 @@ public class WorldMap {
         }
     }
 
+    /**
+     * Forwards each change to several observers, in registration order.
+     */
+    private static class MulticastObserver implements WorldObserver {
+
+        private final WorldObserver[] observers;
+
+        /**
+         * Creates an observer forwarding to the given observers.
+         * @param observers Observers to forward to.
+         */
+        MulticastObserver(WorldObserver[] observers) {
+            this.observers = observers;
+        }
+
+        @Override
+        public void blockPlaced(Tile tile, Block block) {
+            for (WorldObserver observer : observers) {
+                observer.blockPlaced(tile, block);
+            }
+        }
+
+        @Override
+        public void blockRemoved(Tile tile, Block block) {
+            for (WorldObserver observer : observers) {
+                observer.blockRemoved(tile, block);
+            }
+        }
+
+        @Override
+        public void exitChanged(Tile tile, String name, Tile previous,
+                                Tile target) {
+            for (WorldObserver observer : observers) {
+                observer.exitChanged(tile, name, previous, target);
+            }
+        }
+
+        @Override
+        public void builderMoved(Builder builder, Tile from, Tile to) {
+            for (WorldObserver observer : observers) {
+                observer.builderMoved(builder, from, to);
+            }
+        }
+
+        @Override
+        public void inventoryAdded(Builder builder, int index, Block block) {
+            for (WorldObserver observer : observers) {
+                observer.inventoryAdded(builder, index, block);
+            }
+        }
+
+        @Override
+        public void inventoryRemoved(Builder builder, int index,
+                                     Block block) {
+            for (WorldObserver observer : observers) {
+                observer.inventoryRemoved(builder, index, block);
+            }
+        }
+
+        @Override
+        public void actionCompleted(Action action) {
+            for (WorldObserver observer : observers) {
+                observer.actionCompleted(action);
+            }
+        }
+    }
+
     /** The world's builder. */
     private Builder builder;
 
@@ -142,6 +210,15 @@ public class WorldMap {
     /** Sparse tile array storing map data. */
     private final SparseTileArray sparseArray = new SparseTileArray();
 
+    /** Observers of this map's tiles and builder, in registration order. */
+    private final List<WorldObserver> observers = new ArrayList<>();
+
+    /** Copy of the observers told of completed actions. */
+    private WorldObserver[] completionObservers = new WorldObserver[0];
+
+    /** Hash of the map's state, or null until first asked for. */
+    private StateHash stateHash;
+
     /** Valid compass direction names, sorted. */
     private static final List<String> directionNames = new ArrayList<>(4);
     static {
@@ -227,6 +304,11 @@ public class WorldMap {
     public WorldMap(String filename) throws WorldMapFormatException,
                                             WorldMapInconsistentException,
                                             FileNotFoundException {
+        FlightEvents.MapLoad event = FlightEvents.isRecording()
+                ? new FlightEvents.MapLoad() : null;
+        if (event != null) {
+            event.begin();
+        }
         try (FileReader file = new FileReader(filename)) {
             BufferedReader reader = new BufferedReader(file);
             // Offload to helper function so we don't have a massive
@@ -240,6 +322,13 @@ public class WorldMap {
             // loadWorldMap catches IOException itself, but opening and reading
             // can throw this too...
             throw new WorldMapFormatException("IOException occurred: "+e);
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.path = filename;
+                event.tiles = sparseArray.getTileCount();
+                event.bytes = new File(filename).length();
+                event.commit();
+            }
         }
     }
 
@@ -614,8 +703,11 @@ public class WorldMap {
                 // and later exits override earlier ones.
 
                 try {
+                    // The shared direction name, rather than a copy per exit
+                    // cut from the line.
                     tiles.get(currentTile).addExit(
-                            exit.getKey(), tiles.get(tileID));
+                            Direction.valueOf(exit.getKey()).name(),
+                            tiles.get(tileID));
                 } catch (NoExitException e) {
                     throw new AssertionError("Null direction or tile.", e);
                 }
@@ -658,6 +750,86 @@ public class WorldMap {
         return Collections.unmodifiableList(sparseArray.getTiles());
     }
 
+    /**
+     * Gets the array holding this map's tiles, for id and position lookups.
+     * @return the sparse tile array.
+     */
+    SparseTileArray getTileArray() {
+        return sparseArray;
+    }
+
+    /**
+     * Gets a 64-bit hash of the map's state: the blocks on every tile, every
+     * exit, the builder's tile and the inventory. Equal states of maps with
+     * the same tiles have equal hashes.
+     *
+     * The hash is computed on the first call and then kept up to date as the
+     * map changes, so later calls are constant time.
+     *
+     * @return the state hash.
+     */
+    long stateHash() {
+        if (stateHash == null) {
+            stateHash = new StateHash(this);
+            addObserver(stateHash);
+        }
+        return stateHash.get();
+    }
+
+    /**
+     * Registers an observer of all changes to this map's tiles and builder.
+     * Observers are added and removed on the thread that changes the map,
+     * or while nothing is changing it, and may remove themselves when told
+     * that an action completed.
+     * @param observer the observer to add.
+     * @require observer != null
+     */
+    void addObserver(WorldObserver observer) {
+        observers.add(observer);
+        attachObservers();
+    }
+
+    /**
+     * Unregisters an observer added by {@link #addObserver(WorldObserver)}.
+     * @param observer the observer to remove.
+     */
+    void removeObserver(WorldObserver observer) {
+        observers.remove(observer);
+        attachObservers();
+    }
+
+    /**
+     * Tells the observers that an action finished.
+     * @param action the finished action.
+     */
+    void actionCompleted(Action action) {
+        // A copy, so that observers may remove themselves.
+        for (WorldObserver observer : completionObservers) {
+            observer.actionCompleted(action);
+        }
+    }
+
+    /**
+     * Points every tile and the builder at the current observers. With no
+     * observers they are given null so that mutations stay cheap.
+     */
+    private void attachObservers() {
+        WorldObserver target;
+        if (observers.isEmpty()) {
+            target = null;
+        } else if (observers.size() == 1) {
+            target = observers.get(0);
+        } else {
+            target = new MulticastObserver(
+                    observers.toArray(new WorldObserver[0]));
+        }
+        for (Tile tile : sparseArray.getTiles()) {
+            tile.observer = target;
+        }
+        builder.observer = target;
+        completionObservers = observers.toArray(new WorldObserver[0]);
+    }
+
     /**
      * Saves the given WorldMap to a file specified by the filename. 
      * See the WorldMap(filename) constructor for the format of the map. 
@@ -670,6 +842,13 @@ public class WorldMap {
      * @require filename != null
      */
     public void saveMap(String filename) throws IOException {
+        MetricsRegistry metrics = MetricsRegistry.getInstalled();
+        long start = metrics == null ? 0 : System.nanoTime();
+        FlightEvents.MapSave event = FlightEvents.isRecording()
+                ? new FlightEvents.MapSave() : null;
+        if (event != null) {
+            event.begin();
+        }
         try (PrintWriter file = new PrintWriter(filename)) {
             file.println(Integer.toString(startPosition.getX()));
             file.println(Integer.toString(startPosition.getY()));
@@ -698,13 +877,23 @@ public class WorldMap {
                 // We will build the exits string here to append after the tile
                 // section.
                 exits.print(Integer.toString(tileID) + " ");
-                exits.println(makeExitsString(tile.getExits(), tiles));
+                exits.println(makeExitsString(tile.getExits(), sparseArray));
 
                 tileID++;
             }
             // Blank line then exits section.
             file.println();
             file.print(exitsWriter.toString());
+        } finally {
+            if (metrics != null) {
+                metrics.recordSave(System.nanoTime() - start);
+            }
+            if (event != null && event.shouldCommit()) {
+                event.path = filename;
+                event.tiles = sparseArray.getTileCount();
+                event.bytes = new File(filename).length();
+                event.commit();
+            }
         }
     }
 
@@ -712,18 +901,18 @@ public class WorldMap {
      * Makes a string of the north, east, south and west exits of the given
      * tile.
      * @param exits Available exits.
-     * @param tiles List of tiles, used to get tile IDs.
+     * @param tiles Array of tiles, used to get tile IDs in constant time.
      * @return Comma-separated string describing exits.
      */
     private static String makeExitsString(Map<String, Tile> exits,
-                                          List<Tile> tiles) {
+                                          SparseTileArray tiles) {
         List<String> exitStrings = new ArrayList<>();
         for (String direction : directionNames) {
             Tile tile = exits.get(direction);
             if (tile == null) {
                 continue; // Null indicates exit doesn't exist.
             }
-            int tileID = tiles.indexOf(tile);
+            int tileID = tiles.getTileId(tile);
             if (tileID == -1) {
                 throw new AssertionError("Exit tile not in tiles.");
             }
@@ -0,0 +1,382 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * The differences between two {@link WorldMap}s, such as two saves of one
+ * world.
+ *
+ * Tiles are matched by their position in each map's
+ * {@link SparseTileArray}, not by their order in the map file, so saving a
+ * map with a different starting tile does not make every tile differ. A
+ * matched pair of tiles differs if their blocks have different types, or if
+ * an exit of one leads to a different position than the same exit of the
+ * other, or is missing from the other.
+ *
+ * Differences are passed to a consumer as they are found rather than
+ * collected, so {@link #forEach(Consumer)} compares maps of any size in
+ * linear time and constant extra memory. {@link #forEachParallel(Consumer,
+ * int)} compares chunks of positions on several threads and reports the
+ * differences in position order.
+ */
+public class WorldMapDiff {
+
+    /**
+     * A difference between the two maps.
+     */
+    public static final class Difference {
+
+        /**
+         * Kinds of difference.
+         */
+        public enum Kind {
+            /** A position has a tile only in the second map. */
+            TILE_ADDED,
+            /** A position has a tile only in the first map. */
+            TILE_REMOVED,
+            /** The tiles at a position have different blocks. */
+            BLOCKS_CHANGED,
+            /** The tiles at a position have different exits. */
+            EXITS_CHANGED,
+            /** The builders have different names, positions or inventories. */
+            BUILDER_CHANGED
+        }
+
+        /** Kind of difference. */
+        private final Kind kind;
+
+        /** Position of the difference. */
+        private final Position position;
+
+        /* The differing tiles of the first and second map, or null. */
+        private final Tile before;
+        private final Tile after;
+
+        /**
+         * Creates a difference.
+         * @param kind kind of difference.
+         * @param position position of the difference.
+         * @param before tile of the first map, or null.
+         * @param after tile of the second map, or null.
+         */
+        private Difference(Kind kind, Position position, Tile before,
+                           Tile after) {
+            this.kind = kind;
+            this.position = position;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Gets the kind of difference.
+         * @return the kind.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Gets the position of the differing tiles. For a builder difference
+         * this is the second builder's position.
+         * @return the position, or null if the second builder's tile is not
+         *      on its map.
+         */
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * Gets the differing tile of the first map. For a builder difference
+         * this is the first builder's tile.
+         * @return the tile, or null if the position has no tile.
+         */
+        public Tile getBefore() {
+            return before;
+        }
+
+        /**
+         * Gets the differing tile of the second map. For a builder
+         * difference this is the second builder's tile.
+         * @return the tile, or null if the position has no tile.
+         */
+        public Tile getAfter() {
+            return after;
+        }
+
+        /**
+         * Describes the difference as its kind and position, e.g.
+         * "BLOCKS_CHANGED (0, -1)".
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            return kind + " " + position;
+        }
+    }
+
+    /* The compared maps' tiles. */
+    private final SparseTileArray beforeTiles;
+    private final SparseTileArray afterTiles;
+
+    /* The compared maps' builders. */
+    private final Builder beforeBuilder;
+    private final Builder afterBuilder;
+
+    /**
+     * Creates a comparison of two maps.
+     * @param before the first map.
+     * @param after the second map.
+     * @require before != null, after != null
+     */
+    public WorldMapDiff(WorldMap before, WorldMap after) {
+        this.beforeTiles = before.getTileArray();
+        this.afterTiles = after.getTileArray();
+        this.beforeBuilder = before.getBuilder();
+        this.afterBuilder = after.getBuilder();
+    }
+
+    /**
+     * Finds the differences between the maps on the calling thread.
+     *
+     * Differences of tiles in the first map are reported in that map's tile
+     * order, followed by tiles only in the second map in its tile order and
+     * then any builder difference.
+     *
+     * @param consumer receives each difference.
+     * @require consumer != null
+     */
+    public void forEach(Consumer<Difference> consumer) {
+        for (int id = 0; id < beforeTiles.getTileCount(); id++) {
+            Position position = new Position(beforeTiles.getTileX(id),
+                    beforeTiles.getTileY(id));
+            compare(position, beforeTiles.getTile(id),
+                    afterTiles.getTile(position), consumer);
+        }
+        for (int id = 0; id < afterTiles.getTileCount(); id++) {
+            Position position = new Position(afterTiles.getTileX(id),
+                    afterTiles.getTileY(id));
+            if (beforeTiles.getTile(position) == null) {
+                consumer.accept(new Difference(Difference.Kind.TILE_ADDED,
+                        position, null, afterTiles.getTile(id)));
+            }
+        }
+        compareBuilders(consumer);
+    }
+
+    /**
+     * Finds the differences between the maps using the common fork join
+     * pool.
+     *
+     * The positions of both maps are sorted as by
+     * {@link Position#compareTo(Position)} and split into chunks. Chunks are
+     * compared in parallel a few at a time, and their differences are passed
+     * to the consumer on the calling thread in position order, followed by
+     * any builder difference. At most one chunk's differences per thread are
+     * held at once.
+     *
+     * @param consumer receives each difference.
+     * @param chunkSize number of positions compared by each task.
+     * @require consumer != null, chunkSize &gt; 0
+     */
+    public void forEachParallel(Consumer<Difference> consumer,
+                                int chunkSize) {
+        long[] keys = sortedPositions();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int wave = Math.max(1, pool.getParallelism()) * chunkSize;
+        List<ForkJoinTask<List<Difference>>> tasks = new ArrayList<>();
+        for (int waveStart = 0; waveStart < keys.length; waveStart += wave) {
+            int waveEnd = (int) Math.min(keys.length, (long) waveStart + wave);
+            tasks.clear();
+            for (int start = waveStart; start < waveEnd; start += chunkSize) {
+                int from = start;
+                int to = Math.min(waveEnd, start + chunkSize);
+                tasks.add(pool.submit(() -> compareChunk(keys, from, to)));
+            }
+            for (ForkJoinTask<List<Difference>> task : tasks) {
+                task.join().forEach(consumer);
+            }
+        }
+        compareBuilders(consumer);
+    }
+
+    /**
+     * Finds the differences between the maps, as by
+     * {@link #forEach(Consumer)}.
+     * @return the differences.
+     */
+    public List<Difference> getDifferences() {
+        List<Difference> differences = new ArrayList<>();
+        forEach(differences::add);
+        return differences;
+    }
+
+    /**
+     * Gets the positions of both maps' tiles without duplicates, packed as
+     * by {@link #key(int, int)} and sorted.
+     * @return the sorted keys.
+     */
+    private long[] sortedPositions() {
+        int beforeCount = beforeTiles.getTileCount();
+        int afterCount = afterTiles.getTileCount();
+        long[] keys = new long[beforeCount + afterCount];
+        for (int id = 0; id < beforeCount; id++) {
+            keys[id] = key(beforeTiles.getTileX(id), beforeTiles.getTileY(id));
+        }
+        for (int id = 0; id < afterCount; id++) {
+            keys[beforeCount + id] =
+                    key(afterTiles.getTileX(id), afterTiles.getTileY(id));
+        }
+        Arrays.sort(keys);
+        int unique = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    /**
+     * Packs a position into a long whose signed order is the order of
+     * {@link Position#compareTo(Position)}.
+     * @param x x coordinate.
+     * @param y y coordinate.
+     * @return the key.
+     */
+    private static long key(int x, int y) {
+        // Flipping the sign bit of y makes its unsigned order its signed one.
+        return ((long) x << 32) | ((y ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Compares the tiles at a range of sorted positions.
+     * @param keys sorted position keys.
+     * @param from index of the first position.
+     * @param to index after the last position.
+     * @return the differences, in position order.
+     */
+    private List<Difference> compareChunk(long[] keys, int from, int to) {
+        List<Difference> differences = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Position position = new Position((int) (keys[i] >> 32),
+                    (int) keys[i] ^ Integer.MIN_VALUE);
+            compare(position, beforeTiles.getTile(position),
+                    afterTiles.getTile(position), differences::add);
+        }
+        return differences;
+    }
+
+    /**
+     * Compares the tiles at one position.
+     * @param position the position.
+     * @param before the first map's tile, or null.
+     * @param after the second map's tile, or null.
+     * @param consumer receives each difference.
+     */
+    private void compare(Position position, Tile before, Tile after,
+                         Consumer<Difference> consumer) {
+        if (after == null) {
+            consumer.accept(new Difference(Difference.Kind.TILE_REMOVED,
+                    position, before, null));
+            return;
+        }
+        if (before == null) {
+            consumer.accept(new Difference(Difference.Kind.TILE_ADDED,
+                    position, null, after));
+            return;
+        }
+        if (!sameTypes(before.getBlocks(), after.getBlocks())) {
+            consumer.accept(new Difference(Difference.Kind.BLOCKS_CHANGED,
+                    position, before, after));
+        }
+        if (!sameExits(before, after)) {
+            consumer.accept(new Difference(Difference.Kind.EXITS_CHANGED,
+                    position, before, after));
+        }
+    }
+
+    /**
+     * Compares the builders' names, positions and inventories.
+     * @param consumer receives a difference if the builders differ.
+     */
+    private void compareBuilders(Consumer<Difference> consumer) {
+        Tile before = beforeBuilder.getCurrentTile();
+        Tile after = afterBuilder.getCurrentTile();
+        int beforeId = beforeTiles.getTileId(before);
+        int afterId = afterTiles.getTileId(after);
+        if (!beforeBuilder.getName().equals(afterBuilder.getName())
+                || !samePosition(beforeId, afterId)
+                || !sameTypes(beforeBuilder.getInventory(),
+                        afterBuilder.getInventory())) {
+            Position position = afterId == -1 ? null : new Position(
+                    afterTiles.getTileX(afterId), afterTiles.getTileY(afterId));
+            consumer.accept(new Difference(Difference.Kind.BUILDER_CHANGED,
+                    position, before, after));
+        }
+    }
+
+    /**
+     * Checks whether two lists of blocks have the same types in order.
+     * @param before the first list.
+     * @param after the second list.
+     * @return true if the types match.
+     */
+    private static boolean sameTypes(List<Block> before, List<Block> after) {
+        if (before.size() != after.size()) {
+            return false;
+        }
+        for (int i = 0; i < before.size(); i++) {
+            if (before.get(i).getClass() != after.get(i).getClass()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether two tiles have exits with the same names leading to
+     * the same positions in their maps.
+     * @param before tile of the first map.
+     * @param after tile of the second map.
+     * @return true if the exits match.
+     */
+    private boolean sameExits(Tile before, Tile after) {
+        Map<String, Tile> beforeExits = before.getExits();
+        Map<String, Tile> afterExits = after.getExits();
+        if (beforeExits.size() != afterExits.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Tile> exit : beforeExits.entrySet()) {
+            Tile target = afterExits.get(exit.getKey());
+            if (target == null || !samePosition(
+                    beforeTiles.getTileId(exit.getValue()),
+                    afterTiles.getTileId(target))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a tile of the first map and a tile of the second are
+     * at the same position. Tiles not on their maps have no position, and
+     * only match each other.
+     * @param beforeId tile id in the first map, or -1.
+     * @param afterId tile id in the second map, or -1.
+     * @return true if the positions match.
+     */
+    private boolean samePosition(int beforeId, int afterId) {
+        if (beforeId == -1 || afterId == -1) {
+            return beforeId == afterId;
+        }
+        return beforeTiles.getTileX(beforeId) == afterTiles.getTileX(afterId)
+                && beforeTiles.getTileY(beforeId)
+                == afterTiles.getTileY(afterId);
+    }
+}
@@ -0,0 +1,303 @@
+package csse2002.block.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines separately authored {@link WorldMap}s into one world.
+ *
+ * Each map is added with an offset that is added to the positions of its
+ * tiles. Stitching copies every tile into a new map, leaving the added maps
+ * unchanged, and:
+ * <ul>
+ *     <li>merges tiles of different maps that land on the same position,
+ *     which must have the same block types and must not have exits with
+ *     the same name leading to different positions;</li>
+ *     <li>adds the missing north, east, south or west exits in both
+ *     directions between neighbouring tiles of different maps;</li>
+ *     <li>checks that the maps are joined into one world, by overlapping
+ *     or by neighbouring tiles.</li>
+ * </ul>
+ *
+ * Since each added map is already geometrically consistent, the merged
+ * tile array is built directly from the maps' positions in one pass over
+ * their tiles, rather than by following every exit again.
+ *
+ * The stitched map's builder is a copy of the first map's builder, and its
+ * starting tile is the first map's starting tile. Its tiles are the first
+ * map's tiles in order, followed by the new tiles of each later map.
+ */
+public class WorldMapStitcher {
+
+    /** Maps to stitch, in order added. */
+    private final List<WorldMap> maps = new ArrayList<>();
+
+    /* Offsets of each map. */
+    private final List<Position> offsets = new ArrayList<>();
+
+    /**
+     * Creates a stitcher with no maps.
+     */
+    public WorldMapStitcher() {}
+
+    /**
+     * Adds a map to be stitched.
+     * @param map the map.
+     * @param offsetX added to the x coordinate of each of the map's tiles.
+     * @param offsetY added to the y coordinate of each of the map's tiles.
+     * @require map != null
+     */
+    public void add(WorldMap map, int offsetX, int offsetY) {
+        maps.add(map);
+        offsets.add(new Position(offsetX, offsetY));
+    }
+
+    /**
+     * Stitches the added maps into a new map.
+     * @return the stitched map.
+     * @throws WorldMapInconsistentException if tiles at the same position
+     *      have different blocks or conflicting exits, or the maps are not
+     *      all joined.
+     * @require at least one map has been added
+     */
+    public WorldMap stitch() throws WorldMapInconsistentException {
+        int total = 0;
+        for (WorldMap map : maps) {
+            total += map.getTileArray().getTileCount();
+        }
+        WorldMap first = maps.get(0);
+        Position startOffset = offsets.get(0);
+        Position start = new Position(
+                first.getStartPosition().getX() + startOffset.getX(),
+                first.getStartPosition().getY() + startOffset.getY());
+        // The map starts as a copy of the first map's starting tile, and
+        // the other tiles are added to its tile array directly.
+        Builder builder = first.getBuilder();
+        Tile startTile = copyTile(first.getTileArray().getTile(0));
+        WorldMap merged;
+        try {
+            merged = new WorldMap(startTile, start, new Builder(
+                    builder.getName(), startTile,
+                    copyBlocks(builder.getInventory())));
+        } catch (InvalidBlockException e) {
+            // Copies of a valid inventory are carryable.
+            throw new AssertionError(e);
+        }
+        SparseTileArray tiles = merged.getTileArray();
+
+        // The first map to place each merged tile, and the groups of maps
+        // joined so far.
+        int[] owners = new int[total];
+        int[] groups = new int[maps.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = i;
+        }
+
+        Tile[][] copies = new Tile[maps.size()][];
+        for (int index = 0; index < maps.size(); index++) {
+            copies[index] = placeTiles(index, tiles, owners, groups);
+        }
+        for (int index = 0; index < maps.size(); index++) {
+            copyExits(index, copies[index]);
+        }
+        linkNeighbours(tiles, owners, groups);
+
+        for (int index = 1; index < maps.size(); index++) {
+            if (find(groups, index) != find(groups, 0)) {
+                throw new WorldMapInconsistentException(
+                        "Map " + index + " is not joined to the others.");
+            }
+        }
+
+        int builderId = first.getTileArray().getTileId(
+                builder.getCurrentTile());
+        if (builderId != -1) {
+            merged.getBuilder().restoreTile(copies[0][builderId]);
+        }
+        return merged;
+    }
+
+    /**
+     * Copies the tiles of one map into the merged tile array, or checks
+     * them against tiles already at their positions.
+     * @param index index of the map.
+     * @param tiles the merged tile array.
+     * @param owners first map to place each merged tile.
+     * @param groups disjoint sets of joined maps.
+     * @return the merged tile for each of the map's tiles, by tile id.
+     * @throws WorldMapInconsistentException if a tile already at a position
+     *      has different blocks.
+     */
+    private Tile[] placeTiles(int index, SparseTileArray tiles, int[] owners,
+                              int[] groups)
+            throws WorldMapInconsistentException {
+        SparseTileArray source = maps.get(index).getTileArray();
+        Position offset = offsets.get(index);
+        Tile[] copies = new Tile[source.getTileCount()];
+        for (int id = 0; id < copies.length; id++) {
+            Position position = new Position(
+                    source.getTileX(id) + offset.getX(),
+                    source.getTileY(id) + offset.getY());
+            Tile tile = source.getTile(id);
+            Tile existing = tiles.getTile(position);
+            if (existing == null) {
+                existing = copyTile(tile);
+                owners[tiles.getTileCount()] = index;
+                tiles.appendTile(existing, position);
+            } else {
+                if (!sameTypes(existing.getBlocks(), tile.getBlocks())) {
+                    throw new WorldMapInconsistentException(
+                            "Overlapping tiles at " + position
+                            + " have different blocks.");
+                }
+                union(groups, owners[tiles.getTileId(existing)], index);
+            }
+            copies[id] = existing;
+        }
+        return copies;
+    }
+
+    /**
+     * Adds the exits of one map's tiles to their merged tiles.
+     * @param index index of the map.
+     * @param copies the merged tile for each of the map's tiles.
+     * @throws WorldMapInconsistentException if a merged tile already has an
+     *      exit with the same name leading elsewhere.
+     */
+    private void copyExits(int index, Tile[] copies)
+            throws WorldMapInconsistentException {
+        SparseTileArray source = maps.get(index).getTileArray();
+        for (int id = 0; id < copies.length; id++) {
+            Tile copy = copies[id];
+            for (Map.Entry<String, Tile> exit
+                    : source.getTile(id).getExits().entrySet()) {
+                int target = source.getTileId(exit.getValue());
+                if (target == -1) {
+                    continue;
+                }
+                Tile existing = copy.getExit(exit.getKey());
+                if (existing == null) {
+                    addExit(copy, exit.getKey(), copies[target]);
+                } else if (existing != copies[target]) {
+                    throw new WorldMapInconsistentException(
+                            "Overlapping tiles have conflicting "
+                            + exit.getKey() + " exits.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the missing exits between neighbouring tiles first placed by
+     * different maps.
+     * @param tiles the merged tile array.
+     * @param owners first map to place each merged tile.
+     * @param groups disjoint sets of joined maps.
+     */
+    private static void linkNeighbours(SparseTileArray tiles, int[] owners,
+                                       int[] groups) {
+        for (int id = 0; id < tiles.getTileCount(); id++) {
+            Tile tile = tiles.getTile(id);
+            for (Direction direction : Direction.ALL) {
+                Tile next = tiles.getTile(new Position(
+                        tiles.getTileX(id) + direction.dx,
+                        tiles.getTileY(id) + direction.dy));
+                if (next == null) {
+                    continue;
+                }
+                int owner = owners[tiles.getTileId(next)];
+                if (owner != owners[id]) {
+                    union(groups, owners[id], owner);
+                    if (tile.getExit(direction.name()) == null) {
+                        addExit(tile, direction.name(), next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an exit to a new tile.
+     * @param tile the tile.
+     * @param name exit name.
+     * @param target tile the exit leads to.
+     */
+    private static void addExit(Tile tile, String name, Tile target) {
+        try {
+            tile.addExit(name, target);
+        } catch (NoExitException e) {
+            // Only thrown for null names or targets.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Makes a tile with copies of another tile's blocks and no exits.
+     * @param tile the tile.
+     * @return the copy.
+     */
+    private static Tile copyTile(Tile tile) {
+        try {
+            return new Tile(copyBlocks(tile.getBlocks()));
+        } catch (TooHighException e) {
+            // Copies of a valid tile's blocks are valid.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Makes new blocks of the same types as the given blocks.
+     * @param blocks the blocks.
+     * @return the copies, in order.
+     */
+    private static List<Block> copyBlocks(List<Block> blocks) {
+        List<Block> copies = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            copies.add(WorldMap.BlockTypes.fromInstance(block).newInstance());
+        }
+        return copies;
+    }
+
+    /**
+     * Checks whether two lists of blocks have the same types in order.
+     * @param a a list of blocks.
+     * @param b a list of blocks.
+     * @return true if the types match.
+     */
+    private static boolean sameTypes(List<Block> a, List<Block> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getClass() != b.get(i).getClass()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the representative of a map's group.
+     * @param groups parent of each map.
+     * @param index map index.
+     * @return the representative's index.
+     */
+    private static int find(int[] groups, int index) {
+        while (groups[index] != index) {
+            groups[index] = groups[groups[index]];
+            index = groups[index];
+        }
+        return index;
+    }
+
+    /**
+     * Joins the groups of two maps.
+     * @param groups parent of each map.
+     * @param a a map index.
+     * @param b a map index.
+     */
+    private static void union(int[] groups, int a, int b) {
+        groups[find(groups, a)] = find(groups, b);
+    }
+}
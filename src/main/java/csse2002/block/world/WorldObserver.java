@@ -0,0 +1,70 @@
+package csse2002.block.world;
+
+/**
+ * Receives every mutation of the tiles and builder of a {@link WorldMap}.
+ *
+ * Callbacks are made synchronously, after the change has been made, on the
+ * thread making the change. While no observer is registered with a map its
+ * tiles and builder hold no observer at all, so mutations cost only a null
+ * check.
+ *
+ * All methods default to doing nothing.
+ */
+interface WorldObserver {
+
+    /**
+     * A block was added to the top of a tile.
+     * @param tile the tile.
+     * @param block the block added.
+     */
+    default void blockPlaced(Tile tile, Block block) {}
+
+    /**
+     * The top block of a tile was removed.
+     * @param tile the tile.
+     * @param block the block removed.
+     */
+    default void blockRemoved(Tile tile, Block block) {}
+
+    /**
+     * An exit of a tile was added, replaced or removed.
+     * @param tile the tile owning the exit.
+     * @param name name of the exit.
+     * @param previous previous target of the exit, or null if there was none.
+     * @param target new target of the exit, or null if it was removed.
+     */
+    default void exitChanged(Tile tile, String name, Tile previous,
+                             Tile target) {}
+
+    /**
+     * The builder moved to another tile.
+     * @param builder the builder.
+     * @param from the tile moved from.
+     * @param to the tile moved to.
+     */
+    default void builderMoved(Builder builder, Tile from, Tile to) {}
+
+    /**
+     * A block was inserted into the builder's inventory.
+     * @param builder the builder.
+     * @param index inventory index of the inserted block.
+     * @param block the block inserted.
+     */
+    default void inventoryAdded(Builder builder, int index, Block block) {}
+
+    /**
+     * A block was removed from the builder's inventory.
+     * @param builder the builder.
+     * @param index inventory index the block was removed from.
+     * @param block the block removed.
+     */
+    default void inventoryRemoved(Builder builder, int index, Block block) {}
+
+    /**
+     * An action finished, whether or not it succeeded. All of its changes
+     * have already been reported. Undoing or redoing a recorded action
+     * also completes, with no action.
+     * @param action the action, or null for an undo or redo step.
+     */
+    default void actionCompleted(Action action) {}
+}
@@ -0,0 +1,84 @@
+package csse2002.block.world;
+
+/**
+ * Random 64-bit keys for the parts of a world state, for Zobrist hashing.
+ *
+ * A state's hash is the XOR of the keys of its parts, so changing one part
+ * updates the hash in constant time by XORing the old key out and the new
+ * key in. Keys are derived from their arguments with the splitmix64 mixing
+ * function rather than stored in tables, so any number of tiles can be
+ * hashed and equal states hash equally in every run.
+ */
+final class ZobristKeys {
+
+    /* Kinds of state part, so keys of different kinds never coincide. */
+    private static final long BLOCK = 1;
+    private static final long BUILDER = 2;
+    private static final long INVENTORY = 3;
+    private static final long EXIT = 4;
+
+    /** Golden ratio increment used by splitmix64. */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private ZobristKeys() {}
+
+    /**
+     * Gets the key of a block of some type at a height on a tile.
+     * @param tile tile id.
+     * @param level index of the block on the tile, 0 at the bottom.
+     * @param type block type code, as a {@link WorldMap.BlockTypes} ordinal.
+     * @return the key.
+     */
+    static long block(int tile, int level, int type) {
+        return key(BLOCK, tile, ((long) level << 8) | type);
+    }
+
+    /**
+     * Gets the key of the builder standing on a tile.
+     * @param tile tile id.
+     * @return the key.
+     */
+    static long builder(int tile) {
+        return key(BUILDER, tile, 0);
+    }
+
+    /**
+     * Gets the key of a block of some type at an index of the inventory.
+     * @param index inventory index.
+     * @param type block type code.
+     * @return the key.
+     */
+    static long inventory(int index, int type) {
+        return key(INVENTORY, index, type);
+    }
+
+    /**
+     * Gets the key of an exit from one tile to another.
+     * @param tile id of the tile the exit is from.
+     * @param name name of the exit.
+     * @param target id of the tile the exit leads to.
+     * @return the key.
+     */
+    static long exit(int tile, String name, int target) {
+        return key(EXIT, tile, ((long) name.hashCode() << 32) | target);
+    }
+
+    /**
+     * Combines a kind and two values into a key.
+     */
+    private static long key(long kind, long a, long b) {
+        return mix(mix(kind * GAMMA + a) + b);
+    }
+
+    /**
+     * The splitmix64 finaliser.
+     * @param z value to mix.
+     * @return mixed value.
+     */
+    static long mix(long z) {
+        z += GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,109 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionBatchTest {
+
+    private WorldMap map;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+    }
+
+    private static final List<Action> VALID_ACTIONS = Arrays.asList(
+            new Action(Action.MOVE_BUILDER, "north"),
+            new Action(Action.DIG, ""),
+            new Action(Action.DROP, "5"),
+            new Action(Action.MOVE_BUILDER, "south"),
+            new Action(Action.DROP, "0"),
+            new Action(Action.DROP, "0"),
+            new Action(Action.DROP, "0"),
+            new Action(Action.MOVE_BLOCK, "east"),
+            new Action(Action.MOVE_BLOCK, "north"),
+            new Action(Action.MOVE_BUILDER, "north"));
+
+    private ActionBatch batchOf(List<Action> actions) {
+        ActionBatch batch = new ActionBatch(map);
+        for (Action action : actions) {
+            batch.add(action);
+        }
+        return batch;
+    }
+
+    @Test
+    public void testCommitMatchesSequentialActions() throws Exception {
+        WorldMap expected = new WorldMap("worldmap_test_basic.txt");
+        List<String> expectedMessages = new ArrayList<>();
+        for (Action action : VALID_ACTIONS) {
+            expectedMessages.add(Action.applyAction(action, expected));
+        }
+
+        ActionBatch batch = batchOf(VALID_ACTIONS);
+        batch.validate();
+        assertEquals(expectedMessages, batch.commit());
+        assertEquals(TestWorlds.describe(expected), TestWorlds.describe(map));
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void testFailingActionLeavesMapUnchanged() {
+        String initial = TestWorlds.describe(map);
+        List<Action> actions = new ArrayList<>(VALID_ACTIONS);
+        // Tile 1 has no west exit.
+        actions.add(new Action(Action.MOVE_BUILDER, "west"));
+        ActionBatch batch = batchOf(actions);
+        try {
+            batch.commit();
+            fail("Batch should have failed.");
+        } catch (ActionBatchException e) {
+            assertEquals(VALID_ACTIONS.size(), e.getActionIndex());
+            assertTrue(e.getCause() instanceof NoExitException);
+        }
+        assertEquals("Failed batch changed the map.", initial,
+                TestWorlds.describe(map));
+        assertEquals(actions.size(), batch.size());
+    }
+
+    @Test
+    public void testFailureReasons() {
+        Object[][] cases = {
+                {new Action(Action.DROP, "x"), ActionFormatException.class},
+                {new Action(Action.DROP, "9"), InvalidBlockException.class},
+                {new Action(7, ""), ActionFormatException.class},
+                // Tile 0 is all stone.
+                {new Action(Action.DIG, ""), InvalidBlockException.class},
+                // Tile 1 is as high as tile 0.
+                {new Action(Action.MOVE_BLOCK, "north"),
+                        TooHighException.class},
+        };
+        for (Object[] test : cases) {
+            ActionBatch batch = new ActionBatch(map);
+            batch.add((Action) test[0]);
+            try {
+                batch.validate();
+                fail("Expected " + test[1]);
+            } catch (ActionBatchException e) {
+                assertEquals(test[1], e.getCause().getClass());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchIsUndoneInOneStep() throws Exception {
+        ActionHistory history = new ActionHistory(map, 64, 16);
+        String initial = TestWorlds.describe(map);
+        batchOf(VALID_ACTIONS).commit();
+        assertEquals(1, history.getUndoCount());
+        history.undo(1);
+        assertEquals(initial, TestWorlds.describe(map));
+    }
+}
@@ -0,0 +1,112 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+
+public class ActionHistoryTest {
+
+    private WorldMap map;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+    }
+
+    private void apply(int primary, String secondary) {
+        Action.applyAction(new Action(primary, secondary), map);
+    }
+
+    @Test
+    public void testUndoAndRedoAll() throws NoExitException {
+        ActionHistory history = new ActionHistory(map, 64, 16);
+        String initial = TestWorlds.describe(map);
+
+        apply(Action.MOVE_BUILDER, "north");
+        apply(Action.DIG, "");
+        apply(Action.MOVE_BUILDER, "west"); // Fails; not recorded.
+        apply(Action.DROP, "0");
+        apply(Action.DROP, "0");
+        apply(Action.MOVE_BLOCK, "south");
+        map.getTiles().get(2).addExit("west", map.getTiles().get(0));
+        apply(Action.MOVE_BUILDER, "south");
+        String after = TestWorlds.describe(map);
+        assertEquals(6, history.getUndoCount());
+
+        assertEquals(2, history.undo(2));
+        assertEquals(4, history.getUndoCount());
+        assertEquals(2, history.getRedoCount());
+        assertEquals(4, history.undo(10));
+        assertEquals("Undo did not restore the initial state.",
+                initial, TestWorlds.describe(map));
+
+        assertEquals(6, history.redo(10));
+        assertEquals("Redo did not restore the final state.",
+                after, TestWorlds.describe(map));
+    }
+
+    @Test
+    public void testNewActionDiscardsRedo() {
+        ActionHistory history = new ActionHistory(map, 64, 16);
+        apply(Action.MOVE_BUILDER, "north");
+        apply(Action.DIG, "");
+        history.undo(1);
+        assertEquals(1, history.getRedoCount());
+
+        apply(Action.DROP, "0");
+        assertEquals(0, history.getRedoCount());
+        assertEquals(2, history.getUndoCount());
+        String after = TestWorlds.describe(map);
+        history.undo(2);
+        history.redo(2);
+        assertEquals(after, TestWorlds.describe(map));
+    }
+
+    @Test
+    public void testOldestActionsForgotten() {
+        ActionHistory history = new ActionHistory(map, 64, 4);
+        for (int i = 0; i < 3; i++) {
+            apply(Action.MOVE_BUILDER, "north");
+            apply(Action.MOVE_BUILDER, "south");
+        }
+        assertEquals(4, history.getUndoCount());
+        assertEquals(4, history.undo(10));
+        assertSame("Builder should be back on the starting tile.",
+                map.getTiles().get(0), map.getBuilder().getCurrentTile());
+    }
+
+    @Test
+    public void testUndoAndRedoCompleteEachStep() {
+        ActionHistory history = new ActionHistory(map, 64, 16);
+        apply(Action.MOVE_BUILDER, "north");
+        apply(Action.DIG, "");
+        apply(Action.MOVE_BUILDER, "south");
+        final int[] completed = new int[1];
+        map.addObserver(new WorldObserver() {
+            @Override
+            public void actionCompleted(Action action) {
+                completed[0]++;
+            }
+        });
+
+        history.undo(3);
+        assertEquals(3, completed[0]);
+        history.redo(2);
+        assertEquals(5, completed[0]);
+        assertEquals("Replayed steps should not be recorded.",
+                2, history.getUndoCount());
+    }
+
+    @Test
+    public void testClosedHistoryStopsRecording() {
+        ActionHistory history = new ActionHistory(map, 64, 16);
+        apply(Action.MOVE_BUILDER, "north");
+        history.close();
+        apply(Action.MOVE_BUILDER, "south");
+        assertEquals(0, history.getUndoCount());
+        assertNull(map.getBuilder().observer);
+    }
+}
@@ -0,0 +1,98 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionRingBufferTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new ActionRingBuffer(5).getCapacity());
+        assertEquals(8, new ActionRingBuffer(8).getCapacity());
+    }
+
+    @Test
+    public void testTryPublishFailsWhenFull() {
+        ActionRingBuffer buffer = new ActionRingBuffer(2);
+        assertTrue(buffer.tryPublish(new Action(Action.DIG, "")));
+        assertTrue(buffer.tryPublish(new Action(Action.DIG, "")));
+        assertFalse("Published into a full buffer.",
+                buffer.tryPublish(new Action(Action.DIG, "")));
+        assertEquals(2, buffer.getQueueDepth());
+
+        assertEquals(1, buffer.drain((action, end) -> {}, 1));
+        assertTrue(buffer.tryPublish(new Action(Action.DIG, "")));
+    }
+
+    @Test
+    public void testThrowingHandler() {
+        ActionRingBuffer buffer = new ActionRingBuffer(8);
+        for (int i = 0; i < 5; i++) {
+            buffer.publish(new Action(i, ""));
+        }
+        List<Integer> handled = new ArrayList<>();
+        try {
+            buffer.drain((action, end) -> {
+                handled.add(action.getPrimaryAction());
+                if (action.getPrimaryAction() == 1) {
+                    throw new IllegalStateException("handler failed");
+                }
+            }, 8);
+            fail("Handler exception not rethrown.");
+        } catch (IllegalStateException expected) {
+            // The first two actions are consumed.
+        }
+        assertEquals(3, buffer.getQueueDepth());
+
+        // The rest are handled once each, none of them null.
+        assertEquals(3, buffer.drain((action, end) ->
+                handled.add(action.getPrimaryAction()), 8));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), handled);
+        assertEquals(0, buffer.getQueueDepth());
+    }
+
+    // Each producer's actions must arrive in order and none may be lost.
+    @Test
+    public void testManyProducersSingleConsumer() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        ActionRingBuffer buffer = new ActionRingBuffer(64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final String producer = Integer.toString(p);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    buffer.publish(new Action(i, producer));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        int[] nextExpected = new int[producers];
+        long consumed = 0;
+        while (consumed < producers * perProducer) {
+            consumed += buffer.drain((action, end) -> {
+                int producer = Integer.parseInt(action.getSecondaryAction());
+                assertEquals("Producer order not preserved.",
+                        nextExpected[producer], action.getPrimaryAction());
+                nextExpected[producer]++;
+            }, 16);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, buffer.getConsumedCount());
+        assertTrue(buffer.getMaxBatchSize() <= 16);
+        assertTrue(buffer.getMaxQueueDepth() <= buffer.getCapacity()
+                + producers);
+        assertEquals(0, buffer.getQueueDepth());
+    }
+}
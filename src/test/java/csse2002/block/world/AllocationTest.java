@@ -0,0 +1,199 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Checks that hot paths do not allocate, by measuring the bytes allocated
+ * by the test thread over many calls once the JIT has compiled them.
+ *
+ * A path that allocates even one object per call allocates at least 16
+ * bytes per call, so paths marked allocation-free must average under one
+ * byte. Each measurement is repeated a few times and the lowest is used,
+ * since compilation can finish part way through a run.
+ */
+public class AllocationTest {
+
+    /** Calls made before measuring, so that the JIT has compiled the path. */
+    private static final int WARMUP = 50000;
+
+    /** Calls measured. */
+    private static final int ITERATIONS = 100000;
+
+    /** Measurements made of each path. */
+    private static final int ATTEMPTS = 5;
+
+    /** An operation that may throw. */
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private com.sun.management.ThreadMXBean threads;
+
+    private WorldMap map;
+    private Builder builder;
+    private Tile start;
+    private Tile north;
+
+    @Before
+    public void setup() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        map = new WorldMap("worldmap_test_basic.txt");
+        builder = map.getBuilder();
+        start = builder.getCurrentTile();
+        north = start.getExit("north");
+    }
+
+    /**
+     * Reads the bytes allocated by the test thread.
+     * @return the bytes.
+     */
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Measures the bytes an operation allocates per call.
+     * @param operation the operation, which must leave the state as it
+     *                  found it.
+     * @return the lowest average over the attempts.
+     */
+    private double bytesPerOperation(Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        double lowest = Double.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            // Reading the counter may itself allocate.
+            long overhead = -allocated() + allocated();
+            long before = allocated();
+            for (int i = 0; i < ITERATIONS; i++) {
+                operation.run();
+            }
+            long bytes = allocated() - before - overhead;
+            lowest = Math.min(lowest, (double) bytes / ITERATIONS);
+        }
+        return lowest;
+    }
+
+    /**
+     * Fails if an operation allocates.
+     * @param name name of the path.
+     * @param operation the operation.
+     */
+    private void assertAllocationFree(String name, Operation operation)
+            throws Exception {
+        double bytes = bytesPerOperation(operation);
+        assertTrue(name + " allocated " + bytes + " bytes per call",
+                bytes < 1);
+    }
+
+    @Test
+    public void testGetTile() throws Exception {
+        SparseTileArray tiles = map.getTileArray();
+        Position position = new Position(11, 6);
+        assertSame(north, tiles.getTile(position));
+        assertAllocationFree("getTile", () -> tiles.getTile(position));
+    }
+
+    @Test
+    public void testCanEnter() throws Exception {
+        assertTrue(builder.canEnter(north));
+        assertAllocationFree("canEnter", () -> builder.canEnter(north));
+    }
+
+    @Test
+    public void testMoveTo() throws Exception {
+        assertAllocationFree("moveTo", () -> {
+            builder.moveTo(north);
+            builder.moveTo(start);
+        });
+        assertSame(start, builder.getCurrentTile());
+    }
+
+    @Test
+    public void testDigAndPlaceBlock() throws Exception {
+        Tile tile = new Tile(Arrays.asList(new SoilBlock(), new WoodBlock()));
+        assertAllocationFree("dig and placeBlock",
+                () -> tile.placeBlock(tile.dig()));
+        assertEquals(2, tile.getBlocks().size());
+    }
+
+    @Test
+    public void testDigAndDropFromInventory() throws Exception {
+        builder.moveTo(north);
+        // The dug block goes to the end of the five block inventory.
+        assertAllocationFree("digOnCurrentTile and dropFromInventory", () -> {
+            builder.digOnCurrentTile();
+            builder.dropFromInventory(5);
+        });
+        assertEquals(3, north.getBlocks().size());
+    }
+
+    @Test
+    public void testApplyAction() throws Exception {
+        Action[] actions = {
+                new Action(Action.MOVE_BUILDER, "north"),
+                new Action(Action.DIG, ""),
+                new Action(Action.DROP, "5"),
+                new Action(Action.MOVE_BUILDER, "south"),
+        };
+        for (Action action : actions) {
+            assertFalse(Action.applyAction(action, map).startsWith("Error"));
+        }
+        assertAllocationFree("applyAction", () -> {
+            for (Action action : actions) {
+                Action.applyAction(action, map);
+            }
+        });
+        assertSame(start, builder.getCurrentTile());
+    }
+
+    @Test
+    public void testProcessAction() throws Exception {
+        // Printing encodes each message, which allocates inside the JDK, so
+        // only the action itself must not add to what printing costs.
+        PrintStream out = System.out;
+        PrintStream sink = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        });
+        Action dig = new Action(Action.DIG, "");
+        Action drop = new Action(Action.DROP, "5");
+        builder.moveTo(north);
+        try {
+            System.setOut(sink);
+            double printing = bytesPerOperation(() -> {
+                sink.println("Top block on current tile removed");
+                sink.println("Dropped a block from inventory");
+            });
+            double processing = bytesPerOperation(() -> {
+                Action.processAction(dig, map);
+                Action.processAction(drop, map);
+            });
+            assertTrue("processAction allocated " + processing
+                    + " bytes per call, printing alone " + printing,
+                    processing < printing + 1);
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(3, north.getBlocks().size());
+    }
+}
@@ -0,0 +1,143 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class DifferentialHarnessTest {
+
+    /** Makes a new copy of the basic test map. */
+    private static final Supplier<WorldMap> BASIC_MAP = () -> {
+        try {
+            return new WorldMap("worldmap_test_basic.txt");
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    };
+
+    /**
+     * Gets an engine that drops the block before the one asked for when
+     * asked for a valid index past the first five.
+     * @return the maker of the engine.
+     */
+    private static Function<WorldMap, DifferentialHarness.Engine> offByOne() {
+        return map -> action -> {
+            if (action.getPrimaryAction() == Action.DROP) {
+                int index = Integer.parseInt(action.getSecondaryAction());
+                if (index >= 5
+                        && index < map.getBuilder().getInventory().size()) {
+                    action = new Action(Action.DROP,
+                            Integer.toString(index - 1));
+                }
+            }
+            return Action.applyAction(action, map);
+        };
+    }
+
+    @Test
+    public void testEnginesAgree() throws Exception {
+        WorldGenerator generator = new WorldGenerator(2002, 12, 12);
+        List<Action> actions = DifferentialHarness.generateActions(2002, 5000);
+        for (Function<WorldMap, DifferentialHarness.Engine> engine
+                : Arrays.asList(DifferentialHarness.reference(),
+                        DifferentialHarness.batch(),
+                        DifferentialHarness.replay())) {
+            DifferentialHarness harness = new DifferentialHarness(
+                    generator::generate, DifferentialHarness.reference(),
+                    engine);
+            assertNull(harness.run(actions));
+        }
+    }
+
+    @Test
+    public void testMessageDivergence() throws Exception {
+        DifferentialHarness harness = new DifferentialHarness(BASIC_MAP,
+                DifferentialHarness.reference(),
+                map -> action -> action.getPrimaryAction() == Action.DIG
+                        ? "Top block on current tile removed"
+                        : Action.applyAction(action, map));
+        List<Action> actions = Arrays.asList(
+                new Action(Action.MOVE_BUILDER, "north"),
+                new Action(Action.MOVE_BUILDER, "south"),
+                new Action(Action.DIG, ""));
+
+        DifferentialHarness.Divergence divergence = harness.run(actions);
+        assertEquals(2, divergence.getActionIndex());
+        assertEquals("message", divergence.getCheck());
+        assertEquals("Cannot use that block", divergence.getExpected());
+        assertEquals("Top block on current tile removed",
+                divergence.getActual());
+        // Digging stone fails on the starting tile on its own.
+        assertEquals(1, divergence.getReproduction().size());
+        assertTrue(divergence.toString().endsWith(
+                "reproduction (1 actions):\nDIG"));
+    }
+
+    @Test
+    public void testExceptionDivergence() throws Exception {
+        DifferentialHarness harness = new DifferentialHarness(BASIC_MAP,
+                DifferentialHarness.reference(), map -> action -> {
+                    throw new IllegalStateException("broken");
+                });
+        DifferentialHarness.Divergence divergence = harness.run(
+                Arrays.asList(new Action(Action.DIG, "")));
+        assertEquals("threw java.lang.IllegalStateException: broken",
+                divergence.getActual());
+    }
+
+    @Test
+    public void testUnobservedChangeIsFound() throws Exception {
+        // Changes the map behind its observers' backs.
+        DifferentialHarness harness = new DifferentialHarness(BASIC_MAP,
+                DifferentialHarness.reference(), map -> action -> {
+                    String message = Action.applyAction(action, map);
+                    Tile tile = map.getBuilder().getCurrentTile();
+                    if (action.getPrimaryAction() == Action.DIG
+                            && message.startsWith("Top")) {
+                        tile.observer = null;
+                        tile.placeBlock(new WoodBlock());
+                        tile.dig();
+                        tile.dig();
+                    }
+                    return message;
+                });
+        harness.setCheckInterval(1000);
+        List<Action> actions = new ArrayList<>(Arrays.asList(
+                new Action(Action.MOVE_BUILDER, "north"),
+                new Action(Action.DIG, "")));
+        DifferentialHarness.Divergence divergence = harness.run(actions);
+        assertEquals("computed state hash", divergence.getCheck());
+        assertEquals(1, divergence.getActionIndex());
+        assertTrue(divergence.getActual(),
+                divergence.getActual().endsWith("(BLOCKS_CHANGED (11, 6))"));
+        assertEquals(actions, divergence.getReproduction());
+    }
+
+    @Test
+    public void testReproductionIsMinimal() throws Exception {
+        DifferentialHarness harness = new DifferentialHarness(BASIC_MAP,
+                DifferentialHarness.reference(), offByOne());
+        List<Action> actions = DifferentialHarness.generateActions(7, 2000);
+        DifferentialHarness.Divergence divergence = harness.run(actions);
+        assertNotNull(divergence);
+
+        // Needs a dig to have a sixth block, then a drop of it.
+        List<Action> reproduction = divergence.getReproduction();
+        assertTrue(reproduction.toString(), reproduction.size() >= 2);
+        Action last = reproduction.get(reproduction.size() - 1);
+        assertEquals(Action.DROP, last.getPrimaryAction());
+        assertNotNull(harness.run(reproduction));
+        for (int i = 0; i < reproduction.size(); i++) {
+            List<Action> smaller = new ArrayList<>(reproduction);
+            smaller.remove(i);
+            assertNull("Action " + i + " is not needed",
+                    harness.run(smaller));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightEventsTest {
+
+    /**
+     * Loads this package's classes itself and hides Flight Recorder from
+     * them, as on a JVM without it.
+     */
+    private static class NoFlightRecorderLoader extends ClassLoader {
+
+        NoFlightRecorderLoader() {
+            super(FlightEventsTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (name.startsWith("jdk.jfr.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith("csse2002.block.world.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+                try (InputStream in = getParent().getResourceAsStream(
+                        name.replace('.', '/') + ".class")) {
+                    if (in == null) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, read);
+                    }
+                    return defineClass(name, bytes.toByteArray(), 0,
+                            bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+    }
+
+    private static List<RecordedEvent> events(File file, String name)
+            throws Exception {
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            if (event.getEventType().getName().equals(name)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @Test
+    public void testPhaseAndActionEvents() throws Exception {
+        File saved = File.createTempFile("flight", ".txt");
+        File dump = File.createTempFile("flight", ".jfr");
+        saved.deleteOnExit();
+        dump.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("csse2002.block.world.MapLoad");
+            recording.enable("csse2002.block.world.TileIndex");
+            recording.enable("csse2002.block.world.ActionsProcessed");
+            recording.enable("csse2002.block.world.ActionApplied");
+            recording.enable("csse2002.block.world.MapSave");
+            recording.start();
+            WorldMap map = new WorldMap("worldmap_test_basic.txt");
+            Action.processActions(new BufferedReader(new StringReader(
+                    "MOVE_BUILDER north\nMOVE_BUILDER north\n")), map);
+            map.saveMap(saved.getPath());
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+
+        List<RecordedEvent> loads = events(dump,
+                "csse2002.block.world.MapLoad");
+        assertEquals(1, loads.size());
+        assertEquals("worldmap_test_basic.txt",
+                loads.get(0).getString("path"));
+        assertEquals(3, loads.get(0).getInt("tiles"));
+        assertEquals(new File("worldmap_test_basic.txt").length(),
+                loads.get(0).getLong("bytes"));
+
+        List<RecordedEvent> indexes = events(dump,
+                "csse2002.block.world.TileIndex");
+        assertEquals(1, indexes.size());
+        assertEquals(3, indexes.get(0).getInt("tiles"));
+        assertTrue(indexes.get(0).getBoolean("succeeded"));
+
+        List<RecordedEvent> processed = events(dump,
+                "csse2002.block.world.ActionsProcessed");
+        assertEquals(1, processed.size());
+        assertEquals(2, processed.get(0).getLong("actions"));
+        assertFalse(processed.get(0).getBoolean("pipelined"));
+
+        List<RecordedEvent> applied = events(dump,
+                "csse2002.block.world.ActionApplied");
+        assertEquals(2, applied.size());
+        assertEquals(Action.MOVE_BUILDER, applied.get(0).getInt("primary"));
+        assertEquals("north", applied.get(0).getString("secondary"));
+        assertEquals("Moved builder north",
+                applied.get(0).getString("message"));
+        assertEquals("No exit this way",
+                applied.get(1).getString("message"));
+
+        List<RecordedEvent> saves = events(dump,
+                "csse2002.block.world.MapSave");
+        assertEquals(1, saves.size());
+        assertEquals(3, saves.get(0).getInt("tiles"));
+        assertEquals(saved.length(), saves.get(0).getLong("bytes"));
+    }
+
+    @Test
+    public void testActionAppliedDisabledByDefault() throws Exception {
+        File dump = File.createTempFile("flight", ".jfr");
+        dump.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("csse2002.block.world.ActionsProcessed");
+            recording.start();
+            WorldMap map = new WorldMap("worldmap_test_basic.txt");
+            new PipelinedActionProcessor(4, new PrintStream(
+                    new ByteArrayOutputStream())).processActions(
+                    new BufferedReader(new StringReader("DIG\n")), map);
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+        assertTrue(events(dump, "csse2002.block.world.ActionApplied")
+                .isEmpty());
+        List<RecordedEvent> processed = events(dump,
+                "csse2002.block.world.ActionsProcessed");
+        assertEquals(1, processed.size());
+        assertEquals(1, processed.get(0).getLong("actions"));
+        assertTrue(processed.get(0).getBoolean("pipelined"));
+    }
+
+    @Test
+    public void testWithoutFlightRecorder() throws Exception {
+        File saved = File.createTempFile("flight", ".txt");
+        saved.deleteOnExit();
+        ClassLoader loader = new NoFlightRecorderLoader();
+        Class<?> worldMap = loader.loadClass("csse2002.block.world.WorldMap");
+        Class<?> action = loader.loadClass("csse2002.block.world.Action");
+        Constructor<?> load = worldMap.getConstructor(String.class);
+        try (Recording recording = new Recording()) {
+            recording.start();
+            Object map = load.newInstance("worldmap_test_basic.txt");
+            action.getMethod("processActions", BufferedReader.class,
+                    worldMap).invoke(null, new BufferedReader(
+                    new StringReader("MOVE_BUILDER north\n")), map);
+            worldMap.getMethod("saveMap", String.class).invoke(map,
+                    saved.getPath());
+        }
+        assertTrue(saved.length() > 0);
+    }
+
+    @Test
+    public void testIsRecordingActions() throws Exception {
+        try (Recording phases = new Recording()) {
+            phases.enable("csse2002.block.world.ActionsProcessed");
+            phases.start();
+            assertTrue(FlightEvents.isRecording());
+            assertFalse(FlightEvents.isRecordingActions());
+            try (Recording actions = new Recording()) {
+                actions.enable("csse2002.block.world.ActionApplied");
+                actions.start();
+                assertTrue(FlightEvents.isRecordingActions());
+            }
+            assertFalse(FlightEvents.isRecordingActions());
+        }
+    }
+}
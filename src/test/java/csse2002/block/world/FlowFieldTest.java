@@ -0,0 +1,68 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class FlowFieldTest {
+
+    @Test
+    public void testFixtureMap() throws Exception {
+        WorldMap map = new WorldMap("worldmap_test_basic.txt");
+        List<Tile> tiles = map.getTiles();
+        FlowField field = new FlowField(map, tiles.get(0));
+        assertEquals("south", field.getDirection(tiles.get(1)));
+        assertNull(field.getDirection(tiles.get(0)));
+        // Tile 2 has no exits.
+        assertFalse(field.canReach(tiles.get(2)));
+        assertNull(field.getNextAction());
+        assertEquals(2, field.getReachableCount());
+
+        Action action = new FlowField(map, tiles.get(1)).getNextAction();
+        assertEquals(Action.MOVE_BUILDER, action.getPrimaryAction());
+        assertEquals("north", action.getSecondaryAction());
+    }
+
+    @Test
+    public void testEveryTileFollowsShortestPath() throws Exception {
+        WorldMap map = TestWorlds.randomGrid(25, 25, 3, 35);
+        Tile target = map.getTile(new Position(12, 12));
+        FlowField field = new FlowField(map, target);
+        int reachable = 0;
+        for (Tile tile : map.getTiles()) {
+            int distance = TestWorlds.bfsDistance(tile, target);
+            assertEquals(distance != -1, field.canReach(tile));
+            if (distance == -1) {
+                continue;
+            }
+            reachable++;
+            // Following the field takes exactly the shortest distance.
+            Builder builder = new Builder("follower", tile);
+            for (int step = 0; step < distance; step++) {
+                String direction = field.getDirection(builder.getCurrentTile());
+                builder.moveTo(builder.getCurrentTile().getExits()
+                        .get(direction));
+            }
+            assertSame(target, builder.getCurrentTile());
+        }
+        assertEquals(reachable, field.getReachableCount());
+    }
+
+    @Test
+    public void testRecomputeSeesChanges() throws Exception {
+        WorldMap map = TestWorlds.grid(3, 1, new int[3]);
+        Tile start = map.getTile(new Position(0, 0));
+        Tile middle = map.getTile(new Position(1, 0));
+        FlowField field = new FlowField(map, map.getTile(new Position(2, 0)));
+        assertEquals("east", field.getDirection(start));
+
+        middle.placeBlock(new SoilBlock());
+        middle.placeBlock(new SoilBlock());
+        assertEquals("Field should not change until recomputed.",
+                "east", field.getDirection(start));
+        field.recompute();
+        assertFalse(field.canReach(start));
+    }
+}
@@ -0,0 +1,84 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class HierarchicalPathFinderTest {
+
+    /**
+     * Follows a path with a builder, checking every move is allowed.
+     * @return the tile the path ends on.
+     */
+    private static Tile follow(Tile from, List<String> path)
+            throws NoExitException {
+        Builder builder = new Builder("walker", from);
+        for (String direction : path) {
+            builder.moveTo(builder.getCurrentTile().getExits().get(direction));
+        }
+        return builder.getCurrentTile();
+    }
+
+    @Test
+    public void testMatchesFlatSearch() throws Exception {
+        WorldMap map = TestWorlds.randomGrid(40, 40, 3, 34);
+        List<Tile> tiles = map.getTiles();
+        HierarchicalPathFinder finder = new HierarchicalPathFinder(map, 8);
+        PathFinder reference = new PathFinder(map);
+        assertEquals(25, finder.getClusterCount());
+        Random random = new Random(34);
+        for (int i = 0; i < 300; i++) {
+            Tile from = tiles.get(random.nextInt(tiles.size()));
+            Tile to = tiles.get(random.nextInt(tiles.size()));
+            List<String> expected = reference.findPath(from, to);
+            List<String> path = finder.findPath(from, to);
+            if (expected == null) {
+                assertNull(path);
+            } else {
+                assertEquals("Path is not shortest.",
+                        expected.size(), path.size());
+                assertSame(to, follow(from, path));
+            }
+            // Change heights now and then to exercise invalidation.
+            if (i % 20 == 0) {
+                Tile changed = tiles.get(random.nextInt(tiles.size()));
+                if (changed.getHeight() > 0) {
+                    changed.removeTopBlock();
+                } else {
+                    changed.placeBlock(new WoodBlock());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyTouchedClusterIsRebuilt() throws Exception {
+        WorldMap map = TestWorlds.grid(16, 16, new int[16 * 16]);
+        HierarchicalPathFinder finder = new HierarchicalPathFinder(map, 4);
+        Tile corner = map.getTile(new Position(0, 0));
+        for (Tile tile : map.getTiles()) {
+            assertNotNull(finder.findPath(corner, tile));
+        }
+        assertEquals(16, finder.getRebuildCount());
+
+        Tile changed = map.getTile(new Position(9, 9));
+        changed.placeBlock(new WoodBlock());
+        assertEquals(18, finder.findPath(corner, changed).size());
+        assertEquals(17, finder.getRebuildCount());
+    }
+
+    @Test
+    public void testExpandsFewerNodesThanFlatSearch() {
+        WorldMap map = TestWorlds.grid(64, 64, new int[64 * 64]);
+        HierarchicalPathFinder finder = new HierarchicalPathFinder(map, 16);
+        PathFinder flat = new PathFinder(map);
+        Tile from = map.getTile(new Position(0, 0));
+        Tile to = map.getTile(new Position(63, 40));
+        assertEquals(flat.findPath(from, to).size(),
+                finder.findPath(from, to).size());
+        assertTrue(finder.getExpandedCount() < flat.getExpandedCount());
+    }
+}
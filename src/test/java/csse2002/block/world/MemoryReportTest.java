@@ -0,0 +1,103 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+public class MemoryReportTest {
+
+    /**
+     * Runs a full collection and gets the live instances and bytes of a
+     * class from the heap histogram.
+     * @param className the class.
+     * @return the number of instances and the bytes they hold.
+     */
+    private static long[] histogram(String className) throws Exception {
+        String histogram = (String) ManagementFactory.getPlatformMBeanServer()
+                .invoke(new ObjectName(
+                        "com.sun.management:type=DiagnosticCommand"),
+                        "gcClassHistogram", new Object[] {new String[0]},
+                        new String[] {String[].class.getName()});
+        for (String line : histogram.split("\n")) {
+            // " num: #instances #bytes class name"
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length == 4 && columns[3].equals(className)) {
+                return new long[] {Long.parseLong(columns[1]),
+                        Long.parseLong(columns[2])};
+            }
+        }
+        return new long[2];
+    }
+
+    @Test
+    public void testEstimateMatchesMeasurement() {
+        WorldGenerator generator = new WorldGenerator(48, 96, 64);
+        WorldMap map = generator.generate();
+        MemoryReport estimate = MemoryReport.estimate(map);
+        MemoryReport measured = MemoryReport.measure(map);
+        assertFalse(estimate.isExact());
+        assertTrue(measured.isExact());
+
+        for (MemoryReport.Subsystem subsystem
+                : MemoryReport.Subsystem.values()) {
+            long expected = measured.getBytes(subsystem);
+            long actual = estimate.getBytes(subsystem);
+            assertTrue(subsystem + " estimated " + actual + " measured "
+                    + expected, Math.abs(actual - expected) <= expected / 20
+                    + 512);
+        }
+        assertEquals(map.getTileArray().getTileCount(),
+                measured.getObjects(MemoryReport.Subsystem.TILES));
+        assertEquals(measured.getObjects(MemoryReport.Subsystem.TILES),
+                estimate.getObjects(MemoryReport.Subsystem.TILES));
+    }
+
+    @Test
+    public void testMeasurementMatchesHeapHistogram() throws Exception {
+        long[] tilesBefore;
+        long[] positionsBefore;
+        try {
+            tilesBefore = histogram("csse2002.block.world.Tile");
+            positionsBefore = histogram("csse2002.block.world.Position");
+        } catch (Exception e) {
+            assumeNoException(e);
+            return;
+        }
+        WorldMap map = new WorldGenerator(7, 64, 64).generate();
+        long[] tiles = histogram("csse2002.block.world.Tile");
+        long[] positions = histogram("csse2002.block.world.Position");
+        int tileCount = map.getTileArray().getTileCount();
+
+        MemoryReport measured = MemoryReport.measure(map);
+        assertEquals(tiles[0] - tilesBefore[0],
+                measured.getObjects(MemoryReport.Subsystem.TILES));
+        assertEquals(tiles[1] - tilesBefore[1],
+                measured.getBytes(MemoryReport.Subsystem.TILES));
+        // Besides one key per tile, the map has a start position and
+        // Direction may have been loaded with four more.
+        long newPositions = positions[0] - positionsBefore[0];
+        assertTrue(newPositions >= tileCount && newPositions <= tileCount + 5);
+        long positionBytes = positions[1] / positions[0] * tileCount;
+        assertTrue(positionBytes < measured.getBytes(
+                MemoryReport.Subsystem.POSITION_INDEX));
+    }
+
+    @Test
+    public void testLoadedMap() throws Exception {
+        WorldMap map = new WorldMap("worldmap_test_basic.txt");
+        MemoryReport measured = MemoryReport.measure(map);
+        assertEquals(3, measured.getObjects(MemoryReport.Subsystem.TILES));
+        // Five inventory blocks, the builder, its name and its list.
+        assertTrue(measured.getObjects(
+                MemoryReport.Subsystem.BUILDER_INVENTORY) >= 10);
+        String text = MemoryReport.estimate(map).toString();
+        assertTrue(text, text.startsWith("TILES "));
+        assertTrue(text, text.endsWith("bytes (estimated)"));
+        assertEquals(MemoryReport.Subsystem.values().length + 1,
+                text.split("\\R").length);
+    }
+}
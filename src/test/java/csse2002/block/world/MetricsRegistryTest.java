@@ -0,0 +1,146 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+public class MetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new MetricsRegistry();
+        MetricsRegistry.install(registry);
+    }
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.install(null);
+    }
+
+    @Test
+    public void testActionsAreCounted() throws Exception {
+        WorldMap map = new WorldMap("worldmap_test_basic.txt");
+        String actions = "MOVE_BUILDER north\n" // Moves.
+                + "MOVE_BUILDER north\n"        // No exit.
+                + "DIG\n"                       // Digs soil.
+                + "DIG\n"                       // Digs wood.
+                + "DIG\n"                       // Stone is not diggable.
+                + "DROP 9\n"                    // No such block.
+                + "DROP x\n"                    // Invalid secondary.
+                + "MOVE_BLOCK south\n"          // Tile 0 is higher.
+                + "JUMP\n";                     // Stops processing.
+        try {
+            Action.processActions(
+                    new BufferedReader(new StringReader(actions)), map);
+            fail("Invalid line not reported.");
+        } catch (ActionFormatException expected) {
+            // Counted as a format failure.
+        }
+
+        assertEquals(2, registry.getCount(Action.MOVE_BUILDER));
+        assertEquals(3, registry.getCount(Action.DIG));
+        assertEquals(2, registry.getCount(Action.DROP));
+        assertEquals(1, registry.getCount(Action.MOVE_BLOCK));
+        assertEquals(1, registry.getFailureCount(Action.MOVE_BUILDER,
+                MetricsRegistry.FailureCause.NO_EXIT));
+        assertEquals(1, registry.getFailureCount(Action.DIG,
+                MetricsRegistry.FailureCause.INVALID_BLOCK));
+        assertEquals(1, registry.getFailureCount(Action.DROP,
+                MetricsRegistry.FailureCause.INVALID_BLOCK));
+        assertEquals(1, registry.getFailureCount(Action.DROP,
+                MetricsRegistry.FailureCause.FORMAT));
+        assertEquals(1, registry.getFailureCount(Action.MOVE_BLOCK,
+                MetricsRegistry.FailureCause.TOO_HIGH));
+        assertEquals(2, registry.getFailureCount(
+                MetricsRegistry.FailureCause.FORMAT));
+        assertEquals(0, registry.getFailureCount(
+                MetricsRegistry.FailureCause.TOO_LOW));
+        assertTrue(registry.getMax(Action.DIG) > 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        // 1us to 1000us, one of each.
+        for (int i = 1; i <= 1000; i++) {
+            registry.record(Action.DIG, i * 1000L, null);
+        }
+        assertEquals(1000, registry.getCount(Action.DIG));
+        assertEquals(1000000, registry.getMax(Action.DIG));
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+            long expected = (long) (percentile * 10000);
+            long actual = registry.getPercentile(Action.DIG, percentile);
+            assertTrue(percentile + ": " + actual, actual >= expected);
+            assertTrue(percentile + ": " + actual,
+                    actual <= expected * 1.07);
+        }
+        assertEquals(1000000, registry.getPercentile(Action.DIG, 100));
+        assertEquals(0, registry.getPercentile(Action.DROP, 50));
+        assertEquals(0, new MetricsRegistry().getPercentile(50));
+
+        // Twice as many drops, all slower than every dig.
+        for (int i = 0; i < 2000; i++) {
+            registry.record(Action.DROP, 2000000, null);
+        }
+        assertTrue(registry.getPercentile(33) <= 1000000 * 1.07);
+        assertTrue(registry.getPercentile(34) >= 2000000);
+        assertEquals(2000000, registry.getPercentile(100));
+    }
+
+    @Test
+    public void testBucketsCoverAllLatencies() {
+        int previous = -1;
+        for (long nanos = 0; nanos < 100000; nanos++) {
+            int bucket = MetricsRegistry.bucket(nanos);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(MetricsRegistry.bucketEnd(bucket) >= nanos);
+            previous = bucket;
+        }
+        int last = MetricsRegistry.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, MetricsRegistry.bucketEnd(last));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25000; i++) {
+                    registry.record(Action.MOVE_BLOCK, i + offset,
+                            i % 5 == 0 ? new TooHighException() : null);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100000, registry.getCount(Action.MOVE_BLOCK));
+        assertEquals(20000, registry.getFailureCount(Action.MOVE_BLOCK,
+                MetricsRegistry.FailureCause.TOO_HIGH));
+        assertEquals(24999 + 3, registry.getMax(Action.MOVE_BLOCK));
+        assertEquals(registry.getMax(Action.MOVE_BLOCK),
+                registry.getPercentile(Action.MOVE_BLOCK, 100));
+    }
+
+    @Test
+    public void testDump() {
+        registry.record(Action.DROP, 1500, null);
+        registry.record(Action.DROP, 2500, new TooHighException());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        registry.dump(new PrintStream(bytes));
+        String[] lines = bytes.toString().trim().split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("DROP count=2 mean=2.000us"));
+        assertTrue(lines[0], lines[0].endsWith("max=2.500us TOO_HIGH=1"));
+    }
+}
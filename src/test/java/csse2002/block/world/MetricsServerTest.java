@@ -0,0 +1,91 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+public class MetricsServerTest {
+
+    private MetricsRegistry registry;
+    private WorldMap map;
+    private MetricsServer server;
+
+    @Before
+    public void setup() throws Exception {
+        registry = new MetricsRegistry();
+        MetricsRegistry.install(registry);
+        map = new WorldMap("worldmap_test_basic.txt");
+        server = new MetricsServer(map, registry);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        MetricsRegistry.install(null);
+    }
+
+    @Test
+    public void testScrape() throws Exception {
+        Action.processActions(new BufferedReader(new StringReader(
+                "MOVE_BUILDER north\nMOVE_BUILDER north\nDIG\n")), map);
+        File saved = File.createTempFile("metrics", ".txt");
+        saved.deleteOnExit();
+        map.saveMap(saved.getPath());
+
+        String text = server.scrape();
+        assertTrue(text.contains("# TYPE block_world_action_duration_seconds"
+                + " summary\n"));
+        assertTrue(text.contains("block_world_action_duration_seconds_count"
+                + "{type=\"MOVE_BUILDER\"} 2\n"));
+        assertTrue(text.contains("block_world_action_duration_seconds_count"
+                + "{type=\"DIG\"} 1\n"));
+        assertTrue(text.contains("block_world_action_duration_seconds"
+                + "{type=\"DIG\",quantile=\"0.99\"} "));
+        assertFalse(text.contains("{type=\"DROP\"}"));
+        assertTrue(text.contains("block_world_action_failures_total"
+                + "{type=\"MOVE_BUILDER\",cause=\"NO_EXIT\"} 1\n"));
+        assertTrue(text.contains("block_world_save_duration_seconds_count"
+                + " 1\n"));
+        assertTrue(text.contains("block_world_tiles 3\n"));
+        assertTrue(text.contains("block_world_builder_x 11\n"));
+        assertTrue(text.contains("block_world_builder_y 6\n"));
+        assertTrue(text.contains("jvm_memory_heap_used_bytes "));
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# ")
+                    || line.matches("[a-z_]+(\\{[^}]*\\})? [0-9.]+"));
+        }
+    }
+
+    @Test
+    public void testServesOnLoopback() throws Exception {
+        server.start(0);
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + "/metrics");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/plain; version=0.0.4; charset=utf-8",
+                connection.getContentType());
+        String body;
+        try (InputStream in = connection.getInputStream()) {
+            body = new BufferedReader(new InputStreamReader(in,
+                    StandardCharsets.UTF_8)).lines()
+                    .collect(Collectors.joining("\n"));
+        }
+        assertTrue(body.contains("block_world_tiles 3"));
+
+        connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        assertEquals(405, connection.getResponseCode());
+    }
+}
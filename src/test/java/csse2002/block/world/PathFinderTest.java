@@ -0,0 +1,96 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class PathFinderTest {
+
+    /**
+     * Follows a path with the builder, checking every move is allowed.
+     * @return the tile the path ends on.
+     */
+    private static Tile follow(Tile from, List<String> path) {
+        Builder builder = new Builder("walker", from);
+        for (String direction : path) {
+            try {
+                builder.moveTo(builder.getCurrentTile().getExits()
+                        .get(direction));
+            } catch (NoExitException e) {
+                fail("Path moves " + direction + " illegally.");
+            }
+        }
+        return builder.getCurrentTile();
+    }
+
+    @Test
+    public void testFixtureMap() throws Exception {
+        WorldMap map = new WorldMap("worldmap_test_basic.txt");
+        List<Tile> tiles = map.getTiles();
+        PathFinder finder = new PathFinder(map);
+
+        assertEquals(Collections.emptyList(),
+                finder.findPath(tiles.get(0), tiles.get(0)));
+        assertEquals(Arrays.asList("south"),
+                finder.findPath(tiles.get(1), tiles.get(0)));
+        assertEquals(Arrays.asList("north"), finder.findPath(tiles.get(1)));
+        // Tile 2 is two blocks higher than tile 0.
+        assertNull(finder.findPath(tiles.get(0), tiles.get(2)));
+        assertNull(finder.findPath(tiles.get(0), new Tile()));
+    }
+
+    @Test
+    public void testDetoursAroundWall() {
+        int width = 10;
+        int[] heights = new int[width * width];
+        // A wall down column 5, open only at the bottom row.
+        for (int y = 0; y < width - 1; y++) {
+            heights[y * width + 5] = 3;
+        }
+        WorldMap map = TestWorlds.grid(width, width, heights);
+        Tile from = map.getTile(new Position(0, 0));
+        Tile to = map.getTile(new Position(9, 0));
+
+        List<String> path = new PathFinder(map).findPath(from, to);
+        assertEquals(9 + 2 * 9, path.size());
+        assertSame(to, follow(from, path));
+    }
+
+    @Test
+    public void testMatchesBreadthFirstSearch() {
+        WorldMap map = TestWorlds.randomGrid(30, 30, 4, 32);
+        List<Tile> tiles = map.getTiles();
+        PathFinder finder = new PathFinder(map);
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            Tile from = tiles.get(random.nextInt(tiles.size()));
+            Tile to = tiles.get(random.nextInt(tiles.size()));
+            List<String> path = finder.findPath(from, to);
+            int expected = TestWorlds.bfsDistance(from, to);
+            if (expected == -1) {
+                assertNull(path);
+            } else {
+                assertEquals("Path is not shortest.", expected, path.size());
+                assertSame(to, follow(from, path));
+            }
+        }
+    }
+
+    @Test
+    public void testSeesHeightChanges() throws Exception {
+        WorldMap map = TestWorlds.grid(3, 1, new int[] {1, 1, 1});
+        Tile middle = map.getTile(new Position(1, 0));
+        Tile end = map.getTile(new Position(2, 0));
+        PathFinder finder = new PathFinder(map);
+        assertEquals(2, finder.findPath(end).size());
+
+        middle.placeBlock(new WoodBlock());
+        middle.placeBlock(new WoodBlock());
+        assertNull(finder.findPath(end));
+    }
+}
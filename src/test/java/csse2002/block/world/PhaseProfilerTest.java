@@ -0,0 +1,62 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+public class PhaseProfilerTest {
+
+    @Test
+    public void testPhasesAreMeasuredInOrder() {
+        PhaseProfiler profiler = new PhaseProfiler();
+        profiler.start("load");
+        long[] allocated = new long[100000];
+        profiler.start("actions");
+        profiler.stop(250);
+        profiler.stop();
+
+        List<PhaseProfiler.Phase> phases = profiler.getPhases();
+        assertEquals(2, phases.size());
+        PhaseProfiler.Phase load = phases.get(0);
+        assertEquals("load", load.name);
+        assertTrue(load.wallNanos > 0);
+        assertTrue(load.cpuNanos >= -1);
+        if (load.allocatedBytes != -1) {
+            assertTrue(load.allocatedBytes >= allocated.length * 8L);
+        }
+        assertEquals(-1, load.items);
+        assertEquals(-1, load.itemsPerSecond(), 0);
+        assertEquals("actions", phases.get(1).name);
+        assertEquals(250, phases.get(1).items);
+        assertTrue(phases.get(1).itemsPerSecond() > 0);
+    }
+
+    @Test
+    public void testOutput() throws Exception {
+        PhaseProfiler profiler = new PhaseProfiler();
+        profiler.start("load");
+        profiler.start("actions");
+        profiler.stop(3);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        profiler.print(new PrintStream(text, true, "UTF-8"));
+        String[] lines = text.toString("UTF-8").split("\\R");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("load     wall="));
+        assertTrue(lines[1].startsWith("actions  wall="));
+        assertTrue(lines[1].endsWith("/s"));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        profiler.printJson(new PrintStream(json, true, "UTF-8"));
+        String line = json.toString("UTF-8").trim();
+        assertTrue(line.startsWith("{\"phases\":[{\"name\":\"load\","
+                + "\"wallNanos\":"));
+        assertTrue(line.contains("{\"name\":\"actions\","));
+        assertTrue(line.contains(",\"items\":3,\"itemsPerSecond\":"));
+        assertTrue(line.endsWith("}]}"));
+    }
+}
@@ -0,0 +1,139 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+public class PipelinedActionProcessorTest {
+
+    private WorldMap map;
+    private ByteArrayOutputStream outStream;
+    private PipelinedActionProcessor processor;
+
+    private BufferedReader makeReader(String string) {
+        return new BufferedReader(new StringReader(string));
+    }
+
+    // Small queues so the stages actually block on each other.
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+        outStream = new ByteArrayOutputStream();
+        processor = new PipelinedActionProcessor(
+                2, new PrintStream(outStream));
+    }
+
+    @Test
+    public void testOutputMatchesSequential() throws ActionFormatException {
+        String actions = ""
+                + "MOVE_BUILDER north\n"
+                + "DIG\n"
+                + "DROP 0\n"
+                + "DROP text\n"
+                + "MOVE_BUILDER south\n"
+                + "MOVE_BLOCK east\n"
+                + "MOVE_BUILDER east\n";
+        processor.processActions(makeReader(actions), map);
+        assertEquals("Wrong pipelined output.", ""
+                + "Moved builder north\n"
+                + "Top block on current tile removed\n"
+                + "Dropped a block from inventory\n"
+                + "Error: Invalid action\n"
+                + "Moved builder south\n"
+                + "Too high\n"
+                + "No exit this way\n",
+                outStream.toString().replace("\r\n", "\n"));
+        assertEquals(7, processor.getActionsRead());
+        assertEquals(7, processor.getActionsApplied());
+        assertEquals(7, processor.getMessagesWritten());
+    }
+
+    // Actions before an invalid line are applied and printed, then it throws.
+    @Test
+    public void testInvalidLineThrowsAfterEarlierActions() {
+        try {
+            processor.processActions(makeReader(""
+                    + "DIG\n"
+                    + "RANDOM_ACTION\n"
+                    + "DIG\n"), map);
+            fail("ActionFormatException not thrown.");
+        } catch (ActionFormatException ignored) {}
+        assertEquals("Wrong output before invalid line.",
+                "Cannot use that block\n",
+                outStream.toString().replace("\r\n", "\n"));
+        assertEquals(1, processor.getActionsApplied());
+    }
+
+    /**
+     * Makes a stream of many more actions than the queues hold.
+     * @param count number of actions.
+     * @return the actions, one per line.
+     */
+    private static String manyActions(int count) {
+        StringBuilder actions = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            actions.append(i % 2 == 0 ? "MOVE_BUILDER north\n"
+                    : "MOVE_BUILDER south\n");
+        }
+        return actions.toString();
+    }
+
+    // An exception while applying stops every stage instead of leaving the
+    // reader blocked on a full queue.
+    @Test(timeout = 10000)
+    public void testApplyFailureDoesNotHang() throws Exception {
+        IllegalStateException failure = new IllegalStateException("observer");
+        map.addObserver(new WorldObserver() {
+            private int actions;
+
+            @Override
+            public void actionCompleted(Action action) {
+                if (++actions == 10) {
+                    throw failure;
+                }
+            }
+        });
+        try {
+            processor.processActions(makeReader(manyActions(1000)), map);
+            fail("Apply stage failure not thrown.");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(9, processor.getActionsApplied());
+        assertEquals(9, processor.getMessagesWritten());
+    }
+
+    // An exception while reading ends the stream after the actions read.
+    @Test(timeout = 10000)
+    public void testReadFailureDoesNotHang() throws Exception {
+        IllegalStateException failure = new IllegalStateException("reader");
+        BufferedReader reader = new BufferedReader(
+                new StringReader(manyActions(1000))) {
+            private int lines;
+
+            @Override
+            public String readLine() throws IOException {
+                if (++lines > 20) {
+                    throw failure;
+                }
+                return super.readLine();
+            }
+        };
+        try {
+            processor.processActions(reader, map);
+            fail("Reader stage failure not thrown.");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(20, processor.getActionsApplied());
+        assertEquals(20, processor.getMessagesWritten());
+    }
+}
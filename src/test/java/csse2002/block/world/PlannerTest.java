@@ -0,0 +1,93 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+public class PlannerTest {
+
+    private WorldMap map;
+    private List<Tile> tiles;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+        tiles = map.getTiles();
+    }
+
+    /**
+     * Applies a plan, checking every action succeeds.
+     */
+    private void apply(List<Action> plan) {
+        for (Action action : plan) {
+            String message = Action.applyAction(action, map);
+            assertTrue("Planned action failed: " + message,
+                    message.startsWith("Moved")
+                    || message.startsWith("Dropped")
+                    || message.startsWith("Top block"));
+        }
+    }
+
+    private static String describe(List<Action> plan) {
+        StringBuilder result = new StringBuilder();
+        for (Action action : plan) {
+            result.append(action.getPrimaryAction()).append(' ')
+                    .append(action.getSecondaryAction()).append(';');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testAlreadySatisfied() {
+        Planner planner = new Planner(map, 100);
+        assertEquals(0, planner.plan(
+                Planner.Goal.builderOn(tiles.get(0))).size());
+    }
+
+    @Test
+    public void testTopBlock() {
+        List<Action> plan = new Planner(map, 1000).plan(
+                Planner.Goal.topBlock(tiles.get(0), "wood"));
+        assertEquals(1, plan.size());
+        apply(plan);
+        assertEquals("wood", tiles.get(0).getBlocks().get(3).getBlockType());
+    }
+
+    @Test
+    public void testRaiseUnreachableTile() {
+        Planner planner = new Planner(map, 100000);
+        List<Action> plan = planner.plan(
+                Planner.Goal.tileHeight(tiles.get(2), 6));
+        assertNotNull(plan);
+        // Drop, walk over while one block lower, drop again.
+        assertEquals(3, plan.size());
+        apply(plan);
+        assertEquals(6, tiles.get(2).getBlocks().size());
+    }
+
+    @Test
+    public void testBudget() {
+        Planner planner = new Planner(map, 10);
+        assertNull(planner.plan(Planner.Goal.tileHeight(tiles.get(2), 6)));
+        assertTrue(planner.isBudgetExhausted());
+        assertTrue(planner.getStateCount() > 10);
+    }
+
+    @Test
+    public void testParallelFindsSamePlan() {
+        Planner.Goal goal = Planner.Goal.tileHeight(tiles.get(1), 1);
+        List<Action> sequential = new Planner(map, 200000).plan(goal);
+        List<Action> parallel;
+        try (Planner planner = new Planner(map, 200000, 4)) {
+            parallel = planner.plan(goal);
+        }
+        assertNotNull(sequential);
+        assertEquals(describe(sequential), describe(parallel));
+        apply(parallel);
+        assertEquals(1, tiles.get(1).getBlocks().size());
+    }
+}
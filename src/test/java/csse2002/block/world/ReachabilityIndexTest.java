@@ -0,0 +1,103 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class ReachabilityIndexTest {
+
+    /**
+     * Checks the index against breadth-first searches from one tile.
+     */
+    private static void assertMatchesSearch(ReachabilityIndex index,
+                                            WorldMap map, Tile from) {
+        for (Tile to : map.getTiles()) {
+            assertEquals("Wrong answer for " + map.getTiles().indexOf(to),
+                    TestWorlds.bfsDistance(from, to) != -1,
+                    index.canReach(from, to));
+        }
+    }
+
+    @Test
+    public void testFixtureWithOneWayExits() throws Exception {
+        WorldMap map = new WorldMap("worldmap_test_basic.txt");
+        List<Tile> tiles = map.getTiles();
+        ReachabilityIndex index = new ReachabilityIndex(map);
+        assertTrue(index.canReach(tiles.get(1)));
+        // Tile 2 has no exits back and is too high.
+        assertFalse(index.canReach(tiles.get(2)));
+        assertEquals(2, index.getComponentCount());
+
+        // Two blocks onto tile 0 make tile 2 reachable, one way only.
+        tiles.get(0).placeBlock(new WoodBlock());
+        tiles.get(0).placeBlock(new WoodBlock());
+        assertTrue(index.canReach(tiles.get(2)));
+        assertFalse(index.canReach(tiles.get(2), tiles.get(0)));
+    }
+
+    @Test
+    public void testWallSplitsAndRejoins() throws Exception {
+        WorldMap map = TestWorlds.grid(3, 3, new int[9]);
+        ReachabilityIndex index = new ReachabilityIndex(map);
+        assertEquals(1, index.getComponentCount());
+        Tile corner = map.getTile(new Position(0, 0));
+        Tile far = map.getTile(new Position(2, 2));
+
+        // Raise the diagonal from (2, 0) to (0, 2) to height 2.
+        Tile[] wall = {map.getTile(new Position(2, 0)),
+                map.getTile(new Position(1, 1)),
+                map.getTile(new Position(0, 2))};
+        for (Tile tile : wall) {
+            tile.placeBlock(new SoilBlock());
+            tile.placeBlock(new SoilBlock());
+        }
+        assertFalse(index.canReach(corner, far));
+        assertEquals(5, index.getComponentCount());
+        assertEquals(3, index.getComponentSize(corner));
+
+        wall[1].removeTopBlock();
+        assertTrue(index.canReach(corner, far));
+        assertEquals(9 - 2, index.getComponentSize(corner));
+    }
+
+    @Test
+    public void testRandomChangesMatchSearch() throws Exception {
+        WorldMap map = TestWorlds.randomGrid(12, 12, 3, 33);
+        List<Tile> tiles = map.getTiles();
+        ReachabilityIndex index = new ReachabilityIndex(map);
+        Random random = new Random(7);
+        for (int step = 0; step < 300; step++) {
+            Tile tile = tiles.get(random.nextInt(tiles.size()));
+            if (random.nextBoolean() && tile.getHeight() > 0) {
+                tile.removeTopBlock();
+            } else if (tile.getHeight() < 8) {
+                tile.placeBlock(new WoodBlock());
+            }
+            if (step % 10 == 0) {
+                assertMatchesSearch(index, map,
+                        tiles.get(random.nextInt(tiles.size())));
+                ReachabilityIndex fresh = new ReachabilityIndex(map);
+                assertEquals(fresh.getComponentCount(),
+                        index.getComponentCount());
+                fresh.close();
+            }
+        }
+    }
+
+    @Test
+    public void testExitChangesRebuild() throws Exception {
+        WorldMap map = TestWorlds.grid(2, 1, new int[2]);
+        Tile left = map.getTile(new Position(0, 0));
+        Tile right = map.getTile(new Position(1, 0));
+        ReachabilityIndex index = new ReachabilityIndex(map);
+        assertTrue(index.canReach(left, right));
+
+        left.removeExit("east");
+        right.removeExit("west");
+        assertFalse(index.canReach(left, right));
+        assertEquals(2, index.getComponentCount());
+    }
+}
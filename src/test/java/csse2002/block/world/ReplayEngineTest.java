@@ -0,0 +1,135 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplayEngineTest {
+
+    private WorldMap map;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+    }
+
+    /**
+     * Actions that wander between the tiles, digging and dropping.
+     */
+    private static final Action[] ACTIONS = {
+            new Action(Action.MOVE_BUILDER, "north"),
+            new Action(Action.DIG, ""),
+            new Action(Action.MOVE_BUILDER, "south"),
+            new Action(Action.DROP, "1"),
+            new Action(Action.MOVE_BUILDER, "east"),
+            new Action(Action.DIG, ""),
+            new Action(Action.DROP, "+0"),
+            new Action(Action.MOVE_BUILDER, "west"),
+            new Action(Action.DROP, "0"),
+            new Action(Action.MOVE_BLOCK, "north"),
+            new Action(Action.DIG, ""),
+    };
+
+    /**
+     * Applies a sequence of actions, recording the state after each.
+     * @return states, indexed by number of actions applied.
+     */
+    private List<String> run(ReplayEngine engine, int count) {
+        List<String> states = new ArrayList<>();
+        states.add(TestWorlds.describe(map));
+        for (int i = 0; i < count; i++) {
+            engine.apply(ACTIONS[i % ACTIONS.length]);
+            states.add(TestWorlds.describe(map));
+        }
+        return states;
+    }
+
+    @Test
+    public void testSeekMatchesRecordedStates() {
+        ReplayEngine engine = new ReplayEngine(map, 4, 64);
+        List<String> states = run(engine, 60);
+        assertEquals(60, engine.getSize());
+
+        int[] targets = {0, 59, 17, 18, 3, 40, 40, 60, 1, 33};
+        for (int target : targets) {
+            engine.seek(target);
+            assertEquals(target, engine.getPosition());
+            assertEquals("Wrong state after seeking to " + target,
+                    states.get(target), TestWorlds.describe(map));
+        }
+    }
+
+    @Test
+    public void testSnapshotsAreBounded() {
+        ReplayEngine engine = new ReplayEngine(map, 2, 4);
+        List<String> states = run(engine, 100);
+        assertTrue(engine.getSnapshotCount() <= 4);
+        assertTrue(engine.getSnapshotInterval() > 2);
+
+        for (int target = 100; target >= 0; target -= 7) {
+            engine.seek(target);
+            assertEquals(states.get(target), TestWorlds.describe(map));
+        }
+    }
+
+    @Test
+    public void testApplyAfterSeekDiscardsLaterActions() {
+        ReplayEngine engine = new ReplayEngine(map, 3, 16);
+        List<String> states = run(engine, 20);
+        engine.seek(5);
+        engine.apply(new Action(Action.MOVE_BUILDER, "north"));
+        assertEquals(6, engine.getSize());
+        String after = TestWorlds.describe(map);
+
+        engine.seek(0);
+        assertEquals(states.get(0), TestWorlds.describe(map));
+        engine.seek(6);
+        assertEquals(after, TestWorlds.describe(map));
+    }
+
+    @Test
+    public void testApplyAfterSeekDiscardsLaterRawActions() {
+        // DROP +0 is the only action kept raw, at 6, 17 and 28.
+        ReplayEngine engine = new ReplayEngine(map, 3, 16);
+        run(engine, 30);
+        assertEquals(3, engine.getRawActionCount());
+        engine.seek(10);
+        engine.apply(new Action(Action.MOVE_BUILDER, "north"));
+        assertEquals(1, engine.getRawActionCount());
+
+        engine.seek(3);
+        engine.apply(new Action(Action.DROP, "+0"));
+        assertEquals(1, engine.getRawActionCount());
+        String after = TestWorlds.describe(map);
+        engine.seek(0);
+        engine.seek(4);
+        assertEquals(after, TestWorlds.describe(map));
+    }
+
+    @Test
+    public void testProcessActionsPrintsAsUsual() throws Exception {
+        String input = "MOVE_BUILDER north\nDIG\nMOVE_BUILDER west\n";
+        PrintStream original = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            new ReplayEngine(map, 10, 4).processActions(
+                    new BufferedReader(new StringReader(input)));
+        } finally {
+            System.setOut(original);
+        }
+        String newline = System.lineSeparator();
+        assertEquals("Moved builder north" + newline
+                + "Top block on current tile removed" + newline
+                + "No exit this way" + newline, output.toString());
+    }
+}
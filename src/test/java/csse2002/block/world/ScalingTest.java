@@ -0,0 +1,215 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Checks that operations which should take linear time still do, by timing
+ * them at doubling input sizes from a {@link WorldGenerator} and fitting the
+ * exponent k of time = c * n^k.
+ *
+ * An operation fails if k exceeds the bound given by the system property
+ * "scaling.maxExponent", 1.5 by default. Cache effects and noise can make
+ * a linear operation measure up to about 1.3, and a quadratic one at these
+ * sizes measures about 1.7 or more, as saving did when it looked tile ids
+ * up with List.indexOf().
+ *
+ * Being slow and timing based, this test is left out of the default test
+ * run. Run it with <code>mvn test -Dscaling.run</code> or
+ * <code>mvn test -Dtest=ScalingTest</code>.
+ */
+public class ScalingTest {
+
+    /** Largest exponent allowed for linear operations. */
+    private static final double MAX_EXPONENT = Double.parseDouble(
+            System.getProperty("scaling.maxExponent", "1.5"));
+
+    /** Rows of the generated maps. Widths double to double the tiles. */
+    private static final int HEIGHT = 64;
+
+    /** Widths of the generated maps, from 4096 to 32768 tiles. */
+    private static final int[] WIDTHS = {64, 128, 256, 512};
+
+    /** Numbers of replayed actions. */
+    private static final int[] ACTION_COUNTS = {25000, 50000, 100000, 200000};
+
+    /** Timed runs of each size, of which the fastest is used. */
+    private static final int RUNS = 5;
+
+    /**
+     * Makes the input of an operation, outside of the timed region.
+     * @param <T> type of input.
+     */
+    private interface Input<T> {
+        T make(int size) throws Exception;
+    }
+
+    /**
+     * An operation on an input of some size.
+     * @param <T> type of input.
+     */
+    private interface Operation<T> {
+        void run(T input, int size) throws Exception;
+    }
+
+    /** Generated map files, by size. */
+    private static File[] files;
+
+    /** Maps loaded from the files, by size. */
+    private static WorldMap[] maps;
+
+    /** Generated action streams, by size. */
+    private static String[] actions;
+
+    private static File saved;
+
+    @BeforeClass
+    public static void setupClass() throws Exception {
+        files = new File[WIDTHS.length];
+        maps = new WorldMap[WIDTHS.length];
+        for (int i = 0; i < WIDTHS.length; i++) {
+            WorldGenerator generator = new WorldGenerator(2002, WIDTHS[i],
+                    HEIGHT);
+            generator.setDensity(1);
+            files[i] = File.createTempFile("scaling", ".txt");
+            files[i].deleteOnExit();
+            generator.write(files[i].getPath());
+            maps[i] = new WorldMap(files[i].getPath());
+        }
+        actions = new String[ACTION_COUNTS.length];
+        for (int i = 0; i < ACTION_COUNTS.length; i++) {
+            StringWriter writer = new StringWriter();
+            new WorldGenerator(2002, WIDTHS[0], HEIGHT)
+                    .writeActions(writer, ACTION_COUNTS[i]);
+            actions[i] = writer.toString();
+        }
+        saved = File.createTempFile("scaling", ".txt");
+        saved.deleteOnExit();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        for (File file : files) {
+            file.delete();
+        }
+        saved.delete();
+    }
+
+    /**
+     * Times an operation at each size and fits its growth exponent.
+     * @param sizes the input size of each size index.
+     * @param input makes the operation's input for a size index.
+     * @param operation the operation, given its input and size index.
+     * @return the exponent.
+     */
+    private static <T> double exponent(int[] sizes, Input<T> input,
+                                       Operation<T> operation)
+            throws Exception {
+        // Compile the operation on every input before timing.
+        for (int i = 0; i < sizes.length; i++) {
+            operation.run(input.make(i), i);
+        }
+        double[] logSizes = new double[sizes.length];
+        double[] logTimes = new double[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            long fastest = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                T made = input.make(i);
+                // Leave no earlier garbage to be collected while timing.
+                System.gc();
+                long start = System.nanoTime();
+                operation.run(made, i);
+                fastest = Math.min(fastest, System.nanoTime() - start);
+            }
+            logSizes[i] = Math.log(sizes[i]);
+            logTimes[i] = Math.log(Math.max(1, fastest));
+        }
+        // Least squares slope of log time against log size.
+        double meanSize = 0;
+        double meanTime = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            meanSize += logSizes[i] / sizes.length;
+            meanTime += logTimes[i] / sizes.length;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            covariance += (logSizes[i] - meanSize) * (logTimes[i] - meanTime);
+            variance += (logSizes[i] - meanSize) * (logSizes[i] - meanSize);
+        }
+        return covariance / variance;
+    }
+
+    /**
+     * Fails if an operation grows faster than linearly.
+     * @param name name of the operation.
+     * @param sizes the input size of each size index.
+     * @param input makes the operation's input for a size index.
+     * @param operation the operation, given its input and size index.
+     */
+    private static <T> void assertLinear(String name, int[] sizes,
+                                         Input<T> input,
+                                         Operation<T> operation)
+            throws Exception {
+        double exponent = exponent(sizes, input, operation);
+        assertTrue(String.format("%s grows as n^%.2f, more than n^%.2f",
+                name, exponent, MAX_EXPONENT), exponent <= MAX_EXPONENT);
+    }
+
+    /**
+     * Gets the tile counts of the generated maps.
+     * @return the tile counts, by size index.
+     */
+    private static int[] tileCounts() {
+        int[] counts = new int[WIDTHS.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = maps[i].getTileArray().getTileCount();
+        }
+        return counts;
+    }
+
+    @Test
+    public void testLoadIsLinear() throws Exception {
+        assertLinear("Loading a map", tileCounts(),
+                size -> files[size].getPath(),
+                (path, size) -> new WorldMap(path));
+    }
+
+    @Test
+    public void testIndexingIsLinear() throws Exception {
+        assertLinear("Indexing tiles", tileCounts(),
+                size -> maps[size].getTileArray(),
+                (tiles, size) -> new SparseTileArray().addLinkedTiles(
+                        tiles.getTile(0), tiles.getTileX(0),
+                        tiles.getTileY(0)));
+    }
+
+    @Test
+    public void testSaveIsLinear() throws Exception {
+        assertLinear("Saving a map", tileCounts(),
+                size -> maps[size],
+                (map, size) -> map.saveMap(saved.getPath()));
+    }
+
+    @Test
+    public void testReplayIsLinear() throws Exception {
+        WorldGenerator generator = new WorldGenerator(2002, WIDTHS[0], HEIGHT);
+        assertLinear("Replaying actions", ACTION_COUNTS,
+                size -> generator.generate(), (map, size) -> {
+            BufferedReader reader =
+                    new BufferedReader(new StringReader(actions[size]));
+            Action action;
+            while ((action = Action.loadAction(reader)) != null) {
+                Action.applyAction(action, map);
+            }
+        });
+    }
+}
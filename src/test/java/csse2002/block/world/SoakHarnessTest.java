@@ -0,0 +1,99 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SoakHarnessTest {
+
+    @Test
+    public void testGrowth() {
+        // A steady series, with noise and one outlier, does not grow.
+        double[] steady = {100, 103, 98, 101, 400, 99, 102, 100};
+        assertEquals(0, SoakHarness.growth(steady, 1), 0.05);
+
+        // 100 to 170 is 70 over a median of 135.
+        double[] rising = {100, 110, 120, 130, 140, 150, 160, 170};
+        assertEquals(70.0 / 135, SoakHarness.growth(rising, 1), 1e-9);
+
+        // Growth of small values is a fraction of the floor.
+        double[] small = {0, 1, 2, 3};
+        assertEquals(0.3, SoakHarness.growth(small, 10), 1e-9);
+
+        assertEquals(0, SoakHarness.growth(new double[] {1, 100}, 1), 0);
+
+        // A day of one second samples, rising by 0.01 a sample, with an
+        // outlier every minute.
+        double[] day = new double[24 * 3600];
+        for (int i = 0; i < day.length; i++) {
+            day[i] = i % 60 == 59 ? 1e9 : 1000 + i * 0.01;
+        }
+        double span = 0.01 * (day.length - 1);
+        assertEquals(span / (1000 + span / 2),
+                SoakHarness.growth(day, 1), 0.01);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        MetricsRegistry installed = new MetricsRegistry();
+        MetricsRegistry.install(installed);
+        SoakHarness.Report report;
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try {
+            SoakHarness harness = new SoakHarness(2002, 16, 16);
+            harness.setDuration(1000, 200);
+            report = harness.run(new PrintStream(text, true, "UTF-8"));
+            assertSame(installed, MetricsRegistry.getInstalled());
+        } finally {
+            MetricsRegistry.install(null);
+        }
+        // Actions applied by the harness are not recorded outside it.
+        assertEquals(0, installed.getCount(Action.DIG));
+
+        List<SoakHarness.Sample> samples = report.getSamples();
+        assertEquals(5, samples.size());
+        long elapsed = 0;
+        for (SoakHarness.Sample sample : samples) {
+            assertTrue(sample.getElapsedMillis() >= elapsed + 200);
+            elapsed = sample.getElapsedMillis();
+            assertTrue(sample.getActions() > 0);
+            assertTrue(sample.getFailures() <= sample.getActions());
+            assertTrue(sample.getMedianNanos() <= sample.getP99Nanos());
+            assertTrue(sample.getP99Nanos() <= sample.getMaxNanos());
+            assertTrue(sample.getHeapBytes() > 0);
+        }
+
+        String[] lines = text.toString("UTF-8").split("\\R");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].matches("\\d+ms actions=\\d+ failed=\\d+ maps=\\d+"
+                + " p50=.* gc=-?\\d+ \\(-?\\d+ms\\) heap=[0-9.]+MiB"));
+    }
+
+    @Test
+    public void testLeakIsFlagged() {
+        // Keeps part of every action applied, as a leaking observer would.
+        List<long[]> leaked = new ArrayList<>();
+        WorldObserver leak = new WorldObserver() {
+            @Override
+            public void actionCompleted(Action action) {
+                leaked.add(new long[8]);
+            }
+        };
+        SoakHarness harness = new SoakHarness(2002, 16, 16);
+        harness.setDuration(1600, 200);
+        SoakHarness.Report report = harness.run(number -> {
+            WorldMap map = new WorldGenerator(2002 + number, 16, 16)
+                    .generate();
+            map.addObserver(leak);
+            return map;
+        }, null);
+        assertTrue(report.isHeapDrifting());
+        assertTrue(report.isDrifting());
+        assertFalse(leaked.isEmpty());
+    }
+}
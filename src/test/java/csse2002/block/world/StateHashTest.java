@@ -0,0 +1,103 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.Random;
+
+public class StateHashTest {
+
+    private WorldMap map;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+    }
+
+    /**
+     * Gets a random action, valid or not.
+     */
+    private static Action randomAction(Random random) {
+        String[] directions = {"north", "east", "south", "west"};
+        switch (random.nextInt(4)) {
+            case 0:
+                return new Action(Action.MOVE_BUILDER,
+                        directions[random.nextInt(4)]);
+            case 1:
+                return new Action(Action.MOVE_BLOCK,
+                        directions[random.nextInt(4)]);
+            case 2:
+                return new Action(Action.DIG, "");
+            default:
+                return new Action(Action.DROP,
+                        Integer.toString(random.nextInt(8)));
+        }
+    }
+
+    @Test
+    public void testEqualStatesHashEqually() throws Exception {
+        WorldMap other = new WorldMap("worldmap_test_basic.txt");
+        assertEquals(map.stateHash(), other.stateHash());
+
+        Action.applyAction(new Action(Action.DROP, "0"), map);
+        assertNotEquals(map.stateHash(), other.stateHash());
+        Action.applyAction(new Action(Action.DROP, "0"), other);
+        assertEquals(map.stateHash(), other.stateHash());
+
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        assertNotEquals(map.stateHash(), other.stateHash());
+    }
+
+    @Test
+    public void testInventoryOrderMatters() throws Exception {
+        WorldMap other = new WorldMap("worldmap_test_basic.txt");
+        Action north = new Action(Action.MOVE_BUILDER, "north");
+        Action.applyAction(north, other);
+        Action.applyAction(north, map);
+        // Digging the soil on tile 1 and dropping the inventory's other soil
+        // leaves the blocks as they were, but moves the soil to the end of
+        // the inventory.
+        Action.applyAction(new Action(Action.DIG, ""), map);
+        Action.applyAction(new Action(Action.DROP, "3"), map);
+        assertEquals(other.getTiles().get(1).getBlocks().size(),
+                map.getTiles().get(1).getBlocks().size());
+        assertEquals(map.stateHash(), StateHash.compute(map));
+        assertNotEquals(map.stateHash(), other.stateHash());
+    }
+
+    @Test
+    public void testActionsMatchRecomputedHash() {
+        map.stateHash();
+        Random random = new Random(37);
+        for (int i = 0; i < 2000; i++) {
+            Action.applyAction(randomAction(random), map);
+            assertEquals("Hash differs after action " + i,
+                    StateHash.compute(map), map.stateHash());
+        }
+    }
+
+    @Test
+    public void testDirectChangesMatchRecomputedHash() throws Exception {
+        map.stateHash();
+        Tile tile0 = map.getTiles().get(0);
+        Tile tile2 = map.getTiles().get(2);
+
+        tile2.addExit("west", tile0);
+        assertEquals(StateHash.compute(map), map.stateHash());
+        tile0.addExit("east", tile0);
+        assertEquals(StateHash.compute(map), map.stateHash());
+        tile0.removeExit("north");
+        assertEquals(StateHash.compute(map), map.stateHash());
+
+        tile0.placeBlock(new WoodBlock());
+        assertEquals(StateHash.compute(map), map.stateHash());
+        tile0.removeTopBlock();
+        assertEquals(StateHash.compute(map), map.stateHash());
+
+        map.getBuilder().moveTo(tile0.getExits().get("east"));
+        assertEquals(StateHash.compute(map), map.stateHash());
+    }
+}
@@ -0,0 +1,141 @@
+package csse2002.block.world;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Builds world maps for tests that need more tiles than the fixture files.
+ */
+class TestWorlds {
+
+    private TestWorlds() {}
+
+    /**
+     * Makes a tile with the given number of blocks: soil at the bottom and
+     * wood above the ground limit.
+     * @param height number of blocks, from 0 to 8.
+     * @return new tile.
+     */
+    static Tile tileOfHeight(int height) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < height; i++) {
+            blocks.add(i < 3 ? new SoilBlock() : new WoodBlock());
+        }
+        try {
+            return new Tile(blocks);
+        } catch (TooHighException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Makes a fully linked rectangular grid with the top-left tile at (0, 0).
+     * Tile (x, y) has height heights[y * width + x].
+     * @param width grid width.
+     * @param height grid height.
+     * @param heights tile heights, row by row.
+     * @return the map, with the builder on (0, 0) and an empty inventory.
+     */
+    static WorldMap grid(int width, int height, int[] heights) {
+        Tile[] tiles = new Tile[width * height];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = tileOfHeight(heights[i]);
+        }
+        try {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    Tile tile = tiles[y * width + x];
+                    if (x + 1 < width) {
+                        Tile east = tiles[y * width + x + 1];
+                        tile.addExit("east", east);
+                        east.addExit("west", tile);
+                    }
+                    if (y + 1 < height) {
+                        Tile south = tiles[(y + 1) * width + x];
+                        tile.addExit("south", south);
+                        south.addExit("north", tile);
+                    }
+                }
+            }
+            return new WorldMap(tiles[0], new Position(0, 0),
+                    new Builder("Test", tiles[0]));
+        } catch (NoExitException | WorldMapInconsistentException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Makes a grid with random heights from 0 to maxHeight.
+     * @param width grid width.
+     * @param height grid height.
+     * @param maxHeight largest tile height.
+     * @param seed random seed.
+     * @return the map.
+     */
+    static WorldMap randomGrid(int width, int height, int maxHeight,
+                               long seed) {
+        Random random = new Random(seed);
+        int[] heights = new int[width * height];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextInt(maxHeight + 1);
+        }
+        return grid(width, height, heights);
+    }
+
+    /**
+     * Describes a map's state: the blocks and exit names of every tile, the
+     * index of the builder's tile and the inventory.
+     * @param map the map.
+     * @return state description, equal for maps in equal states.
+     */
+    static String describe(WorldMap map) {
+        StringBuilder state = new StringBuilder();
+        for (Tile tile : map.getTiles()) {
+            for (Block block : tile.getBlocks()) {
+                state.append(block.getBlockType()).append(',');
+            }
+            state.append(tile.getExits().keySet()).append('|');
+        }
+        state.append(map.getTiles().indexOf(map.getBuilder().getCurrentTile()));
+        for (Block block : map.getBuilder().getInventory()) {
+            state.append(',').append(block.getBlockType());
+        }
+        return state.toString();
+    }
+
+    /**
+     * Finds the number of moves between two tiles by breadth-first search
+     * using Builder.canEnter rules.
+     * @param from start tile.
+     * @param to goal tile.
+     * @return number of moves, or -1 if unreachable.
+     */
+    static int bfsDistance(Tile from, Tile to) {
+        Map<Tile, Integer> distance = new IdentityHashMap<>();
+        Queue<Tile> queue = new ArrayDeque<>();
+        distance.put(from, 0);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            Tile tile = queue.remove();
+            if (tile == to) {
+                return distance.get(tile);
+            }
+            Builder probe = new Builder("probe", tile);
+            for (String name : new String[] {"north", "east", "south",
+                    "west"}) {
+                Tile next = tile.getExits().get(name);
+                if (next != null && !distance.containsKey(next)
+                        && probe.canEnter(next)) {
+                    distance.put(next, distance.get(tile) + 1);
+                    queue.add(next);
+                }
+            }
+        }
+        return -1;
+    }
+}
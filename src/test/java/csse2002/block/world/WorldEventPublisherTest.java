@@ -0,0 +1,202 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WorldEventPublisherTest {
+
+    /**
+     * Records everything it is given. Requests nothing by itself.
+     */
+    private static class RecordingSubscriber
+            implements WorldEventPublisher.Subscriber {
+        WorldEventPublisher.Subscription subscription;
+        final List<List<WorldEvent>> batches = new ArrayList<>();
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(WorldEventPublisher.Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(List<WorldEvent> batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private WorldMap map;
+    private RecordingSubscriber subscriber;
+
+    @Before
+    public void setup() throws BlockWorldException, FileNotFoundException {
+        map = new WorldMap("worldmap_test_basic.txt");
+        subscriber = new RecordingSubscriber();
+    }
+
+    @Test
+    public void testOneBatchPerAction() {
+        WorldEventPublisher publisher = new WorldEventPublisher(map);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        Action.applyAction(new Action(Action.DIG, ""), map);
+        Action.applyAction(new Action(Action.DROP, "0"), map);
+        // Fails, so no events and no batch.
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "west"), map);
+
+        assertEquals(3, subscriber.batches.size());
+        WorldEvent moved = subscriber.batches.get(0).get(0);
+        assertEquals(WorldEvent.Type.BUILDER_MOVED, moved.getType());
+        assertEquals(0, moved.getFromId());
+        assertEquals(map.getTileArray().getTileId(
+                map.getBuilder().getCurrentTile()), moved.getToId());
+        List<WorldEvent> dig = subscriber.batches.get(1);
+        assertEquals(2, dig.size());
+        assertEquals(WorldEvent.Type.BLOCK_REMOVED, dig.get(0).getType());
+        assertEquals(moved.getToId(), dig.get(0).getTileId());
+        assertEquals(dig.get(0).getBlockType(), dig.get(1).getBlockType());
+        assertEquals(WorldEvent.Type.INVENTORY_ADDED, dig.get(1).getType());
+        assertEquals(5, dig.get(1).getIndex());
+        List<WorldEvent> drop = subscriber.batches.get(2);
+        assertEquals(WorldEvent.Type.BLOCK_PLACED, drop.get(0).getType());
+        assertEquals(WorldEvent.Type.INVENTORY_REMOVED, drop.get(1).getType());
+        assertEquals(0, drop.get(1).getIndex());
+    }
+
+    @Test
+    public void testBatchesOfSeveralActions() throws NoExitException {
+        WorldEventPublisher publisher = new WorldEventPublisher(map, 2, 16);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(10);
+
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        assertEquals("Batch published early.", 0, subscriber.batches.size());
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "south"), map);
+        assertEquals(1, subscriber.batches.size());
+        assertEquals(2, subscriber.batches.get(0).size());
+
+        // Direct changes outside actions are published on flush.
+        map.getTiles().get(2).addExit("west", map.getTiles().get(0));
+        publisher.flush();
+        assertEquals(WorldEvent.Type.EXIT_CHANGED,
+                subscriber.batches.get(1).get(0).getType());
+        WorldEvent exit = subscriber.batches.get(1).get(0);
+        assertEquals(2, exit.getTileId());
+        assertEquals("west", exit.getExitName());
+        assertEquals(-1, exit.getFromId());
+        assertEquals(0, exit.getToId());
+    }
+
+    @Test
+    public void testDemandIsRespected() {
+        WorldEventPublisher publisher = new WorldEventPublisher(map);
+        publisher.subscribe(subscriber);
+
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "south"), map);
+        assertEquals("Delivered without demand.",
+                0, subscriber.batches.size());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.batches.size());
+        subscriber.subscription.request(5);
+        assertEquals(2, subscriber.batches.size());
+
+        publisher.close();
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testSlowSubscriberIsCancelled() {
+        WorldEventPublisher publisher = new WorldEventPublisher(map, 1, 1);
+        publisher.subscribe(subscriber);
+
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "south"), map);
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    // Every event is published once, in a batch that no longer changes,
+    // when flushed from another thread.
+    @Test
+    public void testFlushFromAnotherThread() throws InterruptedException {
+        final int moves = 200000;
+        WorldEventPublisher publisher = new WorldEventPublisher(map,
+                moves + 1, moves);
+        long[] delivered = new long[1];
+        subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(List<WorldEvent> batch) {
+                super.onNext(batch);
+                delivered[0] += batch.size();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        Thread flusher = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                publisher.flush();
+            }
+        });
+        flusher.start();
+        for (int i = 0; i < moves; i++) {
+            Action.applyAction(new Action(Action.MOVE_BUILDER,
+                    i % 2 == 0 ? "north" : "south"), map);
+        }
+        flusher.interrupt();
+        flusher.join();
+        publisher.close();
+
+        assertEquals(moves, delivered[0]);
+        assertTrue(subscriber.completed);
+    }
+
+    // Nothing is attached to the tiles unless someone is subscribed.
+    @Test
+    public void testDetachesWithoutSubscribers() throws InterruptedException {
+        WorldEventPublisher publisher = new WorldEventPublisher(map);
+        assertNull(map.getTiles().get(0).observer);
+
+        publisher.subscribe(subscriber);
+        assertNotNull(map.getTiles().get(0).observer);
+        assertNotNull(map.getBuilder().observer);
+
+        // Cancelling may happen on any thread, so the publisher detaches
+        // on the thread applying actions, once the next one completes.
+        Thread canceller = new Thread(() -> subscriber.subscription.cancel());
+        canceller.start();
+        canceller.join();
+        assertEquals(0, publisher.getSubscriberCount());
+        Action.applyAction(new Action(Action.MOVE_BUILDER, "north"), map);
+        assertNull(map.getTiles().get(0).observer);
+        assertNull(map.getBuilder().observer);
+
+        // Closing detaches at once.
+        publisher.subscribe(new RecordingSubscriber());
+        assertNotNull(map.getBuilder().observer);
+        publisher.close();
+        assertNull(map.getBuilder().observer);
+    }
+}
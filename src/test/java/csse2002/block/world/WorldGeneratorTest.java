@@ -0,0 +1,114 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class WorldGeneratorTest {
+
+    /**
+     * Makes a generator of an irregular world.
+     */
+    private static WorldGenerator disc(long seed) {
+        WorldGenerator generator = new WorldGenerator(seed, 40, 30);
+        generator.setShape(WorldGenerator.Shape.DISC);
+        generator.setDensity(0.6);
+        generator.setHeightRange(0, 8);
+        return generator;
+    }
+
+    /**
+     * Writes a generator's world to a string.
+     */
+    private static String text(WorldGenerator generator) throws Exception {
+        StringWriter out = new StringWriter();
+        generator.write(out);
+        return out.toString();
+    }
+
+    @Test
+    public void testWrittenWorldMatchesGeneratedWorld() throws Exception {
+        WorldGenerator generator = disc(7);
+        File file = File.createTempFile("generated", ".txt");
+        file.deleteOnExit();
+        generator.write(file.getPath());
+
+        WorldMap loaded = new WorldMap(file.getPath());
+        WorldMap generated = generator.generate();
+        assertEquals(generator.getTileCount(), loaded.getTiles().size());
+        // Every tile was reached through exits from the starting tile.
+        assertEquals(generator.getTileCount(), generated.getTiles().size());
+        assertEquals(0, new WorldMapDiff(generated, loaded)
+                .getDifferences().size());
+        assertEquals(generated.getBuilder().getInventory().size(),
+                loaded.getBuilder().getInventory().size());
+    }
+
+    @Test
+    public void testSeedDeterminesWorld() throws Exception {
+        assertEquals(text(disc(3)), text(disc(3)));
+        assertNotEquals(text(disc(3)), text(disc(4)));
+    }
+
+    @Test
+    public void testShapeAndDensity() {
+        WorldGenerator generator = new WorldGenerator(1, 100, 50);
+        assertEquals(5000, generator.getTileCount());
+        generator.setShape(WorldGenerator.Shape.DISC);
+        long disc = generator.getTileCount();
+        // Close to the area of the inscribed ellipse.
+        assertEquals(Math.PI * 50 * 25, disc, 100);
+        generator.setDensity(0.5);
+        assertEquals(disc / 2.0, generator.getTileCount(), 50);
+        generator.setDensity(0);
+        assertEquals(50, generator.getTileCount());
+    }
+
+    @Test
+    public void testBlockWeights() {
+        WorldGenerator generator = new WorldGenerator(2, 10, 10);
+        generator.setBlockWeights(0, 0, 0, 1);
+        generator.setHeightRange(8, 8);
+        for (Tile tile : generator.generate().getTiles()) {
+            assertEquals(8, tile.getBlocks().size());
+            for (Block block : tile.getBlocks()) {
+                assertTrue(block instanceof StoneBlock);
+            }
+        }
+
+        // Ground blocks are never placed above the third block.
+        generator.setBlockWeights(0, 1, 1, 0);
+        for (Tile tile : generator.generate().getTiles()) {
+            for (int i = 0; i < tile.getBlocks().size(); i++) {
+                assertEquals(i >= 3,
+                        tile.getBlocks().get(i) instanceof WoodBlock);
+            }
+        }
+    }
+
+    @Test
+    public void testActionStream() throws Exception {
+        WorldGenerator generator = disc(5);
+        StringWriter out = new StringWriter();
+        generator.writeActions(out, 500);
+        StringWriter again = new StringWriter();
+        generator.writeActions(again, 500);
+        assertEquals(out.toString(), again.toString());
+
+        WorldMap map = generator.generate();
+        BufferedReader reader =
+                new BufferedReader(new StringReader(out.toString()));
+        int count = 0;
+        Action action;
+        while ((action = Action.loadAction(reader)) != null) {
+            Action.applyAction(action, map);
+            count++;
+        }
+        assertEquals(500, count);
+    }
+}
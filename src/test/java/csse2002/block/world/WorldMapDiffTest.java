@@ -0,0 +1,117 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class WorldMapDiffTest {
+
+    /**
+     * Describes each difference as a string.
+     */
+    private static List<String> describe(List<WorldMapDiff.Difference> list) {
+        List<String> descriptions = new ArrayList<>();
+        for (WorldMapDiff.Difference difference : list) {
+            descriptions.add(difference.toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Finds the differences in parallel.
+     */
+    private static List<WorldMapDiff.Difference> parallel(WorldMapDiff diff,
+                                                          int chunkSize) {
+        List<WorldMapDiff.Difference> differences = new ArrayList<>();
+        diff.forEachParallel(differences::add, chunkSize);
+        return differences;
+    }
+
+    @Test
+    public void testEqualMapsHaveNoDifferences() throws Exception {
+        WorldMap before = new WorldMap("worldmap_test_basic.txt");
+        WorldMap after = new WorldMap("worldmap_test_basic.txt");
+        WorldMapDiff diff = new WorldMapDiff(before, after);
+        assertEquals(0, diff.getDifferences().size());
+        assertEquals(0, parallel(diff, 1).size());
+    }
+
+    @Test
+    public void testTileOrderIsIgnored() throws Exception {
+        WorldMap before = TestWorlds.randomGrid(5, 5, 4, 1);
+        WorldMap copy = TestWorlds.randomGrid(5, 5, 4, 1);
+        Position start = new Position(3, 2);
+        Tile startTile = copy.getTileArray().getTile(start);
+        WorldMap after = new WorldMap(startTile, start,
+                new Builder("Test", copy.getTiles().get(0)));
+        assertNotSame(after.getTiles().get(0), copy.getTiles().get(0));
+
+        WorldMapDiff diff = new WorldMapDiff(before, after);
+        assertEquals(0, diff.getDifferences().size());
+        assertEquals(0, parallel(diff, 3).size());
+    }
+
+    @Test
+    public void testChangesAreFound() throws Exception {
+        WorldMap before = TestWorlds.randomGrid(6, 6, 2, 3);
+        // The same heights, without the bottom row.
+        WorldMap after = TestWorlds.randomGrid(6, 5, 2, 3);
+        SparseTileArray tiles = after.getTileArray();
+        tiles.getTile(new Position(1, 1)).placeBlock(new WoodBlock());
+        tiles.getTile(new Position(2, 2)).removeExit("east");
+        after.getBuilder().moveTo(tiles.getTile(new Position(1, 0)));
+
+        Set<String> expected = new HashSet<>();
+        for (int x = 0; x < 6; x++) {
+            expected.add("TILE_REMOVED (" + x + ", 5)");
+            expected.add("EXITS_CHANGED (" + x + ", 4)");
+        }
+        expected.add("BLOCKS_CHANGED (1, 1)");
+        expected.add("EXITS_CHANGED (2, 2)");
+        expected.add("BUILDER_CHANGED (1, 0)");
+
+        WorldMapDiff diff = new WorldMapDiff(before, after);
+        List<String> sequential = describe(diff.getDifferences());
+        assertEquals(expected.size(), sequential.size());
+        assertEquals(expected, new HashSet<>(sequential));
+
+        for (int chunkSize : new int[] {1, 4, 100}) {
+            List<WorldMapDiff.Difference> differences =
+                    parallel(diff, chunkSize);
+            assertEquals(expected, new HashSet<>(describe(differences)));
+            // Tile differences arrive in position order.
+            for (int i = 1; i < differences.size() - 1; i++) {
+                assertTrue(differences.get(i - 1).getPosition().compareTo(
+                        differences.get(i).getPosition()) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void testNegativePositionsAreSorted() throws Exception {
+        WorldMap map = TestWorlds.randomGrid(3, 3, 0, 5);
+        Position start = new Position(-1, -1);
+        WorldMap before = new WorldMap(map.getTiles().get(0), start,
+                map.getBuilder());
+        Tile single = TestWorlds.tileOfHeight(0);
+        WorldMap after = new WorldMap(single, start,
+                new Builder("Test", single));
+
+        // The start tile lost its exits and the other eight tiles are gone.
+        List<WorldMapDiff.Difference> differences =
+                parallel(new WorldMapDiff(before, after), 2);
+        assertEquals(9, differences.size());
+        assertEquals("EXITS_CHANGED (-1, -1)", differences.get(0).toString());
+        assertEquals("TILE_REMOVED (-1, 0)", differences.get(1).toString());
+        assertEquals("TILE_REMOVED (1, 1)", differences.get(8).toString());
+        for (int i = 1; i < differences.size(); i++) {
+            assertTrue(differences.get(i - 1).getPosition().compareTo(
+                    differences.get(i).getPosition()) < 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package csse2002.block.world;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class WorldMapStitcherTest {
+
+    /**
+     * Gets the tile of a map at a position.
+     */
+    private static Tile tileAt(WorldMap map, int x, int y) {
+        return map.getTileArray().getTile(new Position(x, y));
+    }
+
+    @Test
+    public void testNeighbouringMapsAreLinked() throws Exception {
+        WorldMap left = TestWorlds.randomGrid(3, 3, 2, 1);
+        WorldMap right = TestWorlds.randomGrid(3, 3, 2, 2);
+        WorldMapStitcher stitcher = new WorldMapStitcher();
+        stitcher.add(left, 0, 0);
+        stitcher.add(right, 3, 0);
+        WorldMap world = stitcher.stitch();
+
+        assertEquals(18, world.getTiles().size());
+        assertEquals(new Position(0, 0), world.getStartPosition());
+        assertEquals("Test", world.getBuilder().getName());
+        assertSame(world.getTiles().get(0),
+                world.getBuilder().getCurrentTile());
+        for (int y = 0; y < 3; y++) {
+            Tile west = tileAt(world, 2, y);
+            Tile east = tileAt(world, 3, y);
+            assertSame(east, west.getExits().get("east"));
+            assertSame(west, east.getExits().get("west"));
+            assertEquals(tileAt(right, 0, y).getBlocks().size(),
+                    east.getBlocks().size());
+        }
+        // The stitched maps are unchanged.
+        assertNull(tileAt(left, 2, 0).getExits().get("east"));
+        assertNotSame(tileAt(left, 0, 0), tileAt(world, 0, 0));
+
+        // The stitched world survives saving and loading.
+        File file = File.createTempFile("stitched", ".txt");
+        file.deleteOnExit();
+        world.saveMap(file.getPath());
+        WorldMap loaded = new WorldMap(file.getPath());
+        assertEquals(0, new WorldMapDiff(world, loaded)
+                .getDifferences().size());
+    }
+
+    @Test
+    public void testOverlappingMapsAreMerged() throws Exception {
+        WorldMap first = TestWorlds.randomGrid(3, 3, 0, 1);
+        WorldMap second = TestWorlds.randomGrid(3, 3, 0, 2);
+        WorldMapStitcher stitcher = new WorldMapStitcher();
+        stitcher.add(first, 0, 0);
+        stitcher.add(second, 2, 1);
+        WorldMap world = stitcher.stitch();
+
+        assertEquals(16, world.getTiles().size());
+        Tile shared = tileAt(world, 2, 1);
+        assertEquals(4, shared.getExits().size());
+        assertSame(tileAt(world, 3, 1), shared.getExits().get("east"));
+        assertSame(tileAt(world, 1, 1), shared.getExits().get("west"));
+        assertSame(tileAt(world, 3, 2),
+                tileAt(world, 2, 2).getExits().get("east"));
+        assertSame(tileAt(world, 2, 2),
+                tileAt(world, 3, 2).getExits().get("west"));
+        assertNull(tileAt(world, 2, 0).getExits().get("east"));
+    }
+
+    @Test(expected = WorldMapInconsistentException.class)
+    public void testOverlappingBlocksMustMatch() throws Exception {
+        WorldMapStitcher stitcher = new WorldMapStitcher();
+        stitcher.add(TestWorlds.grid(2, 1, new int[] {1, 1}), 0, 0);
+        stitcher.add(TestWorlds.grid(2, 1, new int[] {2, 1}), 1, 0);
+        stitcher.stitch();
+    }
+
+    @Test(expected = WorldMapInconsistentException.class)
+    public void testMapsMustBeJoined() throws Exception {
+        WorldMapStitcher stitcher = new WorldMapStitcher();
+        stitcher.add(TestWorlds.randomGrid(2, 2, 3, 1), 0, 0);
+        stitcher.add(TestWorlds.randomGrid(2, 2, 3, 2), 2, 2);
+        stitcher.stitch();
+    }
+}